@@ -1,6 +1,7 @@
 plugins {
     java
     distribution
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 val archivaUserName: String by project
@@ -42,6 +43,41 @@ distributions {
     }
 }
 
+// Benchmarks are in the src/jmh source set, run them with the jmh task. A subset can be run with -PjmhIncludes=<regex>, for example -PjmhIncludes=ScriptConfigExtractor
+jmh {
+    jmhVersion.set("1.37")
+    if (project.hasProperty("jmhIncludes")) {
+        includes.set(listOf(project.property("jmhIncludes") as String))
+    }
+}
+
+// Generates a synthetic script corpus with -PcorpusArgs="<directory> [scripts] [launchPoints] [variables] [bodyLines] [lineLength]"
+tasks.register<JavaExec>("generateCorpus") {
+    group = "benchmark"
+    description = "Generates a synthetic automation script corpus."
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("io.sharptree.maximo.dbmanage.ScriptCorpus")
+    args = (project.findProperty("corpusArgs") as String? ?: layout.buildDirectory.dir("corpus").get().asFile.path).split(" ")
+}
+
+// Runs the end to end deployment harness against an embedded H2 database with -PharnessArgs="scripts=200 launchPoints=10 variables=10 bodyLines=500 batchSize=100 reconcile=false bulkRemove=false"
+tasks.register<JavaExec>("deployHarness") {
+    group = "benchmark"
+    description = "Measures the deployment throughput of a synthetic script corpus against an embedded H2 database."
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("io.sharptree.maximo.dbmanage.DeployHarness")
+    args = (project.findProperty("harnessArgs") as String? ?: "").split(" ").filter { it.isNotEmpty() }
+}
+
+// Runs the standalone deployer against several embedded H2 databases with -PtargetsArgs="targets=4 threads=2 scripts=50 launchPoints=5 variables=5 bodyLines=200 broken=true"
+tasks.register<JavaExec>("deployTargets") {
+    group = "benchmark"
+    description = "Deploys a synthetic script corpus to several embedded H2 databases with the standalone deployer."
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("io.sharptree.maximo.dbmanage.MultiTargetHarness")
+    args = (project.findProperty("targetsArgs") as String? ?: "").split(" ").filter { it.isNotEmpty() }
+}
+
 // Configure the distribution task to tar and gzip the results.
 tasks.distTar {
     compression = Compression.GZIP
@@ -188,4 +224,23 @@ dependencies {
     @Suppress("GradlePackageUpdate")
     compileOnly("log4j:log4j:1.2.16")
 
+    /*
+     * The deployment harness runs the write path outside of Maximo against an embedded H2 database, so log4j is needed at runtime.
+     */
+    jmhImplementation("com.h2database:h2:2.2.224")
+    @Suppress("GradlePackageUpdate")
+    jmhImplementation("log4j:log4j:1.2.16")
+
+    /*
+     * The unit tests only cover the classes that do not need Maximo's libraries.
+     */
+    testImplementation(platform("org.junit:junit-bom:5.10.2"))
+    testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+    testRuntimeOnly("com.h2database:h2:2.2.224")
+
+}
+
+tasks.test {
+    useJUnitPlatform()
 }
\ No newline at end of file
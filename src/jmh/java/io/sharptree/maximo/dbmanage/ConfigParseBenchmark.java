@@ -0,0 +1,64 @@
+package io.sharptree.maximo.dbmanage;
+
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.CharBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the deserialization of the scriptConfig JSON into an {@link AutoscriptConfig} and its validation, for configurations of increasing size.
+ * The reflective binding of a new {@link Gson} per script is kept as the baseline for the streaming {@link ScriptConfigReader}.
+ *
+ * @author Jason VenHuizen
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigParseBenchmark {
+
+    @Param({"1", "10", "50"})
+    public int launchPoints;
+
+    @Param({"1", "10", "50"})
+    public int variables;
+
+    private String json;
+    private CharBuffer buffer;
+
+    @Setup
+    public void setup() {
+        json = new ScriptCorpus(launchPoints, variables, 0, 0).configJson("BENCHMARK");
+        buffer = CharBuffer.wrap(json).asReadOnlyBuffer();
+    }
+
+    @Benchmark
+    public AutoscriptConfig parse() {
+        return new Gson().fromJson(json, AutoscriptConfig.class);
+    }
+
+    @Benchmark
+    public AutoscriptConfig parseStreaming() {
+        return ScriptConfigReader.read(buffer);
+    }
+
+    @Benchmark
+    public AutoscriptConfig parseAndValidate() throws Exception {
+        AutoscriptConfig config = ScriptConfigReader.read(buffer);
+        config.validate();
+        return config;
+    }
+}
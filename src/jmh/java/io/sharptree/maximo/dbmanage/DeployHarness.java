@@ -0,0 +1,237 @@
+package io.sharptree.maximo.dbmanage;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.varia.NullAppender;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.stream.Stream;
+
+/**
+ * Measures the end to end deployment throughput of a synthetic script corpus against an embedded H2 database in Oracle compatibility mode.
+ * <p>
+ * The harness stands in for the DBC plumbing of the change statements, it parses the scripts and runs the {@link AutoscriptOperations} of
+ * `add_update_autoscript_dir`, `remove_autoscript` and `remove_autoscripts` against a {@link StatementTarget} with the statement attributes,
+ * over a connection that is wrapped by {@link StatementMetrics}. Each phase is committed and reports the scripts per second, rows per
+ * second, round trips and the p50 and p99 latency of the round trips.
+ * <p>
+ * The arguments are name=value pairs: scripts, launchPoints, variables, bodyLines, batchSize, reconcile and bulkRemove.
+ *
+ * @author Jason VenHuizen
+ */
+public final class DeployHarness {
+
+    private final Connection connection;
+    private final StatementMetrics metrics = new StatementMetrics();
+    private final DeploymentContext context;
+    private final int batchSize;
+    private final boolean reconcile;
+
+    private DeployHarness(Connection connection, DeploymentContext context, int batchSize, boolean reconcile) {
+        this.connection = metrics.wrap(connection);
+        this.context = context;
+        this.batchSize = batchSize;
+        this.reconcile = reconcile;
+    }
+
+    /**
+     * Runs the harness.
+     *
+     * @param args the name=value arguments.
+     * @throws Exception thrown if an error occurs running the harness.
+     */
+    public static void main(String[] args) throws Exception {
+        BasicConfigurator.configure(new NullAppender());
+
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 1) {
+                System.err.println("Usage: DeployHarness [scripts=200] [launchPoints=10] [variables=10] [bodyLines=500] [batchSize=100] [reconcile=false] [bulkRemove=false]");
+                System.exit(1);
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+
+        int scripts = Integer.parseInt(options.getOrDefault("scripts", "200"));
+        int launchPoints = Integer.parseInt(options.getOrDefault("launchPoints", "10"));
+        int variables = Integer.parseInt(options.getOrDefault("variables", "10"));
+        int bodyLines = Integer.parseInt(options.getOrDefault("bodyLines", "500"));
+        int batchSize = Integer.parseInt(options.getOrDefault("batchSize", String.valueOf(BatchInsertWriter.DEFAULT_BATCH_SIZE)));
+        boolean reconcile = Boolean.parseBoolean(options.getOrDefault("reconcile", "false"));
+        boolean bulkRemove = Boolean.parseBoolean(options.getOrDefault("bulkRemove", "false"));
+
+        System.out.printf("%d scripts, %d launch points, %d variables, %d body lines, batch size %d, reconcile %b, bulk remove %b%n%n",
+                scripts, launchPoints, variables, bodyLines, batchSize, reconcile, bulkRemove);
+
+        Path directory = Files.createTempDirectory("autoscript-harness");
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:harness;MODE=Oracle;NON_KEYWORDS=VALUE,TYPE,CONDITION,INTERFACE");
+             DeploymentContext context = DeploymentContext.create(0, 0)) {
+            createSchema(connection);
+
+            List<Path> files = new ScriptCorpus(launchPoints, variables, bodyLines, 80).write(directory.resolve("initial"), scripts);
+            List<Path> changedFiles = new ScriptCorpus(launchPoints + 1, variables, bodyLines, 80).write(directory.resolve("changed"), scripts);
+
+            DeployHarness harness = new DeployHarness(connection, context, batchSize, reconcile);
+            harness.printHeader();
+
+            long start = System.nanoTime();
+            List<ParsedScript> parsed = parse(files);
+            harness.report("parse", scripts, System.nanoTime() - start);
+
+            List<ParsedScript> changed = parse(changedFiles);
+
+            harness.deploy("deploy", parsed, false);
+            harness.deploy("redeploy unchanged", parsed, false);
+            harness.deploy("redeploy changed", changed, false);
+            harness.deploy("redeploy forced", changed, true);
+            harness.remove(parsed, bulkRemove);
+        } finally {
+            try (Stream<Path> paths = Files.walk(directory)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    static void createSchema(Connection connection) throws IOException, SQLException {
+        String schema;
+        try (InputStream in = DeployHarness.class.getResourceAsStream("harness-schema.sql")) {
+            if (in == null) {
+                throw new IOException("The harness-schema.sql resource was not found.");
+            }
+            schema = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : schema.replaceAll("(?m)^--.*$", "").split(";")) {
+                if (!sql.trim().isEmpty()) {
+                    statement.execute(sql);
+                }
+            }
+        }
+        connection.setAutoCommit(false);
+    }
+
+    private static List<ParsedScript> parse(List<Path> files) throws Exception {
+        List<ParsedScript> parsed = new ArrayList<>(files.size());
+        for (Path file : files) {
+            parsed.add(ParsedScript.parse(file, file.getFileName().toString().endsWith(".py") ? "python" : "javascript"));
+        }
+        return parsed;
+    }
+
+    private void deploy(String phase, List<ParsedScript> scripts, boolean force) throws Exception {
+        metrics.reset();
+        long start = System.nanoTime();
+
+        Target target = new Target(connection, context);
+        target.attributes.put("batchsize", String.valueOf(batchSize));
+        target.attributes.put("reconcile", String.valueOf(reconcile));
+        target.attributes.put("force", String.valueOf(force));
+
+        List<Callable<ParsedScript>> callables = new ArrayList<>(scripts.size());
+        for (ParsedScript script : scripts) {
+            callables.add(() -> script);
+        }
+        AutoscriptOperations.deployAll(target, callables);
+        connection.commit();
+
+        report(phase, scripts.size(), System.nanoTime() - start);
+    }
+
+    private void remove(List<ParsedScript> scripts, boolean bulk) throws Exception {
+        metrics.reset();
+        long start = System.nanoTime();
+
+        if (bulk) {
+            List<String> names = new ArrayList<>(scripts.size());
+            for (ParsedScript script : scripts) {
+                names.add(script.getConfig().autoscript);
+            }
+            Target target = new Target(connection, context);
+            target.attributes.put("names", String.join(",", names));
+            AutoscriptOperations.removeAll(target);
+        } else {
+            // each remove_autoscript statement is run on its own.
+            for (ParsedScript script : scripts) {
+                Target target = new Target(connection, context);
+                target.attributes.put("name", script.getConfig().autoscript);
+                AutoscriptOperations.remove(target);
+            }
+        }
+        connection.commit();
+
+        report(bulk ? "remove bulk" : "remove", scripts.size(), System.nanoTime() - start);
+    }
+
+    private void printHeader() {
+        System.out.printf("%-20s %10s %12s %10s %12s %12s %14s %10s %10s%n",
+                "phase", "millis", "scripts/s", "rows", "rows/s", "round trips", "trips/script", "p50 us", "p99 us");
+    }
+
+    private void report(String phase, int scripts, long nanos) {
+        double seconds = nanos / 1_000_000_000.0;
+        System.out.printf("%-20s %10.1f %12.1f %10d %12.1f %12d %14.1f %10.1f %10.1f%n",
+                phase,
+                nanos / 1_000_000.0,
+                scripts / seconds,
+                metrics.getRows(),
+                metrics.getRows() / seconds,
+                metrics.getRoundTrips(),
+                metrics.getRoundTrips() / (double) scripts,
+                metrics.percentile(50) / 1000.0,
+                metrics.percentile(99) / 1000.0);
+    }
+
+    /**
+     * Stands in for the change statement, with the attributes of the statement and without the UpdateDB message log.
+     */
+    private static final class Target implements StatementTarget {
+        private final Map<String, String> attributes = new HashMap<>();
+        private final Connection connection;
+        private final DeploymentContext context;
+
+        private Target(Connection connection, DeploymentContext context) {
+            this.connection = connection;
+            this.context = context;
+        }
+
+        @Override
+        public String attribute(String name) {
+            return attributes.get(name);
+        }
+
+        @Override
+        public Connection connection() {
+            return connection;
+        }
+
+        @Override
+        public String outputDirectory() {
+            return null;
+        }
+
+        @Override
+        public DeploymentContext context() {
+            return context;
+        }
+
+        @Override
+        public void log(String key, String message, Object parameter) {
+            // the harness only reports the throughput of the phases.
+        }
+    }
+}
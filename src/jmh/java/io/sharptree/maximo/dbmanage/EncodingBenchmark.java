@@ -0,0 +1,57 @@
+package io.sharptree.maximo.dbmanage;
+
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the encoding of the AUTOSCRIPTVARS accessflag and the SCRIPTLAUNCHPOINT objectevent columns over a configuration that covers
+ * every variable flag combination and every launch point event.
+ *
+ * @author Jason VenHuizen
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodingBenchmark {
+
+    private List<AutoscriptVar> variables;
+    private List<ScriptLaunchPoint> launchPoints;
+
+    @Setup
+    public void setup() {
+        // 84 launch points cover the event rotation of the corpus generator and 8 variables cover the access flags.
+        AutoscriptConfig config = new Gson().fromJson(new ScriptCorpus(84, 8, 0, 0).configJson("BENCHMARK"), AutoscriptConfig.class);
+        variables = config.autoScriptVars;
+        launchPoints = config.scriptLaunchPoints;
+    }
+
+    @Benchmark
+    public void accessFlag(Blackhole blackhole) {
+        for (AutoscriptVar variable : variables) {
+            blackhole.consume(variable.accessFlag());
+        }
+    }
+
+    @Benchmark
+    public void objectEvent(Blackhole blackhole) {
+        for (ScriptLaunchPoint launchPoint : launchPoints) {
+            blackhole.consume(launchPoint.objectEvent());
+        }
+    }
+}
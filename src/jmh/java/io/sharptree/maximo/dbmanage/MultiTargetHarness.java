@@ -0,0 +1,137 @@
+package io.sharptree.maximo.dbmanage;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.varia.NullAppender;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Runs the {@link StandaloneDeployer} against several embedded H2 databases, to try the concurrent deployment and the failure isolation of
+ * the targets locally.
+ * <p>
+ * The harness creates the target databases with the harness schema, writes a synthetic script corpus and a DBC script that deploys the
+ * corpus directory and removes the first script, then runs the deployer twice so that the second run finds the scripts unchanged. With
+ * broken=true an extra target without the automation script tables is added, which fails and is rolled back while the other targets are
+ * deployed. The number of scripts in each target is checked after each run.
+ * <p>
+ * The arguments are name=value pairs: targets, threads, scripts, launchPoints, variables, bodyLines and broken.
+ *
+ * @author Jason VenHuizen
+ */
+public final class MultiTargetHarness {
+
+    private MultiTargetHarness() {
+    }
+
+    /**
+     * Runs the harness.
+     *
+     * @param args the name=value arguments.
+     * @throws Exception thrown if an error occurs running the harness or a target does not have the expected scripts.
+     */
+    public static void main(String[] args) throws Exception {
+        BasicConfigurator.configure(new NullAppender());
+
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 1) {
+                System.err.println("Usage: MultiTargetHarness [targets=4] [threads=2] [scripts=50] [launchPoints=5] [variables=5] [bodyLines=200] [broken=true]");
+                System.exit(1);
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+
+        int targets = Integer.parseInt(options.getOrDefault("targets", "4"));
+        int threads = Integer.parseInt(options.getOrDefault("threads", "2"));
+        int scripts = Integer.parseInt(options.getOrDefault("scripts", "50"));
+        int launchPoints = Integer.parseInt(options.getOrDefault("launchPoints", "5"));
+        int variables = Integer.parseInt(options.getOrDefault("variables", "5"));
+        int bodyLines = Integer.parseInt(options.getOrDefault("bodyLines", "200"));
+        boolean broken = Boolean.parseBoolean(options.getOrDefault("broken", "true"));
+
+        Path directory = Files.createTempDirectory("autoscript-targets");
+        List<Connection> connections = new ArrayList<>();
+        try {
+            new ScriptCorpus(launchPoints, variables, bodyLines, 80).write(directory.resolve("scripts"), scripts);
+            Path dbcFile = directory.resolve("V1000_01.dbc");
+            Files.write(dbcFile, dbc(ScriptCorpus.scriptName(0)).getBytes(StandardCharsets.UTF_8));
+
+            List<String> arguments = new ArrayList<>();
+            for (int i = 1; i <= targets; i++) {
+                // each database is kept open by the harness, so it outlives the connections of the deployer.
+                Connection connection = DriverManager.getConnection(url("target" + i));
+                DeployHarness.createSchema(connection);
+                connection.commit();
+                connections.add(connection);
+                arguments.add("--target");
+                arguments.add("target" + i + "=" + url("target" + i));
+            }
+            if (broken) {
+                Connection connection = DriverManager.getConnection(url("broken"));
+                connections.add(connection);
+                arguments.add("--target");
+                arguments.add("broken=" + url("broken"));
+            }
+            arguments.add("--threads");
+            arguments.add(String.valueOf(threads));
+            arguments.add(dbcFile.toString());
+
+            for (String run : new String[]{"deploy", "redeploy"}) {
+                System.out.println("== " + run + " ==");
+                int status = StandaloneDeployer.run(arguments.toArray(new String[0]), System.out);
+                System.out.println("exit status " + status);
+
+                for (int i = 0; i < targets; i++) {
+                    int count = count(connections.get(i));
+                    if (count != scripts - 1) {
+                        throw new IllegalStateException("target" + (i + 1) + " has " + count + " automation scripts, " + (scripts - 1) + " were expected.");
+                    }
+                }
+                System.out.println();
+            }
+        } finally {
+            for (Connection connection : connections) {
+                connection.close();
+            }
+            try (Stream<Path> paths = Files.walk(directory)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private static String url(String name) {
+        return "jdbc:h2:mem:" + name + ";MODE=Oracle;NON_KEYWORDS=VALUE,TYPE,CONDITION,INTERFACE";
+    }
+
+    private static String dbc(String removed) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<!DOCTYPE script SYSTEM \"script.dtd\">\n"
+                + "<script author=\"harness\" scriptname=\"V1000_01\">\n"
+                + "    <description>Deploys the script corpus</description>\n"
+                + "    <statements>\n"
+                + "        <add_update_autoscript_dir path=\"scripts\"/>\n"
+                + "        <remove_autoscript name=\"" + removed + "\"/>\n"
+                + "    </statements>\n"
+                + "</script>\n";
+    }
+
+    private static int count(Connection connection) throws Exception {
+        try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery("select count(*) from autoscript")) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package io.sharptree.maximo.dbmanage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.CharBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the extraction of the scriptConfig JSON from script sources of increasing size and line length.
+ *
+ * @author Jason VenHuizen
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScriptConfigExtractorBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int bodyLines;
+
+    @Param({"40", "200"})
+    public int lineLength;
+
+    @Param({"javascript", "python"})
+    public String language;
+
+    private String source;
+    private boolean python;
+
+    @Setup
+    public void setup() {
+        ScriptCorpus corpus = new ScriptCorpus(10, 10, bodyLines, lineLength);
+        python = "python".equals(language);
+        source = python ? corpus.python("BENCHMARK") : corpus.javascript("BENCHMARK");
+    }
+
+    @Benchmark
+    public CharBuffer extract() throws Exception {
+        return ScriptConfigExtractor.extract(source, python);
+    }
+}
@@ -0,0 +1,268 @@
+package io.sharptree.maximo.dbmanage;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates synthetic automation scripts with a scriptConfig of a given shape, used by the benchmarks and for load testing deployments.
+ * <p>
+ * Each script has the configured number of launch points and variables, cycling through the launch point types, events, binding types and
+ * access flags, and a body of filler code of the configured line count and length. The body contains comments and strings with braces and
+ * scriptConfig references so the scriptConfig extraction has to tokenize it rather than scan for the first brace. The output is deterministic.
+ *
+ * @author Jason VenHuizen
+ */
+public final class ScriptCorpus {
+
+    private static final String[] LAUNCH_POINT_TYPES = {"OBJECT", "ATTRIBUTE", "ACTION", "OBJECT"};
+    private static final String[] BINDING_TYPES = {"ATTRIBUTE", "LITERAL", "SYSPROP", "MAXVAR"};
+    private static final String[] VAR_TYPES = {"IN", "OUT", "INOUT"};
+
+    private final int launchPoints;
+    private final int variables;
+    private final int bodyLines;
+    private final int lineLength;
+
+    /**
+     * Creates a new corpus definition.
+     *
+     * @param launchPoints the number of launch points per script.
+     * @param variables    the number of variables per script.
+     * @param bodyLines    the number of lines of code in the script body.
+     * @param lineLength   the approximate length of each line of code.
+     */
+    public ScriptCorpus(int launchPoints, int variables, int bodyLines, int lineLength) {
+        this.launchPoints = launchPoints;
+        this.variables = variables;
+        this.bodyLines = bodyLines;
+        this.lineLength = lineLength;
+    }
+
+    /**
+     * Generates a corpus of scripts in a directory, alternating between JavaScript and Python.
+     * <p>
+     * The arguments are the output directory followed by the optional number of scripts, launch points, variables, body lines and line length.
+     *
+     * @param args the command line arguments.
+     * @throws IOException thrown if an error occurs writing the scripts.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: ScriptCorpus <directory> [scripts] [launchPoints] [variables] [bodyLines] [lineLength]");
+            System.exit(1);
+        }
+
+        int scripts = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        ScriptCorpus corpus = new ScriptCorpus(
+                args.length > 2 ? Integer.parseInt(args[2]) : 10,
+                args.length > 3 ? Integer.parseInt(args[3]) : 10,
+                args.length > 4 ? Integer.parseInt(args[4]) : 500,
+                args.length > 5 ? Integer.parseInt(args[5]) : 80);
+
+        List<Path> files = corpus.write(Paths.get(args[0]), scripts);
+        System.out.println("Wrote " + files.size() + " scripts to " + Paths.get(args[0]).toAbsolutePath());
+    }
+
+    /**
+     * Writes the scripts to the directory, alternating between JavaScript and Python.
+     *
+     * @param directory the directory to write to, it is created if it does not exist.
+     * @param scripts   the number of scripts to write.
+     * @return the paths of the written scripts.
+     * @throws IOException thrown if an error occurs writing the scripts.
+     */
+    public List<Path> write(Path directory, int scripts) throws IOException {
+        Files.createDirectories(directory);
+
+        List<Path> files = new ArrayList<>(scripts);
+        for (int i = 0; i < scripts; i++) {
+            String name = scriptName(i);
+            boolean python = i % 2 == 1;
+
+            Path file = directory.resolve(name.toLowerCase() + (python ? ".py" : ".js"));
+            Files.write(file, (python ? python(name) : javascript(name)).getBytes(StandardCharsets.UTF_8));
+            files.add(file);
+        }
+        return files;
+    }
+
+    /**
+     * Returns the name of the script at the index of the corpus.
+     *
+     * @param index the script index.
+     * @return the script name.
+     */
+    public static String scriptName(int index) {
+        return String.format("CORPUS_%05d", index);
+    }
+
+    /**
+     * Returns a JavaScript script with the scriptConfig declared at the end of the source, as the VSCode extension generates it.
+     *
+     * @param name the script name.
+     * @return the script source.
+     */
+    public String javascript(String name) {
+        StringBuilder source = new StringBuilder();
+        source.append("/* generated script ").append(name).append(", the scriptConfig = { } below is the deployed configuration */\n");
+        source.append("main();\n\n");
+        source.append("function main() {\n");
+        for (int line = 0; line < bodyLines; line++) {
+            int start = source.length();
+            switch (line % 4) {
+                case 0:
+                    source.append("    // line ").append(line).append(" has a { brace in a comment");
+                    break;
+                case 1:
+                    source.append("    var value").append(line).append(" = \"a string with } and scriptConfig = {\"");
+                    break;
+                case 2:
+                    source.append("    if (value").append(line - 1).append(".length > ").append(line).append(") { service.log(value").append(line - 1).append("); }");
+                    break;
+                default:
+                    source.append("    var pattern").append(line).append(" = /[{}]+/g.test(value").append(line - 2).append(");");
+                    break;
+            }
+            pad(source, start, "//");
+        }
+        source.append("}\n\n");
+        source.append("var scriptConfig = ").append(configJson(name)).append(";\n");
+        return source.toString();
+    }
+
+    /**
+     * Returns a Python script with the scriptConfig assigned as a triple quoted string at the end of the source.
+     *
+     * @param name the script name.
+     * @return the script source.
+     */
+    public String python(String name) {
+        StringBuilder source = new StringBuilder();
+        source.append("# generated script ").append(name).append(", the scriptConfig = { } below is the deployed configuration\n");
+        source.append("from psdi.server import MXServer\n\n");
+        for (int line = 0; line < bodyLines; line++) {
+            int start = source.length();
+            switch (line % 4) {
+                case 0:
+                    source.append("# line ").append(line).append(" has a { brace in a comment");
+                    break;
+                case 1:
+                    source.append("value").append(line).append(" = \"a string with } and scriptConfig = {\"");
+                    break;
+                case 2:
+                    source.append("if len(value").append(line - 1).append(") > ").append(line).append(": service.log(value").append(line - 1).append(")");
+                    break;
+                default:
+                    source.append("text").append(line).append(" = '''a {triple} quoted string'''");
+                    break;
+            }
+            pad(source, start, "#");
+        }
+        source.append("\nscriptConfig = \"\"\"").append(configJson(name)).append("\"\"\"\n");
+        return source.toString();
+    }
+
+    /**
+     * Returns the scriptConfig JSON for the script.
+     *
+     * @param name the script name.
+     * @return the scriptConfig JSON.
+     */
+    public String configJson(String name) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("    \"autoscript\": \"").append(name).append("\",\n");
+        json.append("    \"description\": \"Generated script ").append(name).append("\",\n");
+        json.append("    \"version\": \"1.0.0\",\n");
+        json.append("    \"active\": true,\n");
+        json.append("    \"logLevel\": \"ERROR\"");
+
+        if (variables > 0) {
+            json.append(",\n    \"autoScriptVars\": [");
+            for (int i = 0; i < variables; i++) {
+                String bindingType = BINDING_TYPES[i % BINDING_TYPES.length];
+                json.append(i == 0 ? "\n" : ",\n");
+                json.append("        {\"varname\": \"var").append(i).append('"');
+                json.append(", \"description\": \"Variable ").append(i).append('"');
+                json.append(", \"varBindingType\": \"").append(bindingType).append('"');
+                json.append(", \"varType\": \"").append(VAR_TYPES[i % VAR_TYPES.length]).append('"');
+                if (!bindingType.equals("ATTRIBUTE")) {
+                    json.append(", \"varBindingValue\": \"value").append(i).append('"');
+                }
+                if (bindingType.equals("LITERAL")) {
+                    json.append(", \"literalDataType\": \"ALN\"");
+                }
+                json.append(", \"allowOverride\": ").append(i % 2 == 0);
+                json.append(", \"noValidation\": ").append((i & 1) != 0);
+                json.append(", \"noAccessCheck\": ").append((i & 2) != 0);
+                json.append(", \"noAction\": ").append((i & 4) != 0);
+                json.append('}');
+            }
+            json.append("\n    ]");
+        }
+
+        if (launchPoints > 0) {
+            json.append(",\n    \"scriptLaunchPoints\": [");
+            for (int i = 0; i < launchPoints; i++) {
+                String type = LAUNCH_POINT_TYPES[i % LAUNCH_POINT_TYPES.length];
+                json.append(i == 0 ? "\n" : ",\n");
+                json.append("        {\"launchPointName\": \"").append(name).append("_LP").append(i).append('"');
+                json.append(", \"launchPointType\": \"").append(type).append('"');
+                json.append(", \"description\": \"Launch point ").append(i).append('"');
+                json.append(", \"active\": ").append(i % 3 != 0);
+                json.append(", \"objectName\": \"ASSET\"");
+
+                if (type.equals("ATTRIBUTE")) {
+                    String[] events = {"initializeAccessRestriction", "initializeValue", "validate", "retrieveList", "runAction"};
+                    json.append(", \"attributeName\": \"STATUS\", \"").append(events[(i / 4) % events.length]).append("\": true");
+                } else if (type.equals("ACTION")) {
+                    json.append(", \"actionName\": \"").append(name).append("_ACT").append(i).append('"');
+                } else if (i % 4 == 3) {
+                    String[] events = {"initializeValue", "validateApplication", "allowObjectCreation", "allowObjectDeletion"};
+                    json.append(", \"").append(events[(i / 4) % events.length]).append("\": true");
+                } else {
+                    // cycle through the save timings and the seven add, update and delete combinations.
+                    String[] timings = {"beforeSave", "afterSave", "afterCommit"};
+                    int operations = (i / 4) % 7 + 1;
+                    json.append(", \"save\": true, \"").append(timings[(i / 4) % timings.length]).append("\": true");
+                    json.append(", \"add\": ").append((operations & 1) != 0);
+                    json.append(", \"update\": ").append((operations & 2) != 0);
+                    json.append(", \"delete\": ").append((operations & 4) != 0);
+                }
+
+                if (variables > 0) {
+                    json.append(", \"launchPointVars\": [");
+                    for (int v = 0; v < Math.min(variables, 3); v++) {
+                        json.append(v == 0 ? "" : ", ");
+                        json.append("{\"varName\": \"var").append((i + v) % variables).append("\", \"varBindingValue\": \"ATTR").append(v).append("\"}");
+                    }
+                    json.append(']');
+                }
+                json.append('}');
+            }
+            json.append("\n    ]");
+        }
+
+        json.append("\n}");
+        return json.toString();
+    }
+
+    /**
+     * Pads the line that starts at the offset to the line length with a trailing comment and ends the line.
+     */
+    private void pad(StringBuilder source, int start, String comment) {
+        int length = source.length() - start;
+        if (length + comment.length() + 1 < lineLength) {
+            source.append(' ').append(comment);
+            for (int i = length + comment.length() + 1; i < lineLength; i++) {
+                source.append(i % 8 == 0 ? ' ' : 'x');
+            }
+        }
+        source.append('\n');
+    }
+}
@@ -0,0 +1,66 @@
+package io.sharptree.maximo.dbmanage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures loading a script file from disk, on its own and together with the scriptConfig extraction, parsing and validation.
+ *
+ * @author Jason VenHuizen
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScriptSourceBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int bodyLines;
+
+    @Param({"javascript", "python"})
+    public String language;
+
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        ScriptCorpus corpus = new ScriptCorpus(10, 10, bodyLines, 80);
+        boolean python = "python".equals(language);
+        file = Files.createTempFile("benchmark", python ? ".py" : ".js");
+        Files.write(file, (python ? corpus.python("BENCHMARK") : corpus.javascript("BENCHMARK")).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public ScriptSource read() throws IOException {
+        return ScriptSource.read(file);
+    }
+
+    @Benchmark
+    public ParsedScript parse() throws Exception {
+        return ParsedScript.parse(file, language);
+    }
+}
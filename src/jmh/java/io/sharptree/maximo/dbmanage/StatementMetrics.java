@@ -0,0 +1,127 @@
+package io.sharptree.maximo.dbmanage;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Arrays;
+
+/**
+ * Counts the database round trips, the rows written and the latency of each statement execution made through a wrapped connection.
+ * <p>
+ * Each execute, executeQuery, executeUpdate, executeBatch and commit call on the connection or its statements is one round trip. The rows are the
+ * update counts reported by the driver. The metrics are not thread safe, a wrapped connection must only be used by one thread at a time.
+ *
+ * @author Jason VenHuizen
+ */
+public final class StatementMetrics {
+
+    private long roundTrips;
+    private long rows;
+    private long[] latencies = new long[1024];
+    private int latencyCount;
+
+    /**
+     * Returns a connection that records its statement executions in these metrics.
+     *
+     * @param connection the connection to wrap.
+     * @return the wrapped connection.
+     */
+    public Connection wrap(Connection connection) {
+        return proxy(Connection.class, connection);
+    }
+
+    /**
+     * Clears the recorded metrics.
+     */
+    public void reset() {
+        roundTrips = 0;
+        rows = 0;
+        latencyCount = 0;
+    }
+
+    /**
+     * Returns the number of round trips.
+     *
+     * @return the round trips.
+     */
+    public long getRoundTrips() {
+        return roundTrips;
+    }
+
+    /**
+     * Returns the number of rows inserted, updated or deleted.
+     *
+     * @return the rows written.
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * Returns the latency percentile of the recorded round trips.
+     *
+     * @param percentile the percentile, between 0 and 100.
+     * @return the latency in nanoseconds or 0 if there are no recorded round trips.
+     */
+    public long percentile(double percentile) {
+        if (latencyCount == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private void record(String method, Object result, long nanos) {
+        roundTrips++;
+
+        if (latencyCount == latencies.length) {
+            latencies = Arrays.copyOf(latencies, latencies.length * 2);
+        }
+        latencies[latencyCount++] = nanos;
+
+        if (result instanceof Integer && method.equals("executeUpdate")) {
+            rows += (Integer) result;
+        } else if (result instanceof int[]) {
+            for (int count : (int[]) result) {
+                if (count > 0) {
+                    rows += count;
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T proxy(Class<T> type, T target) {
+        InvocationHandler handler = new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                boolean roundTrip = name.startsWith("execute") || name.equals("commit");
+
+                long start = System.nanoTime();
+                Object result;
+                try {
+                    result = method.invoke(target, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+
+                if (roundTrip) {
+                    record(name, result, System.nanoTime() - start);
+                }
+
+                // wrap the statements created by the connection so their executions are recorded.
+                if (result instanceof Statement && method.getReturnType().isInterface() && Statement.class.isAssignableFrom(method.getReturnType())) {
+                    return proxy((Class<Statement>) method.getReturnType(), (Statement) result);
+                }
+                return result;
+            }
+        };
+        return (T) Proxy.newProxyInstance(StatementMetrics.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+}
@@ -0,0 +1,58 @@
+-- The automation script tables and sequences used by the deployment harness, with the columns that the deployment writes.
+create table maxsequence (tbname varchar2(30) not null, name varchar2(30) not null, sequencename varchar2(30) not null);
+
+create sequence autoscriptseq;
+create sequence autoscriptstateseq;
+create sequence autoscriptvarsseq;
+create sequence scriptlaunchpointseq;
+create sequence launchpointvarsseq;
+create sequence actionseq;
+
+insert into maxsequence values ('AUTOSCRIPT', 'AUTOSCRIPTID', 'AUTOSCRIPTSEQ');
+insert into maxsequence values ('AUTOSCRIPTSTATE', 'AUTOSCRIPTSTATEID', 'AUTOSCRIPTSTATESEQ');
+insert into maxsequence values ('AUTOSCRIPTVARS', 'AUTOSCRIPTVARSID', 'AUTOSCRIPTVARSSEQ');
+insert into maxsequence values ('SCRIPTLAUNCHPOINT', 'SCRIPTLAUNCHPOINTID', 'SCRIPTLAUNCHPOINTSEQ');
+insert into maxsequence values ('LAUNCHPOINTVARS', 'LAUNCHPOINTVARSID', 'LAUNCHPOINTVARSSEQ');
+insert into maxsequence values ('ACTION', 'ACTIONID', 'ACTIONSEQ');
+
+create table autoscript (autoscriptid number(19) not null primary key, autoscript varchar2(128) not null, description varchar2(256), version varchar2(10),
+    loglevel varchar2(20), status varchar2(20), active number(1), source clob, createddate date, statusdate date, changedate date, owner varchar2(30),
+    createdby varchar2(30), changeby varchar2(30), scriptlanguage varchar2(20), userdefined number(1), hasld number(1), langcode varchar2(4), interface number(1));
+create unique index autoscript_ndx1 on autoscript (autoscript);
+
+create table autoscriptstate (autoscriptstateid number(19) not null primary key, autoscript varchar2(128) not null, changeby varchar2(30), changedate date,
+    status varchar2(20), memo varchar2(256));
+create index autoscriptstate_ndx1 on autoscriptstate (autoscript);
+
+create table autoscriptvars (autoscriptvarsid number(19) not null primary key, autoscript varchar2(128) not null, varname varchar2(128) not null,
+    varbindingvalue varchar2(256), varbindingtype varchar2(20), vartype varchar2(20), description varchar2(256), allowoverride number(1),
+    literaldatatype varchar2(20), accessflag number(10));
+create unique index autoscriptvars_ndx1 on autoscriptvars (autoscript, varname);
+
+create table scriptlaunchpoint (scriptlaunchpointid number(19) not null primary key, launchpointname varchar2(128) not null, autoscript varchar2(128) not null,
+    description varchar2(256), launchpointtype varchar2(20), objectname varchar2(30), attributename varchar2(50), condition varchar2(2000), active number(1),
+    objectevent number(10));
+create unique index scriptlaunchpoint_ndx1 on scriptlaunchpoint (launchpointname);
+create index scriptlaunchpoint_ndx2 on scriptlaunchpoint (autoscript);
+
+create table launchpointvars (launchpointvarsid number(19) not null primary key, launchpointname varchar2(128) not null, autoscript varchar2(128) not null,
+    varname varchar2(128) not null, varbindingvalue varchar2(256), literaldatatype varchar2(20));
+create unique index launchpointvars_ndx1 on launchpointvars (autoscript, launchpointname, varname);
+
+create table action (actionid number(19) not null primary key, action varchar2(128) not null, objectname varchar2(30), type varchar2(20), value varchar2(256),
+    parameter varchar2(512), langcode varchar2(4), usewith varchar2(20), hasld number(1));
+create unique index action_ndx1 on action (action);
+
+create table actiongroup (action varchar2(128) not null, member varchar2(128) not null);
+create index actiongroup_ndx1 on actiongroup (member);
+
+create table inspformscript (autoscript varchar2(128));
+create table oslcquery (scriptname varchar2(128));
+create table jsonmapping (scriptname varchar2(128));
+
+-- the data dictionary rows of the script tables, the character columns are ALN and the others INTEGER as the writer only reads the lengths.
+create table maxattribute (objectname varchar2(30) not null, attributename varchar2(50) not null, columnname varchar2(50), maxtype varchar2(8),
+    length number(10), persistent number(1));
+insert into maxattribute select table_name, column_name, column_name, case when data_type = 'CHARACTER VARYING' then 'ALN' when data_type = 'CHARACTER LARGE OBJECT' then 'CLOB' else 'INTEGER' end,
+    case when data_type = 'CHARACTER VARYING' then character_maximum_length else 0 end, 1 from information_schema.columns
+    where table_schema = 'PUBLIC' and table_name in ('AUTOSCRIPT', 'AUTOSCRIPTSTATE', 'AUTOSCRIPTVARS', 'SCRIPTLAUNCHPOINT', 'LAUNCHPOINTVARS', 'ACTION');
@@ -0,0 +1,226 @@
+package io.sharptree.maximo.dbmanage;
+
+import com.ibm.tivoli.maximo.dbmanage.MXExceptionWithDefault;
+import org.apache.log4j.Logger;
+import org.jdom2.Element;
+import psdi.dbmanage.statement.ChangeStatement;
+import psdi.dbmanage.statement.Script;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * DBC change statement that adds or updates every automation script in a directory in the target system.
+ * <p>
+ * The files are parsed concurrently on the {@link DeploymentContext} worker pool and are then deployed in a single pass that shares the prepared statements,
+ * in the order of their relative paths. The language of each script is determined by the file extension, .js and .mjs for JavaScript and .py for Python.
+ *
+ * @author Jason VenHuizen
+ */
+public class AddUpdateAutoScriptDirStatement extends AutoscriptChangeStatement {
+
+    private Path scriptDirectory = null;
+
+    private List<Path> prefetchedFiles = null;
+    private List<Future<ParsedScript>> prefetched = null;
+    private DeploymentContext prefetchContext = null;
+
+    /**
+     * Creates a new instance of the AddUpdateAutoScriptDirStatement, that is initialized with the `add_update_autoscript_dir` change statement name.
+     *
+     * @param script      the DBC script object that contains the `add_update_autoscript_dir` change statement.
+     * @param fromElement the XML script element that represents the `add_update_autoscript_dir` change statement.
+     * @throws Exception thrown if an error occurs creating the AddUpdateAutoScriptDirStatement change statement.
+     */
+    public AddUpdateAutoScriptDirStatement(Script script, Element fromElement) throws Exception {
+        super("add_update_autoscript_dir", script, fromElement);
+        prefetch();
+    }
+
+    /**
+     * Returns the path attribute value or "null" if not present.
+     * <p>
+     * {@inerhitDoc}
+     *
+     * @see ChangeStatement#toString()
+     */
+    @Override
+    public String toString() {
+        String path = getString("path");
+        return "add_update_autoscript_dir from " + ((path != null && !path.isEmpty()) ? path : "<null>");
+    }
+
+    /**
+     * Validates that the `add_update_autoscript_dir` change statement contains the path attribute and that path can be resolved to a directory.
+     * <p>
+     * {@inerhitDoc}
+     *
+     * @throws Exception thrown if the path attribute has not been provided or the path cannot be resolved to a directory.
+     * @see ChangeStatement#validate()
+     */
+    @Override
+    public void validate() throws Exception {
+        requiredValue("path");
+
+        scriptDirectory = resolveScriptDirectory();
+
+        if (scriptDirectory == null) {
+            throw new Exception("The automation script directory " + getString("path") + " cannot be found.");
+        }
+    }
+
+    private Path resolveScriptDirectory() throws Exception {
+        return AutoscriptOperations.resolvePath(getString("path"), getScriptRun().getOutputDirectory(), true, DeploymentContext.current());
+    }
+
+    /**
+     * Returns the minification of the sources from the minify and preservelines attributes.
+     */
+    private ScriptMinifier.Mode minifyMode() {
+        return ScriptMinifier.Mode.resolve(getString("minify"), getString("preservelines"));
+    }
+
+    /**
+     * Submits the reading and parsing of the scripts to the deployment context's prefetch pool as soon as the statement is loaded.
+     * If there is no context, or the directory cannot be resolved yet, the scripts are read and parsed when the statement is run.
+     */
+    private void prefetch() {
+        DeploymentContext context = DeploymentContext.current();
+        if (context == null) {
+            return;
+        }
+
+        try {
+            Path directory = getString("path") != null ? resolveScriptDirectory() : null;
+            if (directory != null) {
+                List<Path> files = AutoscriptOperations.findScriptFiles(directory, getString("include"), getString("exclude"));
+                prefetched = submit(context, files, context.parseCache(getScriptRun().getOutputDirectory()), minifyMode());
+                prefetchedFiles = prefetched != null ? files : null;
+                prefetchContext = context;
+            }
+        } catch (Exception e) {
+            // the scripts are parsed when the statement is run, which reports any errors.
+            prefetched = null;
+            prefetchedFiles = null;
+        }
+    }
+
+    /**
+     * Finds the script files in the directory, parses each of them and then creates or replaces the scripts based on their script configurations.
+     * Scripts with a source and configuration that match the deployed script are left untouched, unless the force attribute is true.
+     * <p>
+     * {@inerhitDoc}
+     *
+     * @throws Exception thrown if the path attribute has not been provided or if there are issues loading a script file or parsing its scriptConfig.
+     * @see ChangeStatement#validate()
+     */
+    @Override
+    protected void runStatement() throws Exception {
+        List<Path> files = prefetchedFiles;
+        List<Future<ParsedScript>> futures = prefetched;
+        DeploymentContext context = futures != null ? prefetchContext : DeploymentContext.current();
+        prefetchedFiles = null;
+        prefetched = null;
+        prefetchContext = null;
+
+        try {
+            validate();
+        } catch (Exception e) {
+            discard(context, futures);
+            throw e;
+        }
+
+        ParseCache cache = context != null ? context.parseCache(getScriptRun().getOutputDirectory()) : null;
+        ScriptMinifier.Mode minify = minifyMode();
+
+        if (files == null) {
+            files = AutoscriptOperations.findScriptFiles(scriptDirectory, getString("include"), getString("exclude"));
+            futures = context != null ? submit(context, files, cache, minify) : null;
+        }
+
+        Logger.getLogger("statement").info(new MXExceptionWithDefault("scriptrun", "ScriptDirectory", "Deploying the automation scripts in {0}", files.size() + " files found in " + AutoscriptOperations.describe(scriptDirectory)));
+
+        try {
+            AutoscriptOperations.deployAll(this, scripts(context, futures, files, cache, minify));
+        } finally {
+            discard(context, futures);
+        }
+    }
+
+    /**
+     * Returns a callable for each file that returns its parsed script, in the order of the files.
+     */
+    private static List<Callable<ParsedScript>> scripts(DeploymentContext context, List<Future<ParsedScript>> futures, List<Path> files, ParseCache cache, ScriptMinifier.Mode minify) {
+        List<Callable<ParsedScript>> scripts = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            int index = i;
+            scripts.add(() -> parse(context, futures, files, index, cache, minify));
+        }
+        return scripts;
+    }
+
+    /**
+     * Returns the prefetched script of the file, or reads and parses the file if it was not prefetched. The future is removed from the
+     * list when its script is taken, so the script can be collected once it has been written rather than when the statement ends.
+     */
+    private static ParsedScript parse(DeploymentContext context, List<Future<ParsedScript>> futures, List<Path> files, int index, ParseCache cache, ScriptMinifier.Mode minify) throws Exception {
+        ParsedScript parsedScript = null;
+        if (futures != null) {
+            Future<ParsedScript> future = futures.set(index, null);
+            parsedScript = await(context, future, files.get(index));
+        }
+        return parsedScript != null ? parsedScript : ParsedScript.parse(files.get(index), AutoscriptOperations.languageOf(files.get(index)), cache, minify);
+    }
+
+    /**
+     * Discards the futures whose scripts were not taken.
+     */
+    private static void discard(DeploymentContext context, List<Future<ParsedScript>> futures) {
+        if (futures == null) {
+            return;
+        }
+        for (Future<ParsedScript> future : futures) {
+            if (future != null) {
+                context.discard(future);
+            }
+        }
+    }
+
+    /**
+     * Submits the parsing of the files to the prefetch pool, returning null if the prefetch is disabled.
+     */
+    private static List<Future<ParsedScript>> submit(DeploymentContext context, List<Path> files, ParseCache cache, ScriptMinifier.Mode minify) {
+        List<Future<ParsedScript>> futures = new ArrayList<>(files.size());
+        for (Path file : files) {
+            Future<ParsedScript> future = context.prefetch(() -> ParsedScript.parse(file, AutoscriptOperations.languageOf(file), cache, minify));
+            if (future == null) {
+                futures.forEach(context::discard);
+                return null;
+            }
+            futures.add(future);
+        }
+        return futures;
+    }
+
+    /**
+     * Waits for a prefetched script, returning null if the prefetch was cancelled so the script is parsed by the caller.
+     */
+    private static ParsedScript await(DeploymentContext context, Future<ParsedScript> future, Path file) throws Exception {
+        try {
+            return context.take(future);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw new Exception("The automation script file " + file + " could not be parsed. " + e.getCause().getMessage(), e.getCause());
+            }
+            throw e;
+        } catch (CancellationException e) {
+            // the prefetch pool was shut down, the caller parses the script.
+            return null;
+        }
+    }
+}
@@ -6,13 +6,20 @@ import psdi.dbmanage.statement.ChangeStatement;
 import psdi.dbmanage.statement.Script;
 import psdi.tools.UpdateDBCalloutBase;
 
+import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.util.HashMap;
 
 /**
  * Add the automation script change statements to the DBC command class lookup cache prior before performing the installation.
+ * The callout also opens the {@link DeploymentContext} that is shared by the statements for the duration of the installation, and reports its
+ * {@link DeploymentMetrics} when the installation is complete. If the {@link ExplainLog#EXPLAIN_PROPERTY} system property is set the context is
+ * opened in explain mode. If the {@link DeploymentSession#SESSION_PROPERTY} system property is true the statements only record their changes,
+ * the session is written at the end of each DBC script and any changes that remain, those of a script that did not complete, are discarded
+ * when the installation is complete.
  *
  * @author Jason VenHuizen
  */
@@ -32,6 +39,19 @@ public class AutoScriptExtCallout extends UpdateDBCalloutBase {
      */
     @Override
     public boolean beforeProductInstall(Connection con) {
+        DeploymentContext context = DeploymentContext.open();
+
+        Path explainFile = ExplainLog.resolveExplainFile();
+        if (explainFile != null) {
+            try {
+                context.setExplainLog(ExplainLog.open(explainFile));
+                getPrintStream().println("Explain mode is enabled, the automation script SQL will be written to " + explainFile.toAbsolutePath() + " and not run.");
+            } catch (IOException e) {
+                // the statements must not write to the database when explain mode was requested.
+                throw new IllegalStateException("The automation script explain file " + explainFile.toAbsolutePath() + " could not be created.", e);
+            }
+        }
+
         try {
             Field commandClassLookupField = StatementFactory.class.getDeclaredField("commandClassLookup");
             commandClassLookupField.setAccessible(true);
@@ -40,7 +60,10 @@ public class AutoScriptExtCallout extends UpdateDBCalloutBase {
             HashMap<String, Constructor<? extends ChangeStatement>> commandClassLookup = (HashMap<String, Constructor<? extends ChangeStatement>>) commandClassLookupField.get(null);
 
             commandClassLookup.put("add_update_autoscript", AddUpdateAutoScriptStatement.class.getConstructor(Script.class, Element.class));
+            commandClassLookup.put("add_update_autoscript_dir", AddUpdateAutoScriptDirStatement.class.getConstructor(Script.class, Element.class));
             commandClassLookup.put("remove_autoscript", RemoveAutoScriptStatement.class.getConstructor(Script.class, Element.class));
+            commandClassLookup.put("remove_autoscripts", RemoveAutoScriptsStatement.class.getConstructor(Script.class, Element.class));
+            commandClassLookup.put("extract_autoscript", ExtractAutoScriptStatement.class.getConstructor(Script.class, Element.class));
 
         } catch (Exception e) {
             getPrintStream().println("An error occurred registering the autoscript actions prior to installation.");
@@ -48,4 +71,66 @@ public class AutoScriptExtCallout extends UpdateDBCalloutBase {
         }
         return super.beforeProductInstall(con);
     }
+
+    /**
+     * {@inerhitDoc}
+     *
+     * @see UpdateDBCalloutBase#afterProductInstall(Connection)
+     */
+    @Override
+    public boolean afterProductInstall(Connection con) {
+        DeploymentContext context = DeploymentContext.current();
+        if (context != null) {
+            DeploymentSession session = context.getSession();
+            if (session != null && !session.isEmpty()) {
+                // each DBC script writes its changes with its last statement, changes that remain belong to a script that did not complete.
+                getPrintStream().println("Discarded " + session.discard() + " automation script session changes of a DBC script that did not complete.");
+            }
+
+            context.close();
+            record(context.getInstallEvent(), context.getMetrics());
+            report(context.getMetrics());
+            if (context.getExplainLog() != null) {
+                getPrintStream().println("The automation script SQL plan was written to " + context.getExplainLog().getPath().toAbsolutePath());
+            }
+        }
+        return super.afterProductInstall(con);
+    }
+
+    /**
+     * Commits the flight recorder event of the install with the totals of the metrics.
+     */
+    private void record(DeploymentEvents.Install event, DeploymentMetrics metrics) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.deployed = metrics.getCount(DeploymentMetrics.Outcome.DEPLOYED);
+            event.unchanged = metrics.getCount(DeploymentMetrics.Outcome.UNCHANGED);
+            event.removed = metrics.getCount(DeploymentMetrics.Outcome.REMOVED);
+            event.bytesRead = metrics.getBytesRead();
+            event.roundTrips = metrics.getRoundTrips();
+            event.commit();
+        }
+    }
+
+    /**
+     * Prints the summary of the scripts deployed and removed during the install to the callout print stream and writes the JSON report.
+     */
+    private void report(DeploymentMetrics metrics) {
+        if (metrics.isEmpty()) {
+            return;
+        }
+
+        metrics.printSummary(getPrintStream());
+
+        Path reportFile = DeploymentMetrics.resolveReportFile();
+        if (reportFile != null) {
+            try {
+                metrics.writeReport(reportFile);
+                getPrintStream().println("The automation script deployment report was written to " + reportFile.toAbsolutePath());
+            } catch (IOException e) {
+                getPrintStream().println("An error occurred writing the automation script deployment report to " + reportFile.toAbsolutePath());
+                e.printStackTrace(getPrintStream());
+            }
+        }
+    }
 }
@@ -0,0 +1,141 @@
+package io.sharptree.maximo.dbmanage;
+
+import com.ibm.tivoli.maximo.dbmanage.MXExceptionWithDefault;
+import org.apache.log4j.Logger;
+import org.jdom2.Element;
+import org.jdom2.filter.Filters;
+import psdi.dbmanage.statement.ChangeStatement;
+import psdi.dbmanage.statement.Script;
+
+import java.sql.Connection;
+import java.util.Set;
+
+/**
+ * Base class of the automation script change statements, which adapts the UpdateDB change statement to the {@link StatementTarget} that the
+ * {@link AutoscriptOperations} run against.
+ * <p>
+ * If the write behind {@link DeploymentSession} is enabled, the last statement of a DBC script that records changes in the session writes
+ * the session when it runs. UpdateDB records the version of the DBC script after its last statement, so the version is only recorded once
+ * the changes of the script are committed, and a session that cannot be written fails the script. If a statement of the DBC script fails
+ * the changes it recorded so far are discarded, as are the changes of an earlier DBC script that did not reach its last statement.
+ *
+ * @author Jason VenHuizen
+ */
+public abstract class AutoscriptChangeStatement extends ChangeStatement implements StatementTarget {
+
+    /**
+     * The statements that record their changes in the write behind session.
+     */
+    private static final Set<String> SESSION_STATEMENTS = Set.of("add_update_autoscript", "add_update_autoscript_dir", "remove_autoscript", "remove_autoscripts");
+
+    private final Script script;
+    private final Element element;
+
+    /**
+     * Creates a new instance of the AutoscriptChangeStatement.
+     *
+     * @param name        the change statement name.
+     * @param script      the DBC script object that contains the change statement.
+     * @param fromElement the XML script element that represents the change statement.
+     * @throws Exception thrown if an error occurs creating the change statement.
+     */
+    protected AutoscriptChangeStatement(String name, Script script, Element fromElement) throws Exception {
+        super(name, script, fromElement);
+        this.script = script;
+        this.element = fromElement;
+    }
+
+    /**
+     * Runs the statement and writes the write behind session if this is the last statement of the DBC script that records changes in it. If
+     * the statement fails the changes of the DBC script are discarded from the session.
+     *
+     * @throws Exception thrown if an error occurs running the statement or writing the session.
+     */
+    @Override
+    public final void run() throws Exception {
+        DeploymentContext context = context();
+        DeploymentSession session = context != null ? context.getSession() : null;
+        if (session == null) {
+            runStatement();
+            return;
+        }
+
+        int discarded = session.begin(script);
+        if (discarded > 0) {
+            log("SessionDiscarded", "Discarded {0} automation script session changes of a DBC script that did not complete.", discarded);
+        }
+
+        try {
+            runStatement();
+        } catch (Exception e) {
+            discarded = session.discard();
+            if (discarded > 0) {
+                log("SessionDiscarded", "Discarded {0} automation script session changes of the failed DBC script.", discarded);
+            }
+            throw e;
+        }
+
+        if (!session.isEmpty() && isLastSessionStatement()) {
+            try {
+                session.flush(context.explain(getConnection(), "automation script session"), context.getMetrics());
+            } catch (Exception e) {
+                throw new Exception("An error occurred writing the automation script session, the session changes were rolled back and the DBC script version was not recorded.", e);
+            }
+        }
+    }
+
+    /**
+     * Runs the work of the statement, the changes are recorded in the write behind session if it is enabled.
+     *
+     * @throws Exception thrown if an error occurs running the statement.
+     */
+    protected abstract void runStatement() throws Exception;
+
+    /**
+     * Returns true if no later statement of the DBC script records changes in the session, the statements are compared in document order
+     * so that statements nested in other elements are included.
+     */
+    private boolean isLastSessionStatement() {
+        if (element == null) {
+            return true;
+        }
+
+        Element root = element;
+        while (root.getParentElement() != null) {
+            root = root.getParentElement();
+        }
+
+        Element last = null;
+        for (Element statement : root.getDescendants(Filters.element())) {
+            if (SESSION_STATEMENTS.contains(statement.getName())) {
+                last = statement;
+            }
+        }
+        return last == null || last == element;
+    }
+
+    @Override
+    public String attribute(String name) {
+        return getString(name);
+    }
+
+    @Override
+    public Connection connection() throws Exception {
+        return getConnection();
+    }
+
+    @Override
+    public String outputDirectory() {
+        return getScriptRun().getOutputDirectory();
+    }
+
+    @Override
+    public DeploymentContext context() {
+        return DeploymentContext.current();
+    }
+
+    @Override
+    public void log(String key, String message, Object parameter) {
+        Logger.getLogger("statement").info(new MXExceptionWithDefault("scriptrun", key, message, parameter));
+    }
+}
@@ -46,6 +46,22 @@ public class AutoscriptConfig {
      */
     public boolean allowInvokingScriptFunctions = false;
 
+    /**
+     * Returns true if the script is an integration script based on its name prefix, or if invoking script functions is allowed.
+     *
+     * @return true if the AUTOSCRIPT interface flag should be set.
+     */
+    public boolean isInterface() {
+        String name = autoscript.toUpperCase();
+        return name.startsWith("OSOUT.") ||
+                name.startsWith("OSIN.") ||
+                name.startsWith("OSQUERY.") ||
+                name.startsWith("OSACTION.") ||
+                name.startsWith("PUBLISH.") ||
+                name.startsWith("SYNC.") ||
+                name.startsWith("INVOKE.") || allowInvokingScriptFunctions;
+    }
+
     /**
      * Validate the script configuration to perform basic sanity checks for the provided values.
      *
@@ -0,0 +1,539 @@
+package io.sharptree.maximo.dbmanage;
+
+import org.apache.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes parsed automation scripts to the database, replacing any existing script with the same name.
+ * <p>
+ * A deployer keeps one {@link BatchInsertWriter} for its lifetime, so deploying several scripts with the same deployer shares the prepared
+ * statements and batches the child rows of all of the scripts. The pending rows are written by {@link #flush()}.
+ * <p>
+ * A deployed script whose configuration is unchanged apart from its version only has its source and version updated, and an AUTOSCRIPTSTATE
+ * row added, the child rows are left as they are. In reconcile mode a script that is already deployed is not removed and recreated. Its rows are compared with the script configuration and
+ * only the rows that were added, changed or removed are inserted, updated or deleted.
+ *
+ * @author Jason VenHuizen
+ */
+public class AutoscriptDeployer implements AutoCloseable {
+
+    /**
+     * The system property that forces the AUTOSCRIPT row to be inserted with a placeholder source that is then updated, for drivers that cannot bind the CLOB in the insert.
+     */
+    public static final String TWO_STEP_SOURCE_PROPERTY = "autoscript.dbc.twostepsource";
+
+    /**
+     * The system property that enables reconcile mode for all statements that do not set the reconcile attribute.
+     */
+    public static final String RECONCILE_PROPERTY = "autoscript.dbc.reconcile";
+
+    /**
+     * The index of the objectevent column in a {@link ScriptSnapshot} launch point row.
+     */
+    private static final int LAUNCHPOINT_OBJECTEVENT = 6;
+
+    private static final String AUTOSCRIPTVARS_UPDATE = "update autoscriptvars set varbindingvalue = ?, varbindingtype = ?, vartype = ?, description = ?, allowoverride = ?, literaldatatype = ?, accessflag = ? where autoscript = ? and varname = ?";
+    private static final String AUTOSCRIPTVARS_DELETE = "delete from autoscriptvars where autoscript = ? and varname = ?";
+    private static final String SCRIPTLAUNCHPOINT_UPDATE = "update scriptlaunchpoint set description = ?, launchpointtype = ?, objectname = ?, attributename = ?, condition = ?, active = ?, objectevent = ? where autoscript = ? and launchpointname = ?";
+    private static final String SCRIPTLAUNCHPOINT_NO_EVENT_UPDATE = "update scriptlaunchpoint set description = ?, launchpointtype = ?, objectname = ?, attributename = ?, condition = ?, active = ? where autoscript = ? and launchpointname = ?";
+    private static final String SCRIPTLAUNCHPOINT_DELETE = "delete from scriptlaunchpoint where autoscript = ? and launchpointname = ?";
+    private static final String LAUNCHPOINTVARS_UPDATE = "update launchpointvars set varbindingvalue = ? where autoscript = ? and launchpointname = ? and varname = ?";
+    private static final String LAUNCHPOINTVARS_DELETE = "delete from launchpointvars where autoscript = ? and launchpointname = ? and varname = ?";
+    private static final String ACTION_UPDATE = "update action set objectname = ?, type = ?, parameter = ? where action = ? and value = ?";
+    private static final String ACTION_DELETE = "delete from action where action = ? and value = ?";
+
+    private final Connection connection;
+    private final BatchInsertWriter writer;
+    private final ScriptDeleter deleter;
+    private final DeploymentMetrics metrics;
+
+    private final boolean reconcile;
+
+    private final Set<String> pending = new HashSet<>();
+
+    /**
+     * Creates a new deployer.
+     *
+     * @param connection the connection to the target database.
+     * @param batchSize  the number of child rows to batch per table.
+     * @param reconcile  true to update the rows of a deployed script in place rather than removing and recreating the script.
+     */
+    public AutoscriptDeployer(Connection connection, int batchSize, boolean reconcile) {
+        this(connection, batchSize, reconcile, new DeploymentMetrics());
+    }
+
+    /**
+     * Creates a new deployer that records the scripts it deploys and its statement executions in the metrics.
+     *
+     * @param connection the connection to the target database.
+     * @param batchSize  the number of child rows to batch per table.
+     * @param reconcile  true to update the rows of a deployed script in place rather than removing and recreating the script.
+     * @param metrics    the metrics of the run.
+     */
+    public AutoscriptDeployer(Connection connection, int batchSize, boolean reconcile, DeploymentMetrics metrics) {
+        this(connection, batchSize, reconcile, metrics, DeploymentContext.currentTableMetadata());
+    }
+
+    /**
+     * Creates a new deployer that records the scripts it deploys in the metrics and writes its rows with the table metadata.
+     *
+     * @param connection    the connection to the target database.
+     * @param batchSize     the number of child rows to batch per table.
+     * @param reconcile     true to update the rows of a deployed script in place rather than removing and recreating the script.
+     * @param metrics       the metrics of the run.
+     * @param tableMetadata the table metadata of the target database.
+     */
+    public AutoscriptDeployer(Connection connection, int batchSize, boolean reconcile, DeploymentMetrics metrics, TableMetadata tableMetadata) {
+        this.connection = connection;
+        this.writer = new BatchInsertWriter(connection, batchSize, metrics, tableMetadata);
+        this.deleter = ScriptDeleter.forRedeploy(connection, metrics);
+        this.metrics = metrics;
+        this.reconcile = reconcile;
+    }
+
+    /**
+     * Returns true if reconcile mode is enabled, either by the value, such as a statement attribute, or by the {@link #RECONCILE_PROPERTY} system property if the value is not set.
+     *
+     * @param value an explicit reconcile value that takes precedence over the system property if not null or empty.
+     * @return true if reconcile mode is enabled.
+     */
+    public static boolean resolveReconcile(String value) {
+        if (value == null || value.isEmpty()) {
+            return Boolean.getBoolean(RECONCILE_PROPERTY);
+        }
+        return "true".equalsIgnoreCase(value.trim());
+    }
+
+    /**
+     * Deploys the script, removing and recreating it unless it is already deployed with the same source and configuration.
+     * In reconcile mode a deployed script is updated in place, unless force is true.
+     * The child rows of the script may remain pending until {@link #flush()} is called.
+     *
+     * @param script the parsed script to deploy.
+     * @param force  true to remove and recreate the script even if it is unchanged.
+     * @return true if the script was written, false if it was unchanged.
+     * @throws Exception thrown if an error occurs writing the script.
+     */
+    public boolean deploy(ParsedScript script, boolean force) throws Exception {
+        long start = System.nanoTime();
+        boolean written = write(script, force);
+
+        metrics.parsed(script);
+        metrics.script(script.getConfig().autoscript, written ? DeploymentMetrics.Outcome.DEPLOYED : DeploymentMetrics.Outcome.UNCHANGED,
+                script.getTotalNanos(), System.nanoTime() - start);
+        return written;
+    }
+
+    private boolean write(ParsedScript script, boolean force) throws Exception {
+        String autoscript = script.getConfig().autoscript.toUpperCase();
+        track(autoscript);
+
+        // skip the script if it is already deployed with the same source and configuration.
+        if (!force) {
+            Comparison comparison = compare(script, autoscript);
+            if (comparison != Comparison.CHANGED) {
+                return comparison == Comparison.UPDATED;
+            }
+        }
+
+        // remove the automation script if it exists.
+        deleter.delete(autoscript);
+
+        createScript(script);
+        return true;
+    }
+
+    /**
+     * Deploys the scripts as one unit of work. Each script is compared with the deployed script first, then the scripts that are recreated
+     * are removed with one set based delete per table and created with their child rows batched together, so the round trips do not grow
+     * with the number of scripts. The scripts must have distinct names and the pending rows are written before this returns.
+     *
+     * @param scripts the parsed scripts to deploy.
+     * @param forced  the upper case names of the scripts that are recreated even if they are unchanged.
+     * @return the number of scripts that were written.
+     * @throws Exception thrown if an error occurs writing the scripts.
+     */
+    public int deployAll(List<ParsedScript> scripts, Set<String> forced) throws Exception {
+        List<ParsedScript> recreated = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        int written = 0;
+
+        for (ParsedScript script : scripts) {
+            long start = System.nanoTime();
+            String autoscript = script.getConfig().autoscript.toUpperCase();
+            track(autoscript);
+
+            Comparison comparison = forced.contains(autoscript) ? Comparison.CHANGED : compare(script, autoscript);
+            if (comparison == Comparison.CHANGED) {
+                recreated.add(script);
+                names.add(autoscript);
+                continue;
+            }
+
+            if (comparison == Comparison.UPDATED) {
+                written++;
+            }
+            metrics.parsed(script);
+            metrics.script(autoscript, comparison == Comparison.UPDATED ? DeploymentMetrics.Outcome.DEPLOYED : DeploymentMetrics.Outcome.UNCHANGED,
+                    script.getTotalNanos(), System.nanoTime() - start);
+        }
+
+        if (!recreated.isEmpty()) {
+            long start = System.nanoTime();
+            deleter.deleteAll(names);
+            for (ParsedScript script : recreated) {
+                writer.setScript(script.getPlan().getAutoscript());
+                createScript(script);
+            }
+            flush();
+
+            // the scripts are removed and written together, so each is recorded with an equal share of the time.
+            long share = (System.nanoTime() - start) / recreated.size();
+            for (ParsedScript script : recreated) {
+                metrics.parsed(script);
+                metrics.script(script.getPlan().getAutoscript(), DeploymentMetrics.Outcome.DEPLOYED, script.getTotalNanos(), share);
+            }
+            written += recreated.size();
+        } else {
+            flush();
+        }
+        return written;
+    }
+
+    /**
+     * Adds the script to the pending scripts, writing the pending rows first if rows of a script with the same name are still pending.
+     */
+    private void track(String autoscript) throws Exception {
+        // rows of a script with the same name that are still pending must be written before the script is compared or removed.
+        if (!pending.add(autoscript)) {
+            flush();
+            pending.add(autoscript);
+        }
+        writer.setScript(autoscript);
+    }
+
+    /**
+     * Compares the script with the deployed script, updating the deployed script in place if only its version and source changed or in reconcile mode.
+     */
+    private Comparison compare(ParsedScript script, String autoscript) throws Exception {
+        long loading = System.nanoTime();
+        ScriptSnapshot deployed = ScriptSnapshot.load(connection, autoscript);
+        metrics.time(DeploymentMetrics.Phase.COMPARE, System.nanoTime() - loading);
+        metrics.roundTrips(deployed == null ? 1 : ScriptSnapshot.QUERIES);
+        ScriptSnapshot target = ScriptSnapshot.fromConfig(script.getConfig(), script.getLanguage(), script.getSource().chars());
+        if (target.matches(deployed)) {
+            return Comparison.UNCHANGED;
+        }
+
+        // the common hotfix only changes the script logic, so the source is updated without touching the child rows.
+        if (deployed != null && target.configMatches(deployed)) {
+            updateSource(script, autoscript);
+            return Comparison.UPDATED;
+        }
+
+        if (reconcile && deployed != null) {
+            reconcileScript(script, deployed, target);
+            return Comparison.UPDATED;
+        }
+        return Comparison.CHANGED;
+    }
+
+    /**
+     * Writes the pending child rows.
+     *
+     * @throws Exception thrown if an error occurs writing the rows.
+     */
+    public void flush() throws Exception {
+        writer.flush();
+        pending.clear();
+    }
+
+    /**
+     * Closes the prepared statements, any rows that have not been flushed are discarded.
+     *
+     * @throws SQLException thrown if an error occurs closing the statements.
+     */
+    @Override
+    public void close() throws SQLException {
+        try {
+            writer.close();
+        } finally {
+            deleter.close();
+        }
+    }
+
+    /**
+     * Updates the deployed rows of the script to match the script configuration, writing only the rows that differ.
+     */
+    private void reconcileScript(ParsedScript script, ScriptSnapshot deployed, ScriptSnapshot target) throws Exception {
+        AutoscriptConfig config = script.getConfig();
+        String autoscript = target.getAutoscript();
+
+        if (!target.scriptMatches(deployed)) {
+            updateAutoscript(config, autoscript, script.getSource(), script.getLanguage(), !target.sourceMatches(deployed));
+        }
+
+        Set<String> removed = new HashSet<>(deployed.getVariables().keySet());
+        if (config.autoScriptVars != null) {
+            for (AutoscriptVar autoscriptVar : config.autoScriptVars) {
+                String key = ScriptSnapshot.normalize(autoscriptVar.varname);
+                removed.remove(key);
+
+                String[] existing = deployed.getVariables().get(key);
+                if (existing == null) {
+                    createAutoscriptVar(autoscript, autoscriptVar);
+                } else if (!Arrays.equals(existing, target.getVariables().get(key))) {
+                    writer.batch(AUTOSCRIPTVARS_UPDATE,
+                            autoscriptVar.varBindingValue,
+                            autoscriptVar.varBindingType,
+                            autoscriptVar.varType,
+                            autoscriptVar.description,
+                            autoscriptVar.allowOverride,
+                            autoscriptVar.literalDataType,
+                            autoscriptVar.accessFlag(),
+                            autoscript,
+                            key);
+                }
+            }
+        }
+        for (String varname : removed) {
+            writer.batch(AUTOSCRIPTVARS_DELETE, autoscript, varname);
+        }
+
+        Set<String> removedLaunchPoints = new HashSet<>(deployed.getLaunchPoints().keySet());
+        Set<String> removedActions = new HashSet<>(deployed.getActions().keySet());
+        Set<String> removedLaunchPointVars = new HashSet<>(deployed.getLaunchPointVariables().keySet());
+        if (config.scriptLaunchPoints != null) {
+            for (ScriptLaunchPoint scriptLaunchPoint : config.scriptLaunchPoints) {
+                String key = ScriptSnapshot.normalize(scriptLaunchPoint.launchPointName);
+                removedLaunchPoints.remove(key);
+
+                String[] existing = deployed.getLaunchPoints().get(key);
+                if (existing == null) {
+                    insertScriptLaunchPoint(autoscript, scriptLaunchPoint);
+                } else if (!Arrays.equals(existing, target.getLaunchPoints().get(key))) {
+                    updateScriptLaunchPoint(autoscript, key, existing, scriptLaunchPoint);
+                }
+
+                if (scriptLaunchPoint.launchPointType.equalsIgnoreCase("ACTION")) {
+                    removedActions.remove(key);
+
+                    String[] existingAction = deployed.getActions().get(key);
+                    if (existingAction == null) {
+                        insertAction(autoscript, scriptLaunchPoint);
+                    } else if (!Arrays.equals(existingAction, target.getActions().get(key))) {
+                        writer.batch(ACTION_UPDATE,
+                                scriptLaunchPoint.objectName,
+                                "CUSTOM",
+                                autoscript + "," + scriptLaunchPoint.launchPointName + "," + scriptLaunchPoint.actionName,
+                                key,
+                                ScriptSnapshot.SCRIPT_ACTION_CLASS);
+                    }
+                }
+
+                if (scriptLaunchPoint.launchPointVars != null) {
+                    for (LaunchPointVar launchPointVar : scriptLaunchPoint.launchPointVars) {
+                        String varKey = ScriptSnapshot.launchPointVariableKey(scriptLaunchPoint.launchPointName, launchPointVar.varName);
+                        removedLaunchPointVars.remove(varKey);
+
+                        String[] existingVar = deployed.getLaunchPointVariables().get(varKey);
+                        if (existingVar == null) {
+                            createLaunchPointVar(autoscript, scriptLaunchPoint.launchPointName, launchPointVar);
+                        } else if (!Arrays.equals(existingVar, target.getLaunchPointVariables().get(varKey))) {
+                            writer.batch(LAUNCHPOINTVARS_UPDATE, launchPointVar.varBindingValue, autoscript, key, ScriptSnapshot.normalize(launchPointVar.varName));
+                        }
+                    }
+                }
+            }
+        }
+        for (String launchPointName : removedLaunchPoints) {
+            writer.batch(SCRIPTLAUNCHPOINT_DELETE, autoscript, launchPointName);
+        }
+        for (String action : removedActions) {
+            writer.batch(ACTION_DELETE, action, ScriptSnapshot.SCRIPT_ACTION_CLASS);
+        }
+        for (String varKey : removedLaunchPointVars) {
+            int separator = varKey.indexOf('\u0000');
+            writer.batch(LAUNCHPOINTVARS_DELETE, autoscript, varKey.substring(0, separator), varKey.substring(separator + 1));
+        }
+    }
+
+    /**
+     * Updates the AUTOSCRIPT row in place, streaming the source to the CLOB only if it has changed.
+     */
+    private void updateAutoscript(AutoscriptConfig config, String autoscript, ScriptSource source, String scriptLanguage, boolean sourceChanged) throws Exception {
+        String sql = "update autoscript set description = ?, version = ?, loglevel = ?, status = ?, active = ?, scriptlanguage = ?, interface = ?, changeby = ?, changedate = "
+                + BatchInsertWriter.currentTimestampExpression(writer.getProductName())
+                + (sourceChanged ? ", source = ?" : "")
+                + " where autoscript = ?";
+
+        DeploymentEvents.SourceUpload event = new DeploymentEvents.SourceUpload();
+        event.begin();
+        try (PreparedStatement s = connection.prepareStatement(sql)) {
+            Object[] values = {config.description, config.version, config.logLevel, "Active", config.active, scriptLanguage, config.isInterface(), "MAXADMIN"};
+            int index = 1;
+            for (Object value : values) {
+                BatchInsertWriter.bind(s, index++, value);
+            }
+            if (sourceChanged) {
+                BatchInsertWriter.bind(s, index++, source);
+            }
+            s.setString(index, autoscript);
+
+            executeUpdate(s, sql, sourceChanged ? DeploymentMetrics.Phase.SOURCE : DeploymentMetrics.Phase.UPDATE);
+        }
+        if (sourceChanged) {
+            uploaded(event, autoscript, source, false);
+        }
+    }
+
+    /**
+     * Updates the source and version of a script whose configuration is unchanged and records the change in AUTOSCRIPTSTATE.
+     */
+    private void updateSource(ParsedScript script, String autoscript) throws Exception {
+        String sql = "update autoscript set source = ?, version = ?, changeby = ?, changedate = "
+                + BatchInsertWriter.currentTimestampExpression(writer.getProductName())
+                + " where autoscript = ?";
+
+        DeploymentEvents.SourceUpload event = new DeploymentEvents.SourceUpload();
+        event.begin();
+        try (PreparedStatement s = connection.prepareStatement(sql)) {
+            BatchInsertWriter.bind(s, 1, script.getSource());
+            BatchInsertWriter.bind(s, 2, script.getConfig().version);
+            BatchInsertWriter.bind(s, 3, "MAXADMIN");
+            s.setString(4, autoscript);
+
+            executeUpdate(s, sql, DeploymentMetrics.Phase.SOURCE);
+        }
+        uploaded(event, autoscript, script.getSource(), false);
+
+        DeploymentPlan.stateRow(autoscript).insert(writer);
+    }
+
+    private void executeUpdate(PreparedStatement statement, String sql, DeploymentMetrics.Phase phase) throws SQLException {
+        long start = System.nanoTime();
+        int count = statement.executeUpdate();
+        metrics.executed(phase, sql, System.nanoTime() - start, count);
+    }
+
+    private void createScript(ParsedScript script) throws Exception {
+        DeploymentPlan plan = script.getPlan();
+
+        insertAutoscript(plan, script.getSource());
+
+        for (DeploymentPlan.Row row : plan.getRows()) {
+            row.insert(writer);
+        }
+    }
+
+    /**
+     * Inserts the AUTOSCRIPT row with the source bound to the CLOB column in the same statement. If the driver does not support
+     * streaming the CLOB in an insert, or the {@link #TWO_STEP_SOURCE_PROPERTY} system property is true, the row is inserted with a
+     * placeholder source that is then replaced with a separate update.
+     */
+    private void insertAutoscript(DeploymentPlan plan, ScriptSource source) throws Exception {
+        String autoscript = plan.getAutoscript();
+
+        DeploymentEvents.SourceUpload event = new DeploymentEvents.SourceUpload();
+        event.begin();
+        if (!Boolean.getBoolean(TWO_STEP_SOURCE_PROPERTY)) {
+            try {
+                writer.execute(DeploymentPlan.AUTOSCRIPT_INSERT, plan.scriptValues(source));
+                uploaded(event, autoscript, source, false);
+                return;
+            } catch (SQLFeatureNotSupportedException e) {
+                Logger.getLogger("statement").info("The JDBC driver does not support streaming the source in the insert, the source of " + autoscript + " will be updated separately.");
+            }
+        }
+
+        writer.execute(DeploymentPlan.AUTOSCRIPT_INSERT, plan.scriptValues("1=1"));
+
+        // stream the source to the CLOB from the decoded file buffer.
+        String sql = "update autoscript set source = ? where autoscript = ?";
+        try (PreparedStatement s = connection.prepareStatement(sql)) {
+            s.setCharacterStream(1, source.reader(), source.length());
+            s.setString(2, autoscript);
+
+            executeUpdate(s, sql, DeploymentMetrics.Phase.SOURCE);
+        }
+        uploaded(event, autoscript, source, true);
+    }
+
+    private static void uploaded(DeploymentEvents.SourceUpload event, String autoscript, ScriptSource source, boolean twoStep) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.autoscript = autoscript;
+            event.bytes = source.getByteCount();
+            event.characters = source.length();
+            event.twoStep = twoStep;
+            event.commit();
+        }
+    }
+
+    private void createAutoscriptVar(String autoscript, AutoscriptVar autoscriptVar) throws Exception {
+        DeploymentPlan.variableRow(autoscript, autoscriptVar).insert(writer);
+    }
+
+    private void insertScriptLaunchPoint(String autoscript, ScriptLaunchPoint scriptLaunchPoint) throws Exception {
+        DeploymentPlan.launchPointRow(autoscript, scriptLaunchPoint).insert(writer);
+    }
+
+    private void updateScriptLaunchPoint(String autoscript, String launchPointName, String[] existing, ScriptLaunchPoint scriptLaunchPoint) throws Exception {
+        Integer objectEvent = scriptLaunchPoint.objectEvent();
+
+        if (objectEvent != null) {
+            writer.batch(SCRIPTLAUNCHPOINT_UPDATE,
+                    scriptLaunchPoint.description,
+                    scriptLaunchPoint.launchPointType,
+                    scriptLaunchPoint.objectName,
+                    scriptLaunchPoint.attributeName,
+                    scriptLaunchPoint.condition,
+                    scriptLaunchPoint.active,
+                    objectEvent,
+                    autoscript,
+                    launchPointName);
+        } else {
+            // as with the insert, the objectevent column is not written when the launch point does not define an event, so the row is
+            // replaced to clear an event that was previously set. The delete runs immediately so it cannot be reordered after the batched insert.
+            if (!existing[LAUNCHPOINT_OBJECTEVENT].isEmpty()) {
+                try (PreparedStatement s = connection.prepareStatement(SCRIPTLAUNCHPOINT_DELETE)) {
+                    s.setString(1, autoscript);
+                    s.setString(2, launchPointName);
+                    executeUpdate(s, SCRIPTLAUNCHPOINT_DELETE, DeploymentMetrics.Phase.DELETE);
+                }
+                insertScriptLaunchPoint(autoscript, scriptLaunchPoint);
+            } else {
+                writer.batch(SCRIPTLAUNCHPOINT_NO_EVENT_UPDATE,
+                        scriptLaunchPoint.description,
+                        scriptLaunchPoint.launchPointType,
+                        scriptLaunchPoint.objectName,
+                        scriptLaunchPoint.attributeName,
+                        scriptLaunchPoint.condition,
+                        scriptLaunchPoint.active,
+                        autoscript,
+                        launchPointName);
+            }
+        }
+    }
+
+    private void insertAction(String autoscript, ScriptLaunchPoint scriptLaunchPoint) throws Exception {
+        DeploymentPlan.actionRow(autoscript, scriptLaunchPoint).insert(writer);
+    }
+
+    private void createLaunchPointVar(String autoscript, String launchPointName, LaunchPointVar launchPointVar) throws Exception {
+        DeploymentPlan.launchPointVarRow(autoscript, launchPointName, launchPointVar).insert(writer);
+    }
+
+    private enum Comparison {
+        UNCHANGED, UPDATED, CHANGED
+    }
+}
@@ -0,0 +1,434 @@
+package io.sharptree.maximo.dbmanage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The work of the automation script change statements, run against a {@link StatementTarget} so that the same code deploys and removes
+ * scripts from UpdateDB and from the {@link StandaloneDeployer}.
+ * <p>
+ * The operations write with the connection, metrics, table metadata, explain log and write behind session of the target's
+ * {@link DeploymentContext}, or with a plain connection and metrics that are not reported if the target has no context. They do not commit,
+ * the caller owns the transaction.
+ *
+ * @author Jason VenHuizen
+ */
+public final class AutoscriptOperations {
+
+    /**
+     * The include patterns of the `add_update_autoscript_dir` statement if the include attribute is not provided.
+     */
+    public static final String DEFAULT_INCLUDE = "**/*.js,**/*.py";
+
+    /**
+     * Separates a zip or jar archive from the path of an entry in the archive, as in scripts.zip!/path/to/script.js.
+     */
+    public static final String ARCHIVE_SEPARATOR = "!/";
+
+    private AutoscriptOperations() {
+    }
+
+    /**
+     * Resolves a statement path, first against the working directory and then against the output directory.
+     * <p>
+     * A path that contains {@link #ARCHIVE_SEPARATOR} names an entry in a zip or jar archive. The archive is resolved in the same way and
+     * opened as a read only file system by the deployment context, so that each archive is opened once per run, and the entry is returned
+     * as a path of that file system.
+     *
+     * @param path            the path attribute value.
+     * @param outputDirectory the DBC output directory, may be null.
+     * @param directory       true if the path must be a directory, false if it must be a file.
+     * @param context         the deployment context that opens the archives, may be null.
+     * @return the file or directory or null if the path cannot be resolved.
+     * @throws Exception thrown if the archive cannot be opened.
+     */
+    public static Path resolvePath(String path, String outputDirectory, boolean directory, DeploymentContext context) throws Exception {
+        int separator = path.indexOf(ARCHIVE_SEPARATOR);
+        if (separator < 0) {
+            File file = resolveFile(path, outputDirectory, directory);
+            return file != null ? file.toPath() : null;
+        }
+
+        File archive = resolveFile(path.substring(0, separator), outputDirectory, false);
+        if (archive == null || !archive.isFile()) {
+            return null;
+        }
+
+        FileSystem fileSystem;
+        try {
+            fileSystem = context != null ? context.archive(archive.toPath()) : DeploymentContext.sharedArchive(archive.toPath());
+        } catch (IOException e) {
+            throw new Exception("The archive " + archive.getPath() + " cannot be opened: " + e.getMessage(), e);
+        }
+
+        Path entry = fileSystem.getPath("/" + path.substring(separator + ARCHIVE_SEPARATOR.length()));
+        return (directory ? Files.isDirectory(entry) : Files.exists(entry)) ? entry : null;
+    }
+
+    /**
+     * Returns the path for the log, the URI of an archive entry such as jar:file:///scripts.zip!/script.js or the path of a plain file.
+     *
+     * @param path the resolved path.
+     * @return the path description.
+     */
+    public static String describe(Path path) {
+        return path.getFileSystem() == FileSystems.getDefault() ? path.toString() : path.toUri().toString();
+    }
+
+    private static File resolveFile(String path, String outputDirectory, boolean directory) {
+        File checkFile = new File(path);
+
+        if (directory ? checkFile.isDirectory() : checkFile.exists()) {
+            return checkFile;
+        } else if (outputDirectory != null) {
+            checkFile = new File(outputDirectory + File.separator + path);
+            if (directory ? checkFile.isDirectory() : checkFile.exists()) {
+                return checkFile;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the files below the directory that match the include patterns and do not match the exclude patterns, sorted by their relative path.
+     *
+     * @param directory the script directory.
+     * @param include   the comma separated include glob patterns, {@link #DEFAULT_INCLUDE} if null or blank.
+     * @param exclude   the comma separated exclude glob patterns, may be null.
+     * @return the script files.
+     * @throws Exception thrown if the directory cannot be read or the language of a matching file cannot be determined.
+     */
+    public static List<Path> findScriptFiles(Path directory, String include, String exclude) throws Exception {
+        FileSystem fileSystem = directory.getFileSystem();
+        List<PathMatcher> includes = matchers(fileSystem, include != null && !include.trim().isEmpty() ? include : DEFAULT_INCLUDE);
+        List<PathMatcher> excludes = matchers(fileSystem, exclude);
+
+        try (Stream<Path> paths = Files.walk(directory)) {
+            List<Path> files = paths.filter(Files::isRegularFile)
+                    .filter(file -> {
+                        Path relative = directory.relativize(file);
+                        return matchesAny(includes, relative) && !matchesAny(excludes, relative);
+                    })
+                    .sorted((a, b) -> directory.relativize(a).toString().compareTo(directory.relativize(b).toString()))
+                    .collect(Collectors.toList());
+
+            for (Path file : files) {
+                if (languageOf(file) == null) {
+                    throw new Exception("The language of the automation script file " + file + " cannot be determined from the file extension, the extension must be .js, .mjs or .py.");
+                }
+            }
+            return files;
+        }
+    }
+
+    /**
+     * Creates the glob matchers of the directory's file system for the comma separated patterns. A pattern that starts with **&#47; also matches files directly in the directory.
+     */
+    private static List<PathMatcher> matchers(FileSystem fileSystem, String patterns) {
+        List<PathMatcher> matchers = new ArrayList<>();
+        if (patterns == null) {
+            return matchers;
+        }
+
+        for (String pattern : patterns.split(",")) {
+            pattern = pattern.trim();
+            if (pattern.isEmpty()) {
+                continue;
+            }
+            matchers.add(fileSystem.getPathMatcher("glob:" + pattern));
+            if (pattern.startsWith("**/")) {
+                matchers.add(fileSystem.getPathMatcher("glob:" + pattern.substring(3)));
+            }
+        }
+        return matchers;
+    }
+
+    private static boolean matchesAny(List<PathMatcher> matchers, Path path) {
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the script language for the file extension, .js and .mjs for JavaScript and .py for Python.
+     *
+     * @param file the script file.
+     * @return the script language or null if the extension is not a script extension.
+     */
+    public static String languageOf(Path file) {
+        String name = file.getFileName().toString().toLowerCase();
+        if (name.endsWith(".js") || name.endsWith(".mjs")) {
+            return "javascript";
+        } else if (name.endsWith(".py")) {
+            return "python";
+        }
+        return null;
+    }
+
+    /**
+     * Deploys a script with the force, reconcile and batchsize attributes of the target, the work of the `add_update_autoscript` statement.
+     *
+     * @param target the statement target.
+     * @param script the parsed script.
+     * @return true if the script was written or added to the write behind session, false if it is unchanged.
+     * @throws Exception thrown if an error occurs writing the script.
+     */
+    public static boolean deploy(StatementTarget target, ParsedScript script) throws Exception {
+        DeploymentContext context = target.context();
+        DeploymentSession session = context != null ? context.getSession() : null;
+        boolean force = "true".equalsIgnoreCase(target.attribute("force"));
+
+        if (session != null) {
+            session.deploy(script, force, AutoscriptDeployer.resolveReconcile(target.attribute("reconcile")), BatchInsertWriter.resolveBatchSize(target.attribute("batchsize")));
+            return true;
+        }
+
+        try (AutoscriptDeployer deployer = deployer(target)) {
+            boolean written = deployer.deploy(script, force);
+            if (!written) {
+                target.log("ScriptUnchanged", "The automation script {0} is unchanged and will not be updated.", script.getConfig().autoscript.toUpperCase());
+            }
+            deployer.flush();
+            return written;
+        }
+    }
+
+    /**
+     * Deploys the scripts in order with one deployer, the work of the `add_update_autoscript_dir` statement. Each script is obtained from its
+     * callable just before it is deployed, so that the parsing of the later scripts overlaps the writing of the earlier ones.
+     *
+     * @param target  the statement target.
+     * @param scripts the callables that return the parsed scripts.
+     * @return the number of scripts that were written or added to the write behind session.
+     * @throws Exception thrown if an error occurs parsing or writing a script.
+     */
+    public static int deployAll(StatementTarget target, List<Callable<ParsedScript>> scripts) throws Exception {
+        DeploymentContext context = target.context();
+        DeploymentSession session = context != null ? context.getSession() : null;
+        boolean force = "true".equalsIgnoreCase(target.attribute("force"));
+
+        if (session != null) {
+            boolean reconcile = AutoscriptDeployer.resolveReconcile(target.attribute("reconcile"));
+            int batchSize = BatchInsertWriter.resolveBatchSize(target.attribute("batchsize"));
+            for (Callable<ParsedScript> script : scripts) {
+                session.deploy(script.call(), force, reconcile, batchSize);
+            }
+            return scripts.size();
+        }
+
+        int deployed = 0;
+        try (AutoscriptDeployer deployer = deployer(target)) {
+            for (Callable<ParsedScript> script : scripts) {
+                ParsedScript parsedScript = script.call();
+
+                if (deployer.deploy(parsedScript, force)) {
+                    deployed++;
+                } else {
+                    target.log("ScriptUnchanged", "The automation script {0} is unchanged and will not be updated.", parsedScript.getConfig().autoscript.toUpperCase());
+                }
+            }
+            deployer.flush();
+        }
+
+        target.log("ScriptDirectoryDeployed", "Deployed {0} automation scripts", deployed + " of " + scripts.size());
+        return deployed;
+    }
+
+    /**
+     * Removes the script named by the name attribute of the target, the work of the `remove_autoscript` statement.
+     *
+     * @param target the statement target.
+     * @throws Exception thrown if an error occurs executing the SQL statements.
+     */
+    public static void remove(StatementTarget target) throws Exception {
+        String name = target.attribute("name");
+        DeploymentContext context = target.context();
+        DeploymentSession session = context != null ? context.getSession() : null;
+        if (session != null) {
+            session.remove(name);
+            return;
+        }
+
+        DeploymentMetrics metrics = metrics(context);
+        DeploymentEvents.ScriptRemove event = new DeploymentEvents.ScriptRemove();
+        event.begin();
+        long start = System.nanoTime();
+
+        int deleted;
+        try (ScriptDeleter deleter = ScriptDeleter.forRemove(connection(target), metrics)) {
+            deleted = deleter.delete(name);
+        }
+        metrics.script(name, DeploymentMetrics.Outcome.REMOVED, 0, System.nanoTime() - start);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.autoscript = name.toUpperCase();
+            event.scripts = 1;
+            event.rows = deleted;
+            event.commit();
+        }
+    }
+
+    /**
+     * Removes the scripts listed in the names attribute of the target and the scripts with names that are like its pattern attribute, the
+     * work of the `remove_autoscripts` statement.
+     *
+     * @param target the statement target.
+     * @return the number of scripts that were removed or added to the write behind session as removed.
+     * @throws Exception thrown if an error occurs executing the SQL statements.
+     */
+    public static int removeAll(StatementTarget target) throws Exception {
+        Set<String> autoscripts = new LinkedHashSet<>();
+
+        String names = target.attribute("names");
+        if (names != null) {
+            for (String name : names.split("[,\\s]+")) {
+                if (!name.isEmpty()) {
+                    autoscripts.add(name.toUpperCase());
+                }
+            }
+        }
+
+        String pattern = target.attribute("pattern");
+        DeploymentContext context = target.context();
+        Connection connection = connection(target);
+        DeploymentMetrics metrics = metrics(context);
+        DeploymentEvents.ScriptRemove event = new DeploymentEvents.ScriptRemove();
+        event.begin();
+        long start = System.nanoTime();
+
+        if (pattern != null && !pattern.trim().isEmpty()) {
+            autoscripts.addAll(namesLike(connection, pattern, metrics));
+        }
+
+        DeploymentSession session = context != null ? context.getSession() : null;
+        if (session != null) {
+            if (pattern != null && !pattern.trim().isEmpty()) {
+                autoscripts.addAll(session.deployedMatching(pattern));
+            }
+            autoscripts.forEach(session::remove);
+            return autoscripts.size();
+        }
+
+        target.log("RemoveScripts", "Removing {0} automation scripts.", autoscripts.size());
+
+        int deleted;
+        try (ScriptDeleter deleter = ScriptDeleter.forRemove(connection, metrics)) {
+            deleted = deleter.deleteAll(autoscripts);
+        }
+
+        // the scripts are removed together, so each is recorded with an equal share of the time.
+        long share = autoscripts.isEmpty() ? 0 : (System.nanoTime() - start) / autoscripts.size();
+        for (String autoscript : autoscripts) {
+            metrics.script(autoscript, DeploymentMetrics.Outcome.REMOVED, 0, share);
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.autoscript = String.join(",", autoscripts);
+            event.scripts = autoscripts.size();
+            event.rows = deleted;
+            event.commit();
+        }
+        return autoscripts.size();
+    }
+
+    /**
+     * Returns the names of the scripts in the database that are like the pattern, a backslash escapes a literal _ or % in the same way as
+     * {@link DeploymentSession#deployedMatching(String)} so the deployed and pending scripts are matched alike.
+     *
+     * @param connection the database connection.
+     * @param pattern    the SQL like pattern.
+     * @param metrics    the metrics that count the round trip.
+     * @return the upper case names of the matching scripts.
+     * @throws Exception thrown if an error occurs executing the SQL statement.
+     */
+    static List<String> namesLike(Connection connection, String pattern, DeploymentMetrics metrics) throws Exception {
+        List<String> names = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement("select autoscript from autoscript where autoscript like ? escape '\\'")) {
+            statement.setString(1, pattern.trim().toUpperCase());
+            metrics.roundTrips(1);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    names.add(resultSet.getString(1));
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Extracts the scripts listed in the names attribute of the target and the scripts with names that are like its pattern attribute, or
+     * all of the scripts if neither is provided, to the directory of its path attribute, the work of the `extract_autoscript` statement.
+     *
+     * @param target the statement target.
+     * @return the extracted files.
+     * @throws Exception thrown if an error occurs reading the scripts or writing the files.
+     */
+    public static List<Path> extract(StatementTarget target) throws Exception {
+        String path = target.attribute("path");
+        File directory = new File(path);
+        if (!directory.isAbsolute() && target.outputDirectory() != null) {
+            directory = new File(target.outputDirectory() + File.separator + path);
+        }
+
+        List<String> names = new ArrayList<>();
+        if (target.attribute("names") != null) {
+            for (String name : target.attribute("names").split("[,\\s]+")) {
+                if (!name.isEmpty()) {
+                    names.add(name);
+                }
+            }
+        }
+
+        ScriptExtractor extractor = new ScriptExtractor(connection(target), directory.toPath(), metrics(target.context()), Runtime.getRuntime().availableProcessors());
+        List<Path> files = extractor.extract(names, target.attribute("pattern"));
+
+        target.log("ScriptsExtracted", "Extracted {0}", files.size() + " automation scripts to " + directory.getPath());
+        if (!extractor.getLanguageChanges().isEmpty()) {
+            target.log("ScriptLanguageChanged", "The automation scripts {0} are not JavaScript or Python, they were written to .js files and are deployed again as JavaScript.",
+                    String.join(", ", extractor.getLanguageChanges()));
+        }
+        return files;
+    }
+
+    /**
+     * Creates a deployer with the batchsize and reconcile attributes of the target.
+     */
+    private static AutoscriptDeployer deployer(StatementTarget target) throws Exception {
+        DeploymentContext context = target.context();
+        return new AutoscriptDeployer(connection(target), BatchInsertWriter.resolveBatchSize(target.attribute("batchsize")),
+                AutoscriptDeployer.resolveReconcile(target.attribute("reconcile")), metrics(context),
+                context != null ? context.getTableMetadata() : new TableMetadata());
+    }
+
+    /**
+     * Returns the connection of the target, which is the explain connection if its context is in explain mode.
+     */
+    private static Connection connection(StatementTarget target) throws Exception {
+        DeploymentContext context = target.context();
+        return context != null ? context.explain(target.connection(), target.toString()) : target.connection();
+    }
+
+    private static DeploymentMetrics metrics(DeploymentContext context) {
+        return context != null ? context.getMetrics() : new DeploymentMetrics();
+    }
+}
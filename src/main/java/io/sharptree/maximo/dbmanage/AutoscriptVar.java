@@ -56,6 +56,15 @@ public class AutoscriptVar {
      */
     public boolean noAction;
 
+    /**
+     * Returns the AUTOSCRIPTVARS accessflag code for the noValidation, noAccessCheck and noAction flags.
+     *
+     * @return the accessflag code.
+     */
+    public int accessFlag() {
+        return EventCodes.accessFlag(noValidation, noAccessCheck, noAction);
+    }
+
     /**
      * Validate the autoScriptVar to perform basic sanity checks for the provided values.
      *
@@ -0,0 +1,498 @@
+package io.sharptree.maximo.dbmanage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes rows using one reusable {@link PreparedStatement} per insert template, grouping the rows into JDBC batches
+ * that are executed with {@link PreparedStatement#executeBatch()} each time the configured batch size is reached.
+ * <p>
+ * The unique id columns registered in MAXSEQUENCE for a table are populated from their database sequence, as the
+ * DBC {@code InsertSql} does, so callers only provide the business columns. The sequences and column lengths of the automation script tables
+ * are read from the run's {@link TableMetadata}, and the character values of each row are checked against the column lengths before they are sent. Rows that bind a {@link ScriptSource} are
+ * streamed to the CLOB column and must be written with {@link #execute(InsertTemplate, Object...)} rather than batched.
+ * <p>
+ * Parameterized update and delete statements can be batched with {@link #batch(String, Object...)}, they are executed before the inserts when the writer is flushed.
+ *
+ * @author Jason VenHuizen
+ */
+public class BatchInsertWriter implements AutoCloseable {
+
+    /**
+     * The system property that can be used to override the default batch size.
+     */
+    public static final String BATCH_SIZE_PROPERTY = "autoscript.dbc.batchsize";
+
+    /**
+     * The default number of rows sent to the database per batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    private final Connection connection;
+    private final int batchSize;
+    private final DeploymentMetrics metrics;
+    private final TableMetadata metadata;
+
+    private final Map<InsertTemplate, TableBatch> batches = new LinkedHashMap<>();
+    private final Map<InsertTemplate, TableBatch> statements = new LinkedHashMap<>();
+    private final Map<String, TableBatch> sqlBatches = new LinkedHashMap<>();
+
+    private String productName;
+    private String autoscript;
+
+    /**
+     * Creates a new batch writer for the provided connection.
+     *
+     * @param connection the connection the rows are written to.
+     * @param batchSize  the number of rows to accumulate per table before the batch is executed, must be greater than zero.
+     */
+    public BatchInsertWriter(Connection connection, int batchSize) {
+        this(connection, batchSize, new DeploymentMetrics());
+    }
+
+    /**
+     * Creates a new batch writer for the provided connection that records its statement executions in the metrics.
+     *
+     * @param connection the connection the rows are written to.
+     * @param batchSize  the number of rows to accumulate per table before the batch is executed, must be greater than zero.
+     * @param metrics    the metrics that the round trips, rows and insert, update, delete and source times are added to.
+     */
+    public BatchInsertWriter(Connection connection, int batchSize, DeploymentMetrics metrics) {
+        this(connection, batchSize, metrics, DeploymentContext.currentTableMetadata());
+    }
+
+    /**
+     * Creates a new batch writer for the provided connection that reads the sequences and column lengths of the tables from the metadata.
+     *
+     * @param connection the connection the rows are written to.
+     * @param batchSize  the number of rows to accumulate per table before the batch is executed, must be greater than zero.
+     * @param metrics    the metrics that the round trips, rows and insert, update, delete and source times are added to.
+     * @param metadata   the table metadata, which is loaded with the connection on first use.
+     */
+    public BatchInsertWriter(Connection connection, int batchSize, DeploymentMetrics metrics, TableMetadata metadata) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The batch size must be greater than zero, " + batchSize + " was provided.");
+        }
+        this.connection = connection;
+        this.batchSize = batchSize;
+        this.metrics = metrics;
+        this.metadata = metadata;
+    }
+
+    /**
+     * Sets the automation script that is being written, which is recorded on the flight recorder events of the batches that are executed while it is written.
+     *
+     * @param autoscript the automation script name.
+     */
+    void setScript(String autoscript) {
+        this.autoscript = autoscript;
+    }
+
+    /**
+     * Returns the batch size from the {@link #BATCH_SIZE_PROPERTY} system property or the {@link #DEFAULT_BATCH_SIZE} if the property is not set.
+     *
+     * @param value an explicit batch size value, such as a statement attribute, that takes precedence over the system property if not null or empty.
+     * @return the resolved batch size.
+     * @throws Exception thrown if the value is not a positive integer.
+     */
+    public static int resolveBatchSize(String value) throws Exception {
+        if (value == null || value.isEmpty()) {
+            value = System.getProperty(BATCH_SIZE_PROPERTY);
+        }
+
+        if (value == null || value.isEmpty()) {
+            return DEFAULT_BATCH_SIZE;
+        }
+
+        try {
+            int batchSize = Integer.parseInt(value.trim());
+            if (batchSize > 0) {
+                return batchSize;
+            }
+        } catch (NumberFormatException ignored) {
+            // fall through to the exception below.
+        }
+        throw new Exception("The batch size must be a positive integer, " + value + " was provided.");
+    }
+
+    /**
+     * Adds a row to the batch for the template's table, executing the batch if the batch size has been reached.
+     *
+     * @param template the insert template that defines the table and columns of the row.
+     * @param values   the column values in the same order as the template columns.
+     * @throws SQLException thrown if an error occurs preparing the statement or executing the batch.
+     */
+    public void insert(InsertTemplate template, Object... values) throws SQLException {
+        checkValues(template, values);
+
+        TableBatch batch = batches.get(template);
+        if (batch == null) {
+            batch = prepare(template, DeploymentMetrics.Phase.INSERT);
+            batches.put(template, batch);
+        }
+        batch.check(template, values, autoscript);
+
+        for (int i = 0; i < values.length; i++) {
+            bind(batch.statement, i + 1, values[i]);
+        }
+        batch.statement.addBatch();
+
+        if (++batch.pending >= batchSize) {
+            batch.execute(metrics, autoscript);
+        }
+    }
+
+    /**
+     * Adds a parameterized update or delete statement to its batch, executing the batch if the batch size has been reached.
+     * Statements with the same SQL share one prepared statement.
+     *
+     * @param sql    the parameterized SQL statement.
+     * @param values the parameter values.
+     * @throws SQLException thrown if an error occurs preparing the statement or executing the batch.
+     */
+    public void batch(String sql, Object... values) throws SQLException {
+        TableBatch batch = sqlBatches.get(sql);
+        if (batch == null) {
+            DeploymentMetrics.Phase phase = sql.trim().toLowerCase().startsWith("delete") ? DeploymentMetrics.Phase.DELETE : DeploymentMetrics.Phase.UPDATE;
+            batch = new TableBatch(connection.prepareStatement(sql), sql, phase);
+            sqlBatches.put(sql, batch);
+        }
+
+        for (int i = 0; i < values.length; i++) {
+            bind(batch.statement, i + 1, values[i]);
+        }
+        batch.statement.addBatch();
+
+        if (++batch.pending >= batchSize) {
+            batch.execute(metrics, autoscript);
+        }
+    }
+
+    /**
+     * Inserts a single row immediately without batching. This is used for rows that stream a {@link ScriptSource} to a CLOB column,
+     * since not all drivers support streams in a batch.
+     *
+     * @param template the insert template that defines the table and columns of the row.
+     * @param values   the column values in the same order as the template columns.
+     * @return the number of rows inserted.
+     * @throws SQLException thrown if an error occurs preparing or executing the statement.
+     */
+    public int execute(InsertTemplate template, Object... values) throws SQLException {
+        checkValues(template, values);
+
+        TableBatch statement = statements.get(template);
+        if (statement == null) {
+            statement = prepare(template, DeploymentMetrics.Phase.SOURCE);
+            statements.put(template, statement);
+        }
+        statement.check(template, values, autoscript);
+
+        for (int i = 0; i < values.length; i++) {
+            bind(statement.statement, i + 1, values[i]);
+        }
+        return statement.executeUpdate(metrics);
+    }
+
+    /**
+     * Executes any statements that are pending, the update and delete statements first and then the inserts in the order the templates were first used.
+     *
+     * @throws SQLException thrown if an error occurs executing a batch.
+     */
+    public void flush() throws SQLException {
+        for (TableBatch batch : sqlBatches.values()) {
+            batch.execute(metrics, autoscript);
+        }
+        for (TableBatch batch : batches.values()) {
+            batch.execute(metrics, autoscript);
+        }
+    }
+
+    /**
+     * Closes the prepared statements. Rows that have not been flushed are discarded.
+     *
+     * @throws SQLException thrown if an error occurs closing the statements.
+     */
+    @Override
+    public void close() throws SQLException {
+        List<PreparedStatement> open = new ArrayList<>();
+        for (TableBatch statement : statements.values()) {
+            open.add(statement.statement);
+        }
+        for (TableBatch batch : batches.values()) {
+            open.add(batch.statement);
+        }
+        for (TableBatch batch : sqlBatches.values()) {
+            open.add(batch.statement);
+        }
+        batches.clear();
+        statements.clear();
+        sqlBatches.clear();
+
+        SQLException error = null;
+        for (PreparedStatement statement : open) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                if (error == null) {
+                    error = e;
+                } else {
+                    error.addSuppressed(e);
+                }
+            }
+        }
+
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private void checkValues(InsertTemplate template, Object[] values) {
+        if (values.length != template.columns.length) {
+            throw new IllegalArgumentException("The " + template.table + " insert requires " + template.columns.length + " values, " + values.length + " were provided.");
+        }
+    }
+
+    private TableBatch prepare(InsertTemplate template, DeploymentMetrics.Phase phase) throws SQLException {
+        TableMetadata.Table table = metadata.table(connection, template.table, metrics);
+        String productName = getProductName();
+        String sql = template.toSql(table != null ? table.sequenceColumns(productName) : sequenceColumns(template.table), currentTimestampExpression(productName));
+
+        TableBatch batch = new TableBatch(connection.prepareStatement(sql), sql, phase);
+        batch.lengths = table != null ? table.lengths(template.getColumns()) : null;
+        return batch;
+    }
+
+    /**
+     * Returns the database product name reported by the JDBC driver.
+     *
+     * @return the database product name.
+     * @throws SQLException thrown if an error occurs reading the database metadata.
+     */
+    String getProductName() throws SQLException {
+        if (productName == null) {
+            productName = connection.getMetaData().getDatabaseProductName();
+        }
+        return productName;
+    }
+
+    /**
+     * Returns the unique id columns and the next value expressions of their sequences for the table, for a table that is not in the table metadata.
+     *
+     * @param table the table name.
+     * @return the column names mapped to the sequence next value SQL expression.
+     * @throws SQLException thrown if an error occurs querying the MAXSEQUENCE table.
+     */
+    private Map<String, String> sequenceColumns(String table) throws SQLException {
+        Map<String, String> columns = new LinkedHashMap<>();
+
+        try (PreparedStatement statement = connection.prepareStatement("select name, sequencename from maxsequence where tbname = ?")) {
+            statement.setString(1, table.toUpperCase());
+            metrics.roundTrips(1);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    columns.put(resultSet.getString(1).toLowerCase(), nextValueExpression(productName, resultSet.getString(2)));
+                }
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Returns the SQL expression that selects the next value of a sequence for the database platform.
+     *
+     * @param productName  the database product name reported by the JDBC driver.
+     * @param sequenceName the sequence name.
+     * @return the next value SQL expression.
+     */
+    static String nextValueExpression(String productName, String sequenceName) {
+        String product = productName == null ? "" : productName.toUpperCase();
+        if (product.contains("ORACLE")) {
+            return sequenceName + ".nextval";
+        } else if (product.contains("DB2")) {
+            return "nextval for " + sequenceName;
+        } else {
+            return "next value for " + sequenceName;
+        }
+    }
+
+    /**
+     * Returns the SQL expression for the database server's current date and time, the equivalent of the Oracle sysdate.
+     *
+     * @param productName the database product name reported by the JDBC driver.
+     * @return the current timestamp SQL expression.
+     */
+    static String currentTimestampExpression(String productName) {
+        String product = productName == null ? "" : productName.toUpperCase();
+        if (product.contains("ORACLE")) {
+            return "sysdate";
+        } else if (product.contains("MICROSOFT")) {
+            return "getdate()";
+        } else {
+            return "current_timestamp";
+        }
+    }
+
+    /**
+     * Binds a value to a statement parameter, booleans are written as 1 or 0 as Maximo stores YORN values and a {@link ScriptSource} is streamed as characters.
+     *
+     * @param statement the prepared statement.
+     * @param index     the parameter index.
+     * @param value     the value to bind.
+     * @throws SQLException thrown if an error occurs binding the value.
+     */
+    static void bind(PreparedStatement statement, int index, Object value) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, Types.VARCHAR);
+        } else if (value instanceof Boolean) {
+            statement.setInt(index, (Boolean) value ? 1 : 0);
+        } else if (value instanceof Integer) {
+            statement.setInt(index, (Integer) value);
+        } else if (value instanceof ScriptSource) {
+            ScriptSource source = (ScriptSource) value;
+            statement.setCharacterStream(index, source.reader(), source.length());
+        } else {
+            statement.setString(index, value.toString());
+        }
+    }
+
+    /**
+     * Defines the table and columns of a batched insert. Templates are compared by identity, so they are intended to be declared as constants.
+     */
+    public static final class InsertTemplate {
+        private final String table;
+        private final String[] columns;
+        private final String[] timestampColumns;
+
+        /**
+         * Creates a new insert template.
+         *
+         * @param table   the table name.
+         * @param columns the columns that values are provided for.
+         */
+        public InsertTemplate(String table, String... columns) {
+            this(table, columns, new String[0]);
+        }
+
+        private InsertTemplate(String table, String[] columns, String[] timestampColumns) {
+            this.table = table;
+            this.columns = columns.clone();
+            this.timestampColumns = timestampColumns.clone();
+        }
+
+        /**
+         * Returns a copy of the template that also sets the columns to the database server's current date and time.
+         *
+         * @param timestampColumns the columns to set to the current date and time.
+         * @return the new template.
+         */
+        public InsertTemplate withTimestamps(String... timestampColumns) {
+            return new InsertTemplate(table, columns, timestampColumns);
+        }
+
+        /**
+         * Returns the table name.
+         *
+         * @return the table name.
+         */
+        public String getTable() {
+            return table;
+        }
+
+        /**
+         * Returns the columns that values are provided for, in the order of the values.
+         *
+         * @return the unmodifiable list of column names.
+         */
+        public List<String> getColumns() {
+            return List.of(columns);
+        }
+
+        private String toSql(Map<String, String> sequenceColumns, String currentTimestamp) {
+            List<String> names = new ArrayList<>(List.of(columns));
+            List<String> values = new ArrayList<>();
+            for (int i = 0; i < columns.length; i++) {
+                values.add("?");
+            }
+
+            for (String timestampColumn : timestampColumns) {
+                names.add(timestampColumn);
+                values.add(currentTimestamp);
+            }
+
+            for (Map.Entry<String, String> sequenceColumn : sequenceColumns.entrySet()) {
+                if (!names.contains(sequenceColumn.getKey())) {
+                    names.add(sequenceColumn.getKey());
+                    values.add(sequenceColumn.getValue());
+                }
+            }
+
+            return "insert into " + table.toLowerCase() + " (" + String.join(", ", names) + ") values (" + String.join(", ", values) + ")";
+        }
+    }
+
+    private static final class TableBatch {
+        private final PreparedStatement statement;
+        private final String sql;
+        private final DeploymentMetrics.Phase phase;
+        private int[] lengths;
+        private int pending;
+
+        private TableBatch(PreparedStatement statement, String sql, DeploymentMetrics.Phase phase) {
+            this.statement = statement;
+            this.sql = sql;
+            this.phase = phase;
+        }
+
+        /**
+         * Checks that the character values fit their columns.
+         */
+        private void check(InsertTemplate template, Object[] values, String autoscript) throws SQLDataException {
+            if (lengths == null) {
+                return;
+            }
+            for (int i = 0; i < values.length; i++) {
+                if (lengths[i] > 0 && values[i] instanceof String && ((String) values[i]).length() > lengths[i]) {
+                    throw new SQLDataException("The " + template.columns[i] + " value of the " + template.table + " row of the automation script " + autoscript
+                            + " is " + ((String) values[i]).length() + " characters, which is longer than the column length of " + lengths[i] + ".");
+                }
+            }
+        }
+
+        private void execute(DeploymentMetrics metrics, String autoscript) throws SQLException {
+            if (pending > 0) {
+                DeploymentEvents.InsertBatch event = new DeploymentEvents.InsertBatch();
+                event.begin();
+                long start = System.nanoTime();
+                int[] counts = statement.executeBatch();
+                metrics.executed(phase, sql, System.nanoTime() - start, counts);
+                event.end();
+                if (event.shouldCommit()) {
+                    event.autoscript = autoscript;
+                    event.table = DeploymentMetrics.tableOf(sql);
+                    event.statements = pending;
+                    for (int count : counts) {
+                        // drivers may report SUCCESS_NO_INFO rather than a count for each statement of a batch.
+                        event.rows += count > 0 ? count : 0;
+                    }
+                    event.commit();
+                }
+                pending = 0;
+            }
+        }
+
+        private int executeUpdate(DeploymentMetrics metrics) throws SQLException {
+            long start = System.nanoTime();
+            int count = statement.executeUpdate();
+            metrics.executed(phase, sql, System.nanoTime() - start, count);
+            return count;
+        }
+    }
+}
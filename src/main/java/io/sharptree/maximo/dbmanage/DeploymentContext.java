@@ -0,0 +1,437 @@
+package io.sharptree.maximo.dbmanage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * State that is shared by the autoscript change statements for the duration of an UpdateDB product install.
+ * <p>
+ * The context is opened by {@link AutoScriptExtCallout#beforeProductInstall(java.sql.Connection)} and closed by
+ * {@link AutoScriptExtCallout#afterProductInstall(java.sql.Connection)}. It provides a worker pool that the statements use to read and
+ * parse their scripts as soon as the DBC script is loaded, so that running a statement only has to write to the database, the
+ * {@link ParseCache} of each DBC output directory, the file systems of the script archives, the {@link DeploymentMetrics} and {@link TableMetadata} of the run, the {@link ExplainLog} in explain mode and the
+ * write behind {@link DeploymentSession} if it is enabled.
+ *
+ * @author Jason VenHuizen
+ */
+public final class DeploymentContext implements AutoCloseable {
+
+    /**
+     * The system property that sets the number of prefetch worker threads, 0 disables the prefetch. Defaults to the number of available processors.
+     */
+    public static final String PREFETCH_THREADS_PROPERTY = "autoscript.dbc.prefetch.threads";
+
+    /**
+     * The system property that sets the maximum number of scripts that are read and parsed ahead of the statement that is running.
+     * Defaults to four times the number of prefetch worker threads.
+     */
+    public static final String PREFETCH_LOOKAHEAD_PROPERTY = "autoscript.dbc.prefetch.lookahead";
+
+    private static volatile DeploymentContext current;
+
+    private final ExecutorService prefetchPool;
+    private final int lookAhead;
+    private final Deque<Prefetch<?>> waiting = new ArrayDeque<>();
+    private int outstanding;
+
+    private final int cacheEntries;
+    private final Map<File, ParseCache> parseCaches = new ConcurrentHashMap<>();
+    private final Map<Path, FileSystem> archives = new ConcurrentHashMap<>();
+
+    private final DeploymentMetrics metrics = new DeploymentMetrics();
+    private final TableMetadata tableMetadata = new TableMetadata();
+    private final DeploymentEvents.Install installEvent = new DeploymentEvents.Install();
+
+    private final DeploymentSession session;
+
+    private volatile ExplainLog explainLog;
+
+    private DeploymentContext(int prefetchThreads, int cacheEntries, boolean sessionEnabled) {
+        this.cacheEntries = cacheEntries;
+        this.session = sessionEnabled ? new DeploymentSession() : null;
+        installEvent.begin();
+
+        if (prefetchThreads > 0) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            ThreadFactory threadFactory = runnable -> {
+                Thread thread = new Thread(runnable, "autoscript-prefetch-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+            prefetchPool = Executors.newFixedThreadPool(prefetchThreads, threadFactory);
+            lookAhead = Math.max(1, Integer.getInteger(PREFETCH_LOOKAHEAD_PROPERTY, prefetchThreads * 4));
+        } else {
+            lookAhead = 0;
+            prefetchPool = null;
+        }
+    }
+
+    /**
+     * Opens a new deployment context, closing the current context if there is one.
+     *
+     * @return the new deployment context.
+     */
+    public static synchronized DeploymentContext open() {
+        if (current != null) {
+            current.close();
+        }
+        current = new DeploymentContext(Integer.getInteger(PREFETCH_THREADS_PROPERTY, Runtime.getRuntime().availableProcessors()), ParseCache.resolveMaxEntries(), DeploymentSession.isEnabled());
+        return current;
+    }
+
+    /**
+     * Creates a deployment context that is not the current context, so that several deployments can run side by side outside of UpdateDB,
+     * each with its own metrics and table metadata. The context does not have a write behind session.
+     *
+     * @param prefetchThreads the number of prefetch worker threads, 0 disables the prefetch.
+     * @param cacheEntries    the maximum number of parse cache entries, 0 disables the parse cache.
+     * @return the new deployment context.
+     */
+    public static DeploymentContext create(int prefetchThreads, int cacheEntries) {
+        return new DeploymentContext(prefetchThreads, cacheEntries, false);
+    }
+
+    /**
+     * Returns the current deployment context.
+     *
+     * @return the current deployment context or null if a context has not been opened.
+     */
+    public static DeploymentContext current() {
+        return current;
+    }
+
+    /**
+     * Returns the metrics of the current deployment context.
+     *
+     * @return the metrics of the current context, or new metrics that are not reported if a context has not been opened.
+     */
+    public static DeploymentMetrics currentMetrics() {
+        DeploymentContext context = current;
+        return context != null ? context.metrics : new DeploymentMetrics();
+    }
+
+    /**
+     * Returns the table metadata of the current deployment context.
+     *
+     * @return the table metadata of the current context, or new table metadata that is not shared if a context has not been opened.
+     */
+    public static TableMetadata currentTableMetadata() {
+        DeploymentContext context = current;
+        return context != null ? context.tableMetadata : new TableMetadata();
+    }
+
+    /**
+     * Returns the write behind session of the current deployment context.
+     *
+     * @return the session or null if there is no context or the session is not enabled.
+     */
+    public static DeploymentSession currentSession() {
+        DeploymentContext context = current;
+        return context != null ? context.session : null;
+    }
+
+    /**
+     * Returns the write behind session.
+     *
+     * @return the session or null if the session is not enabled.
+     */
+    public DeploymentSession getSession() {
+        return session;
+    }
+
+    /**
+     * Returns the metrics of the run.
+     *
+     * @return the deployment metrics.
+     */
+    public DeploymentMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the table metadata of the run.
+     *
+     * @return the table metadata.
+     */
+    public TableMetadata getTableMetadata() {
+        return tableMetadata;
+    }
+
+    /**
+     * Returns the connection that a change statement writes to, which is the explain connection if the current context is in explain mode.
+     *
+     * @param connection      the UpdateDB connection.
+     * @param changeStatement the description of the change statement.
+     * @return the connection to use.
+     */
+    public static Connection connection(Connection connection, String changeStatement) {
+        DeploymentContext context = current;
+        return context != null ? context.explain(connection, changeStatement) : connection;
+    }
+
+    /**
+     * Returns the connection that a change statement writes to, which is the explain connection if this context is in explain mode.
+     *
+     * @param connection      the connection to the target database.
+     * @param changeStatement the description of the change statement.
+     * @return the connection to use.
+     */
+    public Connection explain(Connection connection, String changeStatement) {
+        ExplainLog log = explainLog;
+        return log != null ? log.connection(connection, changeStatement) : connection;
+    }
+
+    /**
+     * Puts the context in explain mode, the change statements write their SQL to the explain log rather than running it.
+     *
+     * @param explainLog the explain log, which is closed with the context.
+     */
+    public void setExplainLog(ExplainLog explainLog) {
+        this.explainLog = explainLog;
+    }
+
+    /**
+     * Returns the explain log.
+     *
+     * @return the explain log or null if the context is not in explain mode.
+     */
+    public ExplainLog getExplainLog() {
+        return explainLog;
+    }
+
+    /**
+     * Returns the flight recorder event of the install, which was begun when the context was opened.
+     *
+     * @return the install event.
+     */
+    DeploymentEvents.Install getInstallEvent() {
+        return installEvent;
+    }
+
+    /**
+     * Submits a task to the prefetch worker pool. At most the look ahead number of tasks are submitted or hold a result that has not been
+     * taken, the others wait in the order they were submitted, so that a large DBC script does not hold every parsed source in memory.
+     * The result must be obtained with {@link #take(Future)} or the task discarded with {@link #discard(Future)}.
+     *
+     * @param task the task to run.
+     * @param <T>  the task result type.
+     * @return the future result of the task or null if the prefetch is disabled or the context has been closed.
+     */
+    public <T> Future<T> prefetch(Callable<T> task) {
+        if (prefetchPool == null || prefetchPool.isShutdown()) {
+            return null;
+        }
+
+        Prefetch<T> prefetch = new Prefetch<>(task);
+        synchronized (waiting) {
+            waiting.add(prefetch);
+            submitWaiting();
+        }
+        return prefetch;
+    }
+
+    /**
+     * Returns the result of a prefetched task, running the task on the calling thread if it is still waiting for the look ahead, and
+     * submits the next waiting task.
+     *
+     * @param future the future returned by {@link #prefetch(Callable)}.
+     * @param <T>    the task result type.
+     * @return the task result.
+     * @throws InterruptedException  thrown if the calling thread is interrupted while it waits.
+     * @throws ExecutionException    thrown if the task failed.
+     * @throws CancellationException thrown if the task was cancelled because the context was closed.
+     */
+    public <T> T take(Future<T> future) throws InterruptedException, ExecutionException {
+        Prefetch<T> prefetch = (Prefetch<T>) future;
+        boolean inline;
+        synchronized (waiting) {
+            inline = waiting.remove(prefetch);
+        }
+        if (inline) {
+            prefetch.run();
+        }
+
+        try {
+            return prefetch.get();
+        } finally {
+            release(prefetch);
+        }
+    }
+
+    /**
+     * Cancels a prefetched task whose result is not needed, and submits the next waiting task.
+     *
+     * @param future the future returned by {@link #prefetch(Callable)}.
+     */
+    public void discard(Future<?> future) {
+        Prefetch<?> prefetch = (Prefetch<?>) future;
+        synchronized (waiting) {
+            waiting.remove(prefetch);
+        }
+        prefetch.cancel(true);
+        release(prefetch);
+    }
+
+    private void release(Prefetch<?> prefetch) {
+        synchronized (waiting) {
+            if (prefetch.submitted && !prefetch.released) {
+                prefetch.released = true;
+                outstanding--;
+                submitWaiting();
+            }
+        }
+    }
+
+    /**
+     * Submits the waiting tasks while there is room in the look ahead, called with the waiting lock held.
+     */
+    private void submitWaiting() {
+        while (outstanding < lookAhead && !waiting.isEmpty() && !prefetchPool.isShutdown()) {
+            Prefetch<?> next = waiting.poll();
+            next.submitted = true;
+            outstanding++;
+            try {
+                prefetchPool.execute(next);
+            } catch (RejectedExecutionException e) {
+                // the context was closed, the task is run by the statement that takes it.
+                next.submitted = false;
+                outstanding--;
+                waiting.addFirst(next);
+                return;
+            }
+        }
+    }
+
+    /**
+     * A prefetch task, which counts against the look ahead from when it is submitted until its result is taken or it is discarded.
+     */
+    private static final class Prefetch<T> extends FutureTask<T> {
+
+        private boolean submitted;
+        private boolean released;
+
+        private Prefetch(Callable<T> task) {
+            super(task);
+        }
+    }
+
+    /**
+     * Returns the parse cache in the DBC output directory, opening it on first use.
+     *
+     * @param outputDirectory the DBC output directory.
+     * @return the parse cache or null if the cache is disabled or cannot be opened.
+     */
+    public ParseCache parseCache(String outputDirectory) {
+        if (cacheEntries == 0 || outputDirectory == null) {
+            return null;
+        }
+
+        File directory = new File(outputDirectory, ParseCache.DIRECTORY_NAME).getAbsoluteFile();
+        try {
+            return parseCaches.computeIfAbsent(directory, key -> {
+                try {
+                    return ParseCache.open(key.toPath(), cacheEntries);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            // the scripts are parsed without the cache if the directory cannot be written.
+            return null;
+        }
+    }
+
+    /**
+     * Returns the file system of a zip or jar archive, opening it read only on first use, so that the statements that deploy scripts from
+     * the same archive share one open archive. The archives are closed with the context.
+     *
+     * @param archive the archive file.
+     * @return the archive file system.
+     * @throws IOException thrown if the archive cannot be opened.
+     */
+    public FileSystem archive(Path archive) throws IOException {
+        try {
+            return archives.computeIfAbsent(archive.toAbsolutePath().normalize(), key -> {
+                try {
+                    return FileSystems.newFileSystem(key, Map.of("accessMode", "readOnly"));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Returns the file system of a zip or jar archive for a statement that runs without a context. The file system is registered with the
+     * zip file system provider, so it is opened once and stays open until the JVM exits.
+     *
+     * @param archive the archive file.
+     * @return the archive file system.
+     * @throws IOException thrown if the archive cannot be opened.
+     */
+    static FileSystem sharedArchive(Path archive) throws IOException {
+        URI uri = URI.create("jar:" + archive.toAbsolutePath().normalize().toUri());
+        try {
+            return FileSystems.newFileSystem(uri, Map.of("accessMode", "readOnly"));
+        } catch (FileSystemAlreadyExistsException e) {
+            return FileSystems.getFileSystem(uri);
+        }
+    }
+
+    /**
+     * Closes the context, stopping the prefetch worker pool and closing the archives and the explain log.
+     */
+    @Override
+    public void close() {
+        synchronized (DeploymentContext.class) {
+            if (current == this) {
+                current = null;
+            }
+        }
+
+        if (prefetchPool != null) {
+            // the tasks that did not start are cancelled, so a statement that takes one parses its script itself.
+            for (Runnable task : prefetchPool.shutdownNow()) {
+                ((Future<?>) task).cancel(false);
+            }
+            synchronized (waiting) {
+                waiting.forEach(task -> task.cancel(false));
+                waiting.clear();
+            }
+        }
+        for (FileSystem archive : archives.values()) {
+            try {
+                archive.close();
+            } catch (IOException e) {
+                // the archives are only read, so there is nothing to lose if one cannot be closed.
+            }
+        }
+        archives.clear();
+        if (explainLog != null) {
+            explainLog.close();
+        }
+    }
+}
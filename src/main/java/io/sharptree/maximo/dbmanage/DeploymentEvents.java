@@ -0,0 +1,184 @@
+package io.sharptree.maximo.dbmanage;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events for the phases of deploying and removing automation scripts, so that a recording of an UpdateDB run can be
+ * lined up with the JDBC socket reads, garbage collection and thread activity in JDK Mission Control.
+ * <p>
+ * The events are in the Maximo / Automation Script DBC category and are enabled with the usual JFR settings, for example
+ * {@code -XX:StartFlightRecording:filename=updatedb.jfr}. An event that is not enabled is not populated, so the events cost little when
+ * there is no recording.
+ *
+ * @author Jason VenHuizen
+ */
+public final class DeploymentEvents {
+
+    private static final String CATEGORY = "Automation Script DBC";
+
+    private DeploymentEvents() {
+    }
+
+    /**
+     * Reading and decoding a script file.
+     */
+    @Name("io.sharptree.autoscript.ScriptLoad")
+    @Label("Script Load")
+    @Description("Reading and decoding an automation script file")
+    @Category({"Maximo", CATEGORY})
+    @StackTrace(false)
+    public static final class ScriptLoad extends Event {
+        @Label("Path")
+        public String path;
+
+        @Label("Bytes")
+        @DataAmount(DataAmount.BYTES)
+        public long bytes;
+
+        @Label("Characters")
+        public int characters;
+    }
+
+    /**
+     * Extracting the scriptConfig JSON from a script source.
+     */
+    @Name("io.sharptree.autoscript.ConfigExtract")
+    @Label("Config Extract")
+    @Description("Locating the scriptConfig JSON in an automation script source")
+    @Category({"Maximo", CATEGORY})
+    @StackTrace(false)
+    public static final class ConfigExtract extends Event {
+        @Label("Path")
+        public String path;
+
+        @Label("Source Bytes")
+        @DataAmount(DataAmount.BYTES)
+        public long bytes;
+
+        @Label("Config Characters")
+        public int configCharacters;
+    }
+
+    /**
+     * Parsing and validating the scriptConfig, or reading it from the parse cache.
+     */
+    @Name("io.sharptree.autoscript.ConfigParse")
+    @Label("Config Parse")
+    @Description("Parsing and validating the scriptConfig of an automation script, or reading it from the parse cache")
+    @Category({"Maximo", CATEGORY})
+    @StackTrace(false)
+    public static final class ConfigParse extends Event {
+        @Label("Script")
+        public String autoscript;
+
+        @Label("Config Characters")
+        public int configCharacters;
+
+        @Label("Launch Points")
+        public int launchPoints;
+
+        @Label("Variables")
+        public int variables;
+
+        @Label("Cached")
+        public boolean cached;
+    }
+
+    /**
+     * Removing one or more scripts and the rows that reference them.
+     */
+    @Name("io.sharptree.autoscript.ScriptRemove")
+    @Label("Script Remove")
+    @Description("Removing automation scripts and the rows that reference them")
+    @Category({"Maximo", CATEGORY})
+    @StackTrace(false)
+    public static final class ScriptRemove extends Event {
+        @Label("Script")
+        public String autoscript;
+
+        @Label("Scripts")
+        public int scripts;
+
+        @Label("Rows Deleted")
+        public long rows;
+    }
+
+    /**
+     * Executing a JDBC batch of inserts, updates or deletes.
+     */
+    @Name("io.sharptree.autoscript.InsertBatch")
+    @Label("Insert Batch")
+    @Description("Executing a JDBC batch of script rows")
+    @Category({"Maximo", CATEGORY})
+    @StackTrace(false)
+    public static final class InsertBatch extends Event {
+        @Label("Script")
+        @Description("The script being written when the batch was executed, the batch may hold rows of earlier scripts")
+        public String autoscript;
+
+        @Label("Table")
+        public String table;
+
+        @Label("Statements")
+        public int statements;
+
+        @Label("Rows")
+        public long rows;
+    }
+
+    /**
+     * Writing the AUTOSCRIPT row with its source, or updating the source of a reconciled script.
+     */
+    @Name("io.sharptree.autoscript.SourceUpload")
+    @Label("Source Upload")
+    @Description("Streaming an automation script source to the AUTOSCRIPT CLOB column")
+    @Category({"Maximo", CATEGORY})
+    @StackTrace(false)
+    public static final class SourceUpload extends Event {
+        @Label("Script")
+        public String autoscript;
+
+        @Label("Bytes")
+        @DataAmount(DataAmount.BYTES)
+        public long bytes;
+
+        @Label("Characters")
+        public int characters;
+
+        @Label("Two Step")
+        @Description("The row was inserted with a placeholder source that was then updated")
+        public boolean twoStep;
+    }
+
+    /**
+     * An UpdateDB product install, from the callout's before to its after product install.
+     */
+    @Name("io.sharptree.autoscript.Install")
+    @Label("Install")
+    @Description("The automation script statements of an UpdateDB product install")
+    @Category({"Maximo", CATEGORY})
+    @StackTrace(false)
+    public static final class Install extends Event {
+        @Label("Scripts Deployed")
+        public long deployed;
+
+        @Label("Scripts Unchanged")
+        public long unchanged;
+
+        @Label("Scripts Removed")
+        public long removed;
+
+        @Label("Bytes Read")
+        @DataAmount(DataAmount.BYTES)
+        public long bytesRead;
+
+        @Label("Round Trips")
+        public long roundTrips;
+    }
+}
@@ -0,0 +1,464 @@
+package io.sharptree.maximo.dbmanage;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timers and counters for the automation scripts deployed and removed during an UpdateDB run.
+ * <p>
+ * The time spent in each {@link Phase} is accumulated along with the bytes read, the JDBC round trips and the rows inserted, updated and
+ * deleted per table. Each script also records its own parse and write time, so the slowest scripts and the percentiles can be reported.
+ * Rows that are batched are written when the batch is executed, which may be while a later script is deployed, so the time of a batch is
+ * included in the phase totals but only counted for the script that executed it.
+ * <p>
+ * The metrics are thread safe, the parse phases are recorded on the prefetch workers.
+ *
+ * @author Jason VenHuizen
+ */
+public final class DeploymentMetrics {
+
+    /**
+     * The system property that sets the path of the JSON report written at the end of the install, an empty value disables the report.
+     * Defaults to {@link #DEFAULT_REPORT_FILE} in the working directory.
+     */
+    public static final String REPORT_FILE_PROPERTY = "autoscript.dbc.report";
+
+    /**
+     * The default name of the JSON report file.
+     */
+    public static final String DEFAULT_REPORT_FILE = "autoscript-deploy-report.json";
+
+    private static final int SLOWEST_SCRIPTS = 10;
+
+    /**
+     * The phases of reading, parsing and writing a script.
+     */
+    public enum Phase {
+        /**
+         * Reading and decoding the script file.
+         */
+        READ,
+        /**
+         * Looking up the script in the parse cache.
+         */
+        CACHE,
+        /**
+         * Extracting the scriptConfig JSON from the source.
+         */
+        EXTRACT,
+        /**
+         * Parsing and validating the scriptConfig.
+         */
+        PARSE,
+        /**
+         * Loading the deployed rows to compare with the script.
+         */
+        COMPARE,
+        /**
+         * Deleting the rows of a script that is removed or recreated.
+         */
+        DELETE,
+        /**
+         * Inserting the child rows of a script.
+         */
+        INSERT,
+        /**
+         * Updating the rows of a reconciled script.
+         */
+        UPDATE,
+        /**
+         * Writing the AUTOSCRIPT row and uploading its source to the CLOB column.
+         */
+        SOURCE;
+
+        /**
+         * Returns the lower case phase name used in the report.
+         *
+         * @return the phase label.
+         */
+        public String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * The result of a script statement.
+     */
+    public enum Outcome {
+        /**
+         * The script was created, recreated or reconciled.
+         */
+        DEPLOYED,
+        /**
+         * The script matched the deployed script and was not written.
+         */
+        UNCHANGED,
+        /**
+         * The script was removed.
+         */
+        REMOVED
+    }
+
+    private static final int INSERTED = 0;
+    private static final int UPDATED = 1;
+    private static final int DELETED = 2;
+
+    private final long startTime = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+
+    private final LongAdder[] phaseNanos = adders(Phase.values().length);
+    private final LongAdder[] phaseCounts = adders(Phase.values().length);
+    private final LongAdder[] outcomes = adders(Outcome.values().length);
+    private final LongAdder roundTrips = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final Map<String, LongAdder[]> tableRows = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<ScriptTiming> scripts = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Adds the time of a phase.
+     *
+     * @param phase the phase.
+     * @param nanos the elapsed time in nanoseconds.
+     */
+    public void time(Phase phase, long nanos) {
+        phaseNanos[phase.ordinal()].add(nanos);
+        phaseCounts[phase.ordinal()].increment();
+    }
+
+    /**
+     * Adds a JDBC round trip that did not write rows, such as a query.
+     *
+     * @param count the number of round trips.
+     */
+    public void roundTrips(int count) {
+        roundTrips.add(count);
+    }
+
+    /**
+     * Records a statement execution, adding its time to the phase, one round trip and the rows it wrote to the table and operation of the SQL.
+     *
+     * @param phase  the phase.
+     * @param sql    the insert, update or delete statement.
+     * @param nanos  the elapsed time in nanoseconds.
+     * @param counts the update counts returned by the driver.
+     */
+    public void executed(Phase phase, String sql, long nanos, int... counts) {
+        time(phase, nanos);
+        roundTrips.increment();
+
+        long rows = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                rows += count;
+            }
+        }
+        if (rows == 0) {
+            return;
+        }
+
+        String table = tableOf(sql);
+        if (table == null) {
+            return;
+        }
+        String operation = sql.trim().substring(0, 6).toLowerCase(Locale.ROOT);
+        tableRows.computeIfAbsent(table, key -> adders(3))[operation.equals("insert") ? INSERTED : operation.equals("update") ? UPDATED : DELETED].add(rows);
+    }
+
+    /**
+     * Returns the table of an insert, update or delete statement.
+     *
+     * @param sql the insert, update or delete statement.
+     * @return the upper case table name or null if the statement is not an insert, update or delete.
+     */
+    static String tableOf(String sql) {
+        String[] words = sql.trim().toLowerCase(Locale.ROOT).split("\\s+", 4);
+        String table;
+        if ((words[0].equals("insert") || words[0].equals("delete")) && words.length > 2) {
+            table = words[2];
+        } else if (words[0].equals("update") && words.length > 1) {
+            table = words[1];
+        } else {
+            return null;
+        }
+        int parenthesis = table.indexOf('(');
+        if (parenthesis > 0) {
+            table = table.substring(0, parenthesis);
+        }
+        return table.toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Adds the read, cache, extract and parse times and the bytes read of a parsed script.
+     *
+     * @param script the parsed script.
+     */
+    public void parsed(ParsedScript script) {
+        time(Phase.READ, script.getReadNanos());
+        bytesRead.add(script.getSource().getByteCount());
+        if (script.getCacheNanos() > 0) {
+            time(Phase.CACHE, script.getCacheNanos());
+        }
+        if (script.isCached()) {
+            cacheHits.increment();
+        } else {
+            time(Phase.EXTRACT, script.getExtractNanos());
+            time(Phase.PARSE, script.getParseNanos());
+        }
+    }
+
+    /**
+     * Records the outcome and time of a script.
+     *
+     * @param autoscript the automation script name.
+     * @param outcome    the outcome.
+     * @param parseNanos the time spent reading and parsing the script, 0 if it was not parsed.
+     * @param writeNanos the time spent comparing and writing the script.
+     */
+    public void script(String autoscript, Outcome outcome, long parseNanos, long writeNanos) {
+        outcomes[outcome.ordinal()].increment();
+        scripts.add(new ScriptTiming(autoscript.toUpperCase(), outcome, parseNanos, writeNanos));
+    }
+
+    /**
+     * Returns true if any script or round trip has been recorded.
+     *
+     * @return true if there are metrics to report.
+     */
+    public boolean isEmpty() {
+        return scripts.isEmpty() && roundTrips.sum() == 0;
+    }
+
+    /**
+     * Returns the number of scripts recorded with the outcome.
+     *
+     * @param outcome the outcome.
+     * @return the number of scripts.
+     */
+    public long getCount(Outcome outcome) {
+        return outcomes[outcome.ordinal()].sum();
+    }
+
+    /**
+     * Returns the number of script file bytes read.
+     *
+     * @return the bytes read.
+     */
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    /**
+     * Returns the number of JDBC round trips.
+     *
+     * @return the round trips.
+     */
+    public long getRoundTrips() {
+        return roundTrips.sum();
+    }
+
+    /**
+     * Prints the summary of the run: the totals, the phase times, the rows per table, the script time percentiles and the slowest scripts.
+     *
+     * @param out the stream to print to.
+     */
+    public void printSummary(PrintStream out) {
+        List<ScriptTiming> timings = new ArrayList<>(scripts);
+        long[] totals = sortedTotals(timings);
+
+        out.println("Automation script deployment summary");
+        out.printf(Locale.ROOT, "  scripts: %d deployed, %d unchanged, %d removed in %.1f s%n",
+                outcomes[Outcome.DEPLOYED.ordinal()].sum(), outcomes[Outcome.UNCHANGED.ordinal()].sum(), outcomes[Outcome.REMOVED.ordinal()].sum(),
+                (System.nanoTime() - startNanos) / 1_000_000_000.0);
+        out.printf(Locale.ROOT, "  bytes read: %d, parse cache hits: %d, round trips: %d%n", bytesRead.sum(), cacheHits.sum(), roundTrips.sum());
+
+        out.printf(Locale.ROOT, "  %-10s %12s %8s%n", "phase", "millis", "count");
+        for (Phase phase : Phase.values()) {
+            long count = phaseCounts[phase.ordinal()].sum();
+            if (count > 0) {
+                out.printf(Locale.ROOT, "  %-10s %12.1f %8d%n", phase.label(), millis(phaseNanos[phase.ordinal()].sum()), count);
+            }
+        }
+
+        Map<String, LongAdder[]> rows = new TreeMap<>(tableRows);
+        if (!rows.isEmpty()) {
+            out.printf(Locale.ROOT, "  %-20s %10s %10s %10s%n", "table", "inserted", "updated", "deleted");
+            for (Map.Entry<String, LongAdder[]> table : rows.entrySet()) {
+                out.printf(Locale.ROOT, "  %-20s %10d %10d %10d%n", table.getKey(),
+                        table.getValue()[INSERTED].sum(), table.getValue()[UPDATED].sum(), table.getValue()[DELETED].sum());
+            }
+        }
+
+        if (totals.length > 0) {
+            out.printf(Locale.ROOT, "  script millis: p50 %.1f, p90 %.1f, p99 %.1f, max %.1f%n",
+                    millis(percentile(totals, 50)), millis(percentile(totals, 90)), millis(percentile(totals, 99)), millis(totals[totals.length - 1]));
+
+            out.println("  slowest scripts:");
+            for (ScriptTiming timing : slowest(timings)) {
+                out.printf(Locale.ROOT, "    %-40s %-10s %10.1f ms (parse %.1f, write %.1f)%n", timing.autoscript, timing.outcome.name().toLowerCase(Locale.ROOT),
+                        millis(timing.total()), millis(timing.parseNanos), millis(timing.writeNanos));
+            }
+        }
+    }
+
+    /**
+     * Writes the metrics as a JSON report.
+     *
+     * @param path the report file, it is replaced if it exists.
+     * @throws IOException thrown if an error occurs writing the report.
+     */
+    public void writeReport(Path path) throws IOException {
+        List<ScriptTiming> timings = new ArrayList<>(scripts);
+        long[] totals = sortedTotals(timings);
+
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8); JsonWriter json = new JsonWriter(writer)) {
+            json.setIndent("  ");
+            json.beginObject();
+
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX", Locale.ROOT);
+            json.name("started").value(format.format(new Date(startTime)));
+            json.name("elapsedMillis").value(round(millis(System.nanoTime() - startNanos)));
+
+            json.name("scripts").beginObject();
+            for (Outcome outcome : Outcome.values()) {
+                json.name(outcome.name().toLowerCase(Locale.ROOT)).value(outcomes[outcome.ordinal()].sum());
+            }
+            json.endObject();
+
+            json.name("bytesRead").value(bytesRead.sum());
+            json.name("cacheHits").value(cacheHits.sum());
+            json.name("roundTrips").value(roundTrips.sum());
+
+            json.name("phases").beginObject();
+            for (Phase phase : Phase.values()) {
+                json.name(phase.label()).beginObject();
+                json.name("millis").value(round(millis(phaseNanos[phase.ordinal()].sum())));
+                json.name("count").value(phaseCounts[phase.ordinal()].sum());
+                json.endObject();
+            }
+            json.endObject();
+
+            json.name("rows").beginObject();
+            for (Map.Entry<String, LongAdder[]> table : new TreeMap<>(tableRows).entrySet()) {
+                json.name(table.getKey()).beginObject();
+                json.name("inserted").value(table.getValue()[INSERTED].sum());
+                json.name("updated").value(table.getValue()[UPDATED].sum());
+                json.name("deleted").value(table.getValue()[DELETED].sum());
+                json.endObject();
+            }
+            json.endObject();
+
+            json.name("scriptMillis").beginObject();
+            if (totals.length > 0) {
+                json.name("p50").value(round(millis(percentile(totals, 50))));
+                json.name("p90").value(round(millis(percentile(totals, 90))));
+                json.name("p99").value(round(millis(percentile(totals, 99))));
+                json.name("max").value(round(millis(totals[totals.length - 1])));
+            }
+            json.endObject();
+
+            json.name("slowest").beginArray();
+            for (ScriptTiming timing : slowest(timings)) {
+                json.beginObject();
+                json.name("autoscript").value(timing.autoscript);
+                json.name("outcome").value(timing.outcome.name().toLowerCase(Locale.ROOT));
+                json.name("millis").value(round(millis(timing.total())));
+                json.name("parseMillis").value(round(millis(timing.parseNanos)));
+                json.name("writeMillis").value(round(millis(timing.writeNanos)));
+                json.endObject();
+            }
+            json.endArray();
+
+            json.endObject();
+        }
+    }
+
+    /**
+     * Returns the path of the JSON report from the {@link #REPORT_FILE_PROPERTY} system property.
+     *
+     * @return the report path or null if the report is disabled.
+     */
+    public static Path resolveReportFile() {
+        String value = System.getProperty(REPORT_FILE_PROPERTY, DEFAULT_REPORT_FILE);
+        if (value.trim().isEmpty()) {
+            return null;
+        }
+        return Path.of(value.trim());
+    }
+
+    private static List<ScriptTiming> slowest(List<ScriptTiming> timings) {
+        List<ScriptTiming> sorted = new ArrayList<>(timings);
+        sorted.sort(Comparator.comparingLong(ScriptTiming::total).reversed());
+        return sorted.subList(0, Math.min(SLOWEST_SCRIPTS, sorted.size()));
+    }
+
+    private static long[] sortedTotals(List<ScriptTiming> timings) {
+        long[] totals = new long[timings.size()];
+        for (int i = 0; i < totals.length; i++) {
+            totals[i] = timings.get(i).total();
+        }
+        Arrays.sort(totals);
+        return totals;
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 10.0) / 10.0;
+    }
+
+    private static LongAdder[] adders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    private static final class ScriptTiming {
+        private final String autoscript;
+        private final Outcome outcome;
+        private final long parseNanos;
+        private final long writeNanos;
+
+        private ScriptTiming(String autoscript, Outcome outcome, long parseNanos, long writeNanos) {
+            this.autoscript = autoscript;
+            this.outcome = outcome;
+            this.parseNanos = parseNanos;
+            this.writeNanos = writeNanos;
+        }
+
+        private long total() {
+            return parseNanos + writeNanos;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package io.sharptree.maximo.dbmanage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The rows that deploy an automation script, compiled once from its {@link AutoscriptConfig} so that writing the script only binds the prepared values.
+ * <p>
+ * A plan holds the AUTOSCRIPT row, without its source, and the ordered AUTOSCRIPTSTATE, AUTOSCRIPTVARS, SCRIPTLAUNCHPOINT, ACTION and LAUNCHPOINTVARS
+ * rows with the accessflag and objectevent codes already encoded by the {@link EventCodes} tables. Plans are immutable, so they are compiled with
+ * the {@link ParsedScript} on the prefetch workers and can be shared between threads. The {@link #toString()} of a plan lists its rows for review.
+ *
+ * @author Jason VenHuizen
+ */
+public final class DeploymentPlan {
+
+    static final BatchInsertWriter.InsertTemplate AUTOSCRIPT_INSERT = new BatchInsertWriter.InsertTemplate("AUTOSCRIPT",
+            "autoscript", "description", "version", "loglevel", "status", "active", "source", "owner", "createdby", "changeby", "scriptlanguage", "userdefined", "hasld", "langcode", "interface")
+            .withTimestamps("createddate", "statusdate", "changedate");
+
+    static final BatchInsertWriter.InsertTemplate AUTOSCRIPTSTATE_INSERT = new BatchInsertWriter.InsertTemplate("AUTOSCRIPTSTATE",
+            "autoscript", "changeby", "status")
+            .withTimestamps("changedate");
+
+    static final BatchInsertWriter.InsertTemplate AUTOSCRIPTVARS_INSERT = new BatchInsertWriter.InsertTemplate("AUTOSCRIPTVARS",
+            "autoscript", "varname", "varbindingvalue", "varbindingtype", "vartype", "description", "allowoverride", "literaldatatype", "accessflag");
+
+    static final BatchInsertWriter.InsertTemplate SCRIPTLAUNCHPOINT_INSERT = new BatchInsertWriter.InsertTemplate("SCRIPTLAUNCHPOINT",
+            "launchpointname", "autoscript", "description", "launchpointtype", "objectname", "attributename", "condition", "active");
+
+    static final BatchInsertWriter.InsertTemplate SCRIPTLAUNCHPOINT_EVENT_INSERT = new BatchInsertWriter.InsertTemplate("SCRIPTLAUNCHPOINT",
+            "launchpointname", "autoscript", "description", "launchpointtype", "objectname", "attributename", "condition", "active", "objectevent");
+
+    static final BatchInsertWriter.InsertTemplate ACTION_INSERT = new BatchInsertWriter.InsertTemplate("ACTION",
+            "action", "objectname", "type", "value", "parameter", "langcode", "usewith", "hasld");
+
+    static final BatchInsertWriter.InsertTemplate LAUNCHPOINTVARS_INSERT = new BatchInsertWriter.InsertTemplate("LAUNCHPOINTVARS",
+            "launchpointname", "autoscript", "varname", "varbindingvalue");
+
+    /**
+     * The index of the source in the AUTOSCRIPT row values.
+     */
+    private static final int SOURCE_INDEX = 6;
+
+    private final String autoscript;
+    private final Row script;
+    private final List<Row> rows;
+
+    private DeploymentPlan(String autoscript, Row script, List<Row> rows) {
+        this.autoscript = autoscript;
+        this.script = script;
+        this.rows = Collections.unmodifiableList(rows);
+    }
+
+    /**
+     * Compiles the deployment plan of a validated script configuration.
+     *
+     * @param config   the validated script configuration.
+     * @param language the script language.
+     * @return the deployment plan.
+     */
+    public static DeploymentPlan compile(AutoscriptConfig config, String language) {
+        String autoscript = config.autoscript.toUpperCase();
+
+        Row script = new Row(AUTOSCRIPT_INSERT,
+                autoscript,
+                config.description,
+                config.version,
+                config.logLevel,
+                "Active",
+                config.active,
+                null,
+                "MAXADMIN",
+                "MAXADMIN",
+                "MAXADMIN",
+                language,
+                true,
+                false,
+                "EN",
+                config.isInterface());
+
+        List<Row> rows = new ArrayList<>();
+        rows.add(stateRow(autoscript));
+
+        if (config.autoScriptVars != null) {
+            for (AutoscriptVar autoscriptVar : config.autoScriptVars) {
+                rows.add(variableRow(autoscript, autoscriptVar));
+            }
+        }
+
+        if (config.scriptLaunchPoints != null) {
+            for (ScriptLaunchPoint scriptLaunchPoint : config.scriptLaunchPoints) {
+                rows.add(launchPointRow(autoscript, scriptLaunchPoint));
+
+                if (scriptLaunchPoint.launchPointType.equalsIgnoreCase("ACTION")) {
+                    rows.add(actionRow(autoscript, scriptLaunchPoint));
+                }
+                // in case of script for custom condition, we met errors when there is no lauchpointvars provided
+                if (scriptLaunchPoint.launchPointVars != null) {
+                    for (LaunchPointVar launchPointVar : scriptLaunchPoint.launchPointVars) {
+                        rows.add(launchPointVarRow(autoscript, scriptLaunchPoint.launchPointName, launchPointVar));
+                    }
+                }
+            }
+        }
+
+        return new DeploymentPlan(autoscript, script, rows);
+    }
+
+    /**
+     * Returns the upper case automation script name.
+     *
+     * @return the automation script name.
+     */
+    public String getAutoscript() {
+        return autoscript;
+    }
+
+    /**
+     * Returns the AUTOSCRIPT row values with the source.
+     *
+     * @param source the source value to bind, either a {@link ScriptSource} or a placeholder string.
+     * @return a new array of the AUTOSCRIPT row values.
+     */
+    Object[] scriptValues(Object source) {
+        Object[] values = script.values.clone();
+        values[SOURCE_INDEX] = source;
+        return values;
+    }
+
+    /**
+     * Returns the rows that follow the AUTOSCRIPT row, in the order they are written.
+     *
+     * @return the unmodifiable list of rows.
+     */
+    public List<Row> getRows() {
+        return rows;
+    }
+
+    /**
+     * Returns the rows of the plan, one per line, with the column names and values.
+     *
+     * @return the plan description.
+     */
+    @Override
+    public String toString() {
+        StringBuilder description = new StringBuilder();
+        description.append(script).append('\n');
+        for (Row row : rows) {
+            description.append(row).append('\n');
+        }
+        return description.toString();
+    }
+
+    static Row stateRow(String autoscript) {
+        return new Row(AUTOSCRIPTSTATE_INSERT, autoscript, "MAXADMIN", "Active");
+    }
+
+    static Row variableRow(String autoscript, AutoscriptVar autoscriptVar) {
+        return new Row(AUTOSCRIPTVARS_INSERT,
+                autoscript,
+                autoscriptVar.varname,
+                autoscriptVar.varBindingValue,
+                autoscriptVar.varBindingType,
+                autoscriptVar.varType,
+                autoscriptVar.description,
+                autoscriptVar.allowOverride,
+                autoscriptVar.literalDataType,
+                autoscriptVar.accessFlag());
+    }
+
+    static Row launchPointRow(String autoscript, ScriptLaunchPoint scriptLaunchPoint) {
+        Integer objectEvent = scriptLaunchPoint.objectEvent();
+
+        // the objectevent column is only written when the launch point defines an event.
+        if (objectEvent == null) {
+            return new Row(SCRIPTLAUNCHPOINT_INSERT,
+                    scriptLaunchPoint.launchPointName,
+                    autoscript,
+                    scriptLaunchPoint.description,
+                    scriptLaunchPoint.launchPointType,
+                    scriptLaunchPoint.objectName,
+                    scriptLaunchPoint.attributeName,
+                    scriptLaunchPoint.condition,
+                    scriptLaunchPoint.active);
+        } else {
+            return new Row(SCRIPTLAUNCHPOINT_EVENT_INSERT,
+                    scriptLaunchPoint.launchPointName,
+                    autoscript,
+                    scriptLaunchPoint.description,
+                    scriptLaunchPoint.launchPointType,
+                    scriptLaunchPoint.objectName,
+                    scriptLaunchPoint.attributeName,
+                    scriptLaunchPoint.condition,
+                    scriptLaunchPoint.active,
+                    objectEvent);
+        }
+    }
+
+    static Row actionRow(String autoscript, ScriptLaunchPoint scriptLaunchPoint) {
+        return new Row(ACTION_INSERT,
+                scriptLaunchPoint.launchPointName,
+                scriptLaunchPoint.objectName,
+                "CUSTOM",
+                ScriptSnapshot.SCRIPT_ACTION_CLASS,
+                autoscript + "," + scriptLaunchPoint.launchPointName + "," + scriptLaunchPoint.actionName,
+                "EN",
+                "ALL",
+                false);
+    }
+
+    static Row launchPointVarRow(String autoscript, String launchPointName, LaunchPointVar launchPointVar) {
+        return new Row(LAUNCHPOINTVARS_INSERT,
+                launchPointName,
+                autoscript,
+                launchPointVar.varName,
+                launchPointVar.varBindingValue);
+    }
+
+    /**
+     * A row of the plan, the insert template and the column values in the order of the template columns.
+     */
+    public static final class Row {
+        private final BatchInsertWriter.InsertTemplate template;
+        private final Object[] values;
+
+        private Row(BatchInsertWriter.InsertTemplate template, Object... values) {
+            this.template = template;
+            this.values = values;
+        }
+
+        /**
+         * Returns the table the row is inserted into.
+         *
+         * @return the table name.
+         */
+        public String getTable() {
+            return template.getTable();
+        }
+
+        /**
+         * Returns the column value.
+         *
+         * @param index the zero based column index.
+         * @return the column value.
+         */
+        public Object getValue(int index) {
+            return values[index];
+        }
+
+        /**
+         * Inserts the row with the writer.
+         *
+         * @param writer the writer.
+         * @throws java.sql.SQLException thrown if an error occurs writing the row.
+         */
+        void insert(BatchInsertWriter writer) throws java.sql.SQLException {
+            writer.insert(template, values);
+        }
+
+        /**
+         * Returns the table name followed by the column names and values.
+         *
+         * @return the row description.
+         */
+        @Override
+        public String toString() {
+            StringBuilder description = new StringBuilder(template.getTable());
+            List<String> columns = template.getColumns();
+            for (int i = 0; i < values.length; i++) {
+                description.append(i == 0 ? " " : ", ").append(columns.get(i)).append('=');
+                if (values[i] instanceof ScriptSource) {
+                    description.append("<source ").append(((ScriptSource) values[i]).length()).append(" characters>");
+                } else {
+                    description.append(values[i]);
+                }
+            }
+            return description.toString();
+        }
+    }
+}
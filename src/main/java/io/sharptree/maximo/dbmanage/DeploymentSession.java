@@ -0,0 +1,289 @@
+package io.sharptree.maximo.dbmanage;
+
+import com.ibm.tivoli.maximo.dbmanage.MXExceptionWithDefault;
+import org.apache.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * A write behind session that collects the scripts that the change statements deploy and remove during an UpdateDB product install and
+ * writes them together when the session is flushed, rather than each statement writing its own rows as it runs.
+ * <p>
+ * The changes are merged by script name, so a script that is removed and then added is removed and recreated once and a script that is
+ * added and then removed is only removed. When the session is flushed the removed scripts are deleted with one set based delete per table,
+ * then the deployed scripts are compared, removed and recreated with their rows batched by table, see
+ * {@link AutoscriptDeployer#deployAll(List, Set)}, with the batch size of the statement that deployed them. All of the work is done in one
+ * transaction, behind a savepoint that it is rolled back to if any statement fails, and committed at the end.
+ * <p>
+ * The session is enabled with the {@link #SESSION_PROPERTY} system property and opened with the {@link DeploymentContext}. It is flushed
+ * by the last automation script statement of each DBC script, see {@link AutoscriptChangeStatement#run()}, so that UpdateDB only records
+ * the version of a DBC script once its changes are committed. The changes are discarded if a statement of the DBC script fails, so they
+ * are never written for a script whose version is not recorded.
+ *
+ * @author Jason VenHuizen
+ */
+public final class DeploymentSession {
+
+    /**
+     * The system property that enables the write behind session.
+     */
+    public static final String SESSION_PROPERTY = "autoscript.dbc.session";
+
+    private final Map<String, Change> changes = new LinkedHashMap<>();
+    private Object owner;
+
+    /**
+     * Returns true if the write behind session is enabled by the {@link #SESSION_PROPERTY} system property.
+     *
+     * @return true if the session is enabled.
+     */
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(SESSION_PROPERTY);
+    }
+
+    /**
+     * Adds a script to deploy, replacing an earlier deploy of the script.
+     *
+     * @param script    the parsed script.
+     * @param force     true to recreate the script even if it is unchanged.
+     * @param reconcile true to update the rows of a deployed script in place.
+     * @param batchSize the batch size of the statement that deploys the script.
+     */
+    public synchronized void deploy(ParsedScript script, boolean force, boolean reconcile, int batchSize) {
+        Change change = changes.computeIfAbsent(script.getPlan().getAutoscript(), key -> new Change());
+        change.script = script;
+        change.force = force;
+        change.reconcile = reconcile;
+        change.batchSize = batchSize;
+    }
+
+    /**
+     * Adds a script to remove, discarding an earlier deploy of the script.
+     *
+     * @param autoscript the automation script name.
+     */
+    public synchronized void remove(String autoscript) {
+        Change change = changes.computeIfAbsent(autoscript.toUpperCase(), key -> new Change());
+        change.removed = true;
+        change.script = null;
+    }
+
+    /**
+     * Returns the names of the scripts that are deployed by the session and match the SQL like pattern, so that a remove by pattern also
+     * removes the scripts that have not been written yet.
+     *
+     * @param pattern the SQL like pattern, % matches any characters and _ matches one character, either can be escaped with a backslash as
+     *                in the {@code like ? escape '\'} clause that matches the deployed scripts.
+     * @return the upper case names of the matching scripts.
+     */
+    public synchronized List<String> deployedMatching(String pattern) {
+        Pattern regex = likePattern(pattern.trim().toUpperCase());
+        List<String> matches = new ArrayList<>();
+        for (Map.Entry<String, Change> change : changes.entrySet()) {
+            if (change.getValue().script != null && regex.matcher(change.getKey()).matches()) {
+                matches.add(change.getKey());
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Starts a statement of a DBC script. A DBC script writes its changes with its last statement, so the changes of another DBC script that
+     * remain in the session belong to a script that failed and are discarded.
+     *
+     * @param owner the DBC script of the statement.
+     * @return the number of changes that were discarded.
+     */
+    public synchronized int begin(Object owner) {
+        int discarded = owner != this.owner ? discard() : 0;
+        this.owner = owner;
+        return discarded;
+    }
+
+    /**
+     * Discards the changes of the session without writing them, when a statement of the DBC script that recorded them fails.
+     *
+     * @return the number of changes that were discarded.
+     */
+    public synchronized int discard() {
+        int discarded = changes.size();
+        changes.clear();
+        return discarded;
+    }
+
+    /**
+     * Returns true if the session has no changes.
+     *
+     * @return true if there is nothing to flush.
+     */
+    public synchronized boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    /**
+     * Writes the changes of the session in one transaction and commits it, the session is empty afterwards. If the changes cannot be
+     * written they are rolled back and discarded, the statements that recorded them are run again when UpdateDB is next run.
+     *
+     * @param connection the connection to the target database.
+     * @param metrics    the metrics of the run.
+     * @throws Exception thrown if an error occurs writing the changes, the changes of the session are rolled back.
+     */
+    public synchronized void flush(Connection connection, DeploymentMetrics metrics) throws Exception {
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        List<String> removed = new ArrayList<>();
+        // the deployed scripts are grouped by their reconcile and batch size, each group is written by its own deployer.
+        Map<Boolean, Map<Integer, List<ParsedScript>>> deployed = new LinkedHashMap<>();
+        Set<String> forced = new HashSet<>();
+        for (Map.Entry<String, Change> entry : changes.entrySet()) {
+            Change change = entry.getValue();
+            if (change.removed) {
+                removed.add(entry.getKey());
+            }
+            if (change.script != null) {
+                deployed.computeIfAbsent(change.reconcile, key -> new LinkedHashMap<>()).computeIfAbsent(change.batchSize, key -> new ArrayList<>()).add(change.script);
+                // a script that was removed earlier in the session has no rows to compare with.
+                if (change.force || change.removed) {
+                    forced.add(entry.getKey());
+                }
+            }
+        }
+
+        int deploys = 0;
+        for (Map<Integer, List<ParsedScript>> batches : deployed.values()) {
+            for (List<ParsedScript> scripts : batches.values()) {
+                deploys += scripts.size();
+            }
+        }
+        Logger.getLogger("statement").info(new MXExceptionWithDefault("scriptrun", "SessionFlush", "Writing the automation script session, {0}",
+                removed.size() + " scripts removed and " + deploys + " deployed"));
+
+        boolean autoCommit = connection.getAutoCommit();
+        if (autoCommit) {
+            connection.setAutoCommit(false);
+        }
+        Savepoint savepoint = savepoint(connection);
+        try {
+            if (!removed.isEmpty()) {
+                remove(connection, removed, metrics);
+            }
+
+            for (Map.Entry<Boolean, Map<Integer, List<ParsedScript>>> batches : deployed.entrySet()) {
+                for (Map.Entry<Integer, List<ParsedScript>> scripts : batches.getValue().entrySet()) {
+                    try (AutoscriptDeployer deployer = new AutoscriptDeployer(connection, scripts.getKey(), batches.getKey(), metrics)) {
+                        deployer.deployAll(scripts.getValue(), forced);
+                    }
+                }
+            }
+
+            connection.commit();
+        } catch (Exception e) {
+            try {
+                if (savepoint != null) {
+                    connection.rollback(savepoint);
+                } else {
+                    connection.rollback();
+                }
+            } catch (SQLException rollbackError) {
+                e.addSuppressed(rollbackError);
+            }
+            throw e;
+        } finally {
+            changes.clear();
+            if (autoCommit) {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    private static void remove(Connection connection, List<String> removed, DeploymentMetrics metrics) throws Exception {
+        DeploymentEvents.ScriptRemove event = new DeploymentEvents.ScriptRemove();
+        event.begin();
+        long start = System.nanoTime();
+
+        int deleted;
+        try (ScriptDeleter deleter = ScriptDeleter.forRemove(connection, metrics)) {
+            deleted = deleter.deleteAll(removed);
+        }
+
+        // the scripts are removed together, so each is recorded with an equal share of the time.
+        long share = (System.nanoTime() - start) / removed.size();
+        for (String autoscript : removed) {
+            metrics.script(autoscript, DeploymentMetrics.Outcome.REMOVED, 0, share);
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.autoscript = String.join(",", removed);
+            event.scripts = removed.size();
+            event.rows = deleted;
+            event.commit();
+        }
+    }
+
+    /**
+     * Sets a savepoint, or returns null if the driver does not support savepoints and the whole transaction is rolled back on an error.
+     */
+    private static Savepoint savepoint(Connection connection) throws SQLException {
+        try {
+            return connection.setSavepoint("AUTOSCRIPT_SESSION");
+        } catch (SQLFeatureNotSupportedException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Converts a SQL like pattern to a regular expression that matches the same names as the {@code like ? escape '\'} clause of
+     * {@link AutoscriptOperations#namesLike(Connection, String, DeploymentMetrics)}, % matches any characters, _ matches one character and a
+     * backslash matches the character that follows it literally.
+     *
+     * @param pattern the SQL like pattern.
+     * @return the regular expression.
+     * @throws IllegalArgumentException thrown if the pattern ends with a backslash, which the Maximo databases also reject.
+     */
+    static Pattern likePattern(String pattern) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '\\') {
+                if (++i == pattern.length()) {
+                    throw new IllegalArgumentException("The pattern " + pattern + " ends with the backslash escape character.");
+                }
+                literal.append(pattern.charAt(i));
+            } else if (c == '%' || c == '_') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '%' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    private static final class Change {
+        private ParsedScript script;
+        private boolean removed;
+        private boolean force;
+        private boolean reconcile;
+        private int batchSize;
+    }
+}
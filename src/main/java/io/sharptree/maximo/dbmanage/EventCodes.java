@@ -0,0 +1,138 @@
+package io.sharptree.maximo.dbmanage;
+
+/**
+ * Lookup tables that encode the scriptConfig flags as the AUTOSCRIPTVARS accessflag and the SCRIPTLAUNCHPOINT objectevent codes.
+ * <p>
+ * The flags are packed into a bit mask and the code is read from a table that is indexed by the mask, or by the position of the lowest set bit
+ * where the flags are mutually exclusive and the first flag takes precedence.
+ *
+ * @author Jason VenHuizen
+ */
+final class EventCodes {
+
+    /**
+     * The accessflag indexed by noValidation | noAccessCheck &lt;&lt; 1 | noAction &lt;&lt; 2.
+     */
+    private static final int[] ACCESS_FLAGS = {0, 1, 2, 3, 8, 9, 10, 11};
+
+    /**
+     * The object events indexed by the lowest set bit of initializeValue | validateApplication &lt;&lt; 1 | allowObjectCreation &lt;&lt; 2 | allowObjectDeletion &lt;&lt; 3.
+     */
+    private static final Integer[] OBJECT_EVENTS = {1, 1024, 2048, 4096};
+
+    /**
+     * The save events indexed by the lowest set bit of beforeSave | afterSave &lt;&lt; 1 | afterCommit &lt;&lt; 2 and then by add | update &lt;&lt; 1 | delete &lt;&lt; 2.
+     */
+    private static final Integer[][] SAVE_EVENTS = new Integer[3][8];
+
+    /**
+     * The attribute events indexed by the lowest set bit of initializeAccessRestriction | initializeValue &lt;&lt; 1 | validate &lt;&lt; 2 | retrieveList &lt;&lt; 3 | runAction &lt;&lt; 4.
+     */
+    private static final Integer[] ATTRIBUTE_EVENTS = {8, 2, 0, 64, 1};
+
+    static {
+        // the add, update and delete codes of each save timing are consecutive bits, starting at 2 for before save, 16 for after save and 128 for after commit.
+        int[] addCodes = {2, 16, 128};
+        for (int timing = 0; timing < SAVE_EVENTS.length; timing++) {
+            for (int operations = 1; operations < 8; operations++) {
+                SAVE_EVENTS[timing][operations] = operations * addCodes[timing];
+            }
+        }
+    }
+
+    private EventCodes() {
+    }
+
+    /**
+     * Returns the accessflag code.
+     *
+     * @param noValidation  true if the variable skips validation.
+     * @param noAccessCheck true if the variable skips the access check.
+     * @param noAction      true if the variable skips the action.
+     * @return the accessflag code.
+     */
+    static int accessFlag(boolean noValidation, boolean noAccessCheck, boolean noAction) {
+        return ACCESS_FLAGS[bit(noValidation, 0) | bit(noAccessCheck, 1) | bit(noAction, 2)];
+    }
+
+    /**
+     * Returns the objectevent code of the launch point.
+     *
+     * @param launchPoint the launch point.
+     * @return the objectevent code or null if the launch point does not define an event.
+     */
+    static Integer objectEvent(ScriptLaunchPoint launchPoint) {
+        if (launchPoint.launchPointType.equalsIgnoreCase("OBJECT")) {
+            int events = bit(launchPoint.initializeValue, 0) | bit(launchPoint.validateApplication, 1)
+                    | bit(launchPoint.allowObjectCreation, 2) | bit(launchPoint.allowObjectDeletion, 3);
+            if (events != 0) {
+                return OBJECT_EVENTS[Integer.numberOfTrailingZeros(events)];
+            }
+
+            int timings = bit(launchPoint.beforeSave, 0) | bit(launchPoint.afterSave, 1) | bit(launchPoint.afterCommit, 2);
+            if (launchPoint.save && timings != 0) {
+                return SAVE_EVENTS[Integer.numberOfTrailingZeros(timings)][bit(launchPoint.add, 0) | bit(launchPoint.update, 1) | bit(launchPoint.delete, 2)];
+            }
+        } else if (launchPoint.launchPointType.equalsIgnoreCase("ATTRIBUTE")) {
+            int events = bit(launchPoint.initializeAccessRestriction, 0) | bit(launchPoint.initializeValue, 1) | bit(launchPoint.validate, 2)
+                    | bit(launchPoint.retrieveList, 3) | bit(launchPoint.runAction, 4);
+            if (events != 0) {
+                return ATTRIBUTE_EVENTS[Integer.numberOfTrailingZeros(events)];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sets the noValidation, noAccessCheck and noAction flags of the variable from its accessflag code, the inverse of {@link #accessFlag(boolean, boolean, boolean)}.
+     *
+     * @param accessFlag the accessflag code.
+     * @param variable   the variable to set the flags of.
+     */
+    static void decodeAccessFlag(int accessFlag, AutoscriptVar variable) {
+        variable.noValidation = (accessFlag & 1) != 0;
+        variable.noAccessCheck = (accessFlag & 2) != 0;
+        variable.noAction = (accessFlag & 8) != 0;
+    }
+
+    /**
+     * Sets the event flags of the launch point from its objectevent code, the inverse of {@link #objectEvent(ScriptLaunchPoint)}. The object
+     * codes are read as a bit mask, so a code that was set in Maximo with several events sets each of their flags. An attribute launch point
+     * without a code validates the attribute.
+     *
+     * @param objectEvent the objectevent code, may be null.
+     * @param launchPoint the launch point to set the flags of, with its launch point type set.
+     */
+    static void decodeObjectEvent(Integer objectEvent, ScriptLaunchPoint launchPoint) {
+        int events = objectEvent != null ? objectEvent : 0;
+        if (launchPoint.launchPointType.equalsIgnoreCase("OBJECT")) {
+            launchPoint.initializeValue = (events & OBJECT_EVENTS[0]) != 0;
+            launchPoint.validateApplication = (events & OBJECT_EVENTS[1]) != 0;
+            launchPoint.allowObjectCreation = (events & OBJECT_EVENTS[2]) != 0;
+            launchPoint.allowObjectDeletion = (events & OBJECT_EVENTS[3]) != 0;
+
+            // the add, update and delete bits of each timing, see the SAVE_EVENTS table.
+            int beforeSave = (events >> 1) & 7;
+            int afterSave = (events >> 4) & 7;
+            int afterCommit = (events >> 7) & 7;
+            int operations = beforeSave | afterSave | afterCommit;
+            launchPoint.save = operations != 0;
+            launchPoint.beforeSave = beforeSave != 0;
+            launchPoint.afterSave = afterSave != 0;
+            launchPoint.afterCommit = afterCommit != 0;
+            launchPoint.add = (operations & 1) != 0;
+            launchPoint.update = (operations & 2) != 0;
+            launchPoint.delete = (operations & 4) != 0;
+        } else if (launchPoint.launchPointType.equalsIgnoreCase("ATTRIBUTE")) {
+            launchPoint.initializeAccessRestriction = events == ATTRIBUTE_EVENTS[0];
+            launchPoint.initializeValue = events == ATTRIBUTE_EVENTS[1];
+            launchPoint.retrieveList = events == ATTRIBUTE_EVENTS[3];
+            launchPoint.runAction = events == ATTRIBUTE_EVENTS[4];
+            launchPoint.validate = !launchPoint.initializeAccessRestriction && !launchPoint.initializeValue && !launchPoint.retrieveList && !launchPoint.runAction;
+        }
+    }
+
+    private static int bit(boolean value, int position) {
+        return (value ? 1 : 0) << position;
+    }
+}
@@ -0,0 +1,411 @@
+package io.sharptree.maximo.dbmanage;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes the SQL plan of the autoscript change statements to a file instead of running it, so that a release can be checked before it is installed.
+ * <p>
+ * In explain mode the statements read and parse their scripts and compare them with the deployed scripts as usual, but they are given a
+ * connection from {@link #connection(Connection, String)} that runs only queries. Each insert, update and delete is written to the file with
+ * its values inlined, in the order and JDBC batches it would be executed. The rows an update or delete would change are counted with a
+ * select count(*) of its where clause, so the counts are estimates when the same release changes a script more than once. Each change
+ * statement ends with its statements, rows and round trips and the file ends with the totals of the install.
+ *
+ * @author Jason VenHuizen
+ */
+public final class ExplainLog implements AutoCloseable {
+
+    /**
+     * The system property that enables explain mode, the value is the path of the file that the SQL plan is written to.
+     */
+    public static final String EXPLAIN_PROPERTY = "autoscript.dbc.explain";
+
+    private static final int INSERTED = 0;
+    private static final int UPDATED = 1;
+    private static final int DELETED = 2;
+
+    private final Path path;
+    private final PrintWriter out;
+
+    private final Totals section = new Totals();
+    private final Totals total = new Totals();
+    private String changeStatement;
+    private int changeStatements;
+
+    private ExplainLog(Path path, PrintWriter out) {
+        this.path = path;
+        this.out = out;
+    }
+
+    /**
+     * Returns the explain file from the {@link #EXPLAIN_PROPERTY} system property.
+     *
+     * @return the explain file or null if explain mode is not enabled.
+     */
+    public static Path resolveExplainFile() {
+        String value = System.getProperty(EXPLAIN_PROPERTY);
+        return value == null || value.trim().isEmpty() ? null : Paths.get(value.trim());
+    }
+
+    /**
+     * Creates the explain file, replacing an existing file.
+     *
+     * @param path the explain file.
+     * @return the explain log.
+     * @throws IOException thrown if the file cannot be created.
+     */
+    public static ExplainLog open(Path path) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        PrintWriter out = new PrintWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8));
+        out.println("-- Automation script SQL plan, nothing in this file has been run.");
+        return new ExplainLog(path, out);
+    }
+
+    /**
+     * Returns the explain file.
+     *
+     * @return the explain file.
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Starts the plan of a change statement and returns the connection that the statement uses. Queries are run on the connection, inserts,
+     * updates and deletes are written to the explain file, and commits, rollbacks and close are ignored.
+     *
+     * @param connection      the UpdateDB connection.
+     * @param changeStatement the description of the change statement.
+     * @return the explain connection.
+     */
+    public synchronized Connection connection(Connection connection, String changeStatement) {
+        endSection();
+        this.changeStatement = changeStatement;
+        changeStatements++;
+        out.println();
+        out.println("-- " + changeStatement);
+
+        return (Connection) Proxy.newProxyInstance(ExplainLog.class.getClassLoader(), new Class<?>[]{Connection.class}, new ExplainConnection(connection));
+    }
+
+    /**
+     * Writes the totals of the install and closes the explain file.
+     */
+    @Override
+    public synchronized void close() {
+        endSection();
+        out.println();
+        out.println("-- " + changeStatements + " change statements, " + total);
+        out.close();
+    }
+
+    private void endSection() {
+        if (changeStatement != null) {
+            out.println("-- " + (section.statements == 0 ? "no changes, " : "") + section);
+            total.add(section);
+            section.clear();
+            changeStatement = null;
+        }
+    }
+
+    private synchronized void queried() {
+        section.queries++;
+    }
+
+    /**
+     * Writes an executed batch or statement, returning the update counts that the driver would report.
+     */
+    private synchronized int[] executed(Connection connection, String sql, List<Map<Integer, Object>> rows) {
+        String table = DeploymentMetrics.tableOf(sql);
+        String operation = sql.trim().substring(0, 6).toLowerCase(Locale.ROOT);
+        int kind = operation.equals("insert") ? INSERTED : operation.equals("update") ? UPDATED : DELETED;
+
+        int[] counts = new int[rows.size()];
+        long changed = 0;
+        for (int i = 0; i < rows.size(); i++) {
+            counts[i] = kind == INSERTED ? 1 : countRows(connection, table, sql, rows.get(i));
+            changed += Math.max(counts[i], 0);
+        }
+
+        section.writes++;
+        section.statements += rows.size();
+        section.rows[kind] += changed;
+
+        out.println("-- round trip " + (section.writes + section.queries) + ", "
+                + (rows.size() == 1 ? "" : "batch of " + rows.size() + " statements, ")
+                + changed + (kind == INSERTED ? " rows inserted into " : kind == UPDATED ? " rows updated in " : " rows deleted from ") + table);
+        for (Map<Integer, Object> row : rows) {
+            out.println(inline(sql, row) + ";");
+        }
+        return counts;
+    }
+
+    /**
+     * Counts the rows of the table that match the where clause of the update or delete.
+     */
+    private int countRows(Connection connection, String table, String sql, Map<Integer, Object> parameters) {
+        int where = sql.toLowerCase(Locale.ROOT).indexOf(" where ");
+        String count = "select count(*) from " + table + (where < 0 ? "" : sql.substring(where));
+        int skip = where < 0 ? 0 : placeholders(sql.substring(0, where)).size();
+
+        try (PreparedStatement statement = connection.prepareStatement(count)) {
+            for (Map.Entry<Integer, Object> parameter : parameters.entrySet()) {
+                if (parameter.getKey() > skip) {
+                    if (parameter.getValue() == null || parameter.getValue() instanceof SourceParameter) {
+                        statement.setNull(parameter.getKey() - skip, Types.VARCHAR);
+                    } else {
+                        statement.setObject(parameter.getKey() - skip, parameter.getValue());
+                    }
+                }
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getInt(1) : 0;
+            }
+        } catch (SQLException e) {
+            return Statement.SUCCESS_NO_INFO;
+        }
+    }
+
+    /**
+     * Returns the SQL with each bind variable replaced by its value as a SQL literal.
+     */
+    static String inline(String sql, Map<Integer, Object> parameters) {
+        StringBuilder inlined = new StringBuilder(sql.length() + 64);
+        List<Integer> placeholders = placeholders(sql);
+        int from = 0;
+        for (int i = 0; i < placeholders.size(); i++) {
+            int position = placeholders.get(i);
+            inlined.append(sql, from, position).append(literal(parameters.get(i + 1)));
+            from = position + 1;
+        }
+        return inlined.append(sql, from, sql.length()).toString();
+    }
+
+    private static String literal(Object value) {
+        if (value == null) {
+            return "null";
+        } else if (value instanceof Number) {
+            return value.toString();
+        } else if (value instanceof SourceParameter) {
+            return "? /* script source, " + ((SourceParameter) value).length + " characters */";
+        } else {
+            return "'" + value.toString().replace("'", "''") + "'";
+        }
+    }
+
+    /**
+     * Returns the positions of the bind variables that are not within quoted literals.
+     */
+    private static List<Integer> placeholders(String sql) {
+        List<Integer> positions = new ArrayList<>();
+        boolean quoted = false;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (c == '?' && !quoted) {
+                positions.add(i);
+            }
+        }
+        return positions;
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * The connection given to the change statements, it prepares recording statements for the inserts, updates and deletes.
+     */
+    private final class ExplainConnection implements InvocationHandler {
+        private final Connection connection;
+
+        private ExplainConnection(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "prepareStatement":
+                    String sql = (String) args[0];
+                    if (sql.trim().toLowerCase(Locale.ROOT).startsWith("select")) {
+                        PreparedStatement statement = (PreparedStatement) ExplainLog.invoke(connection, method, args);
+                        return Proxy.newProxyInstance(ExplainLog.class.getClassLoader(), new Class<?>[]{PreparedStatement.class}, new QueryStatement(statement));
+                    }
+                    return Proxy.newProxyInstance(ExplainLog.class.getClassLoader(), new Class<?>[]{PreparedStatement.class}, new RecordingStatement(connection, sql));
+                case "commit":
+                case "rollback":
+                case "close":
+                    return null;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return ExplainLog.invoke(connection, method, args);
+            }
+        }
+    }
+
+    /**
+     * A query statement that is run on the connection and counted as a round trip.
+     */
+    private final class QueryStatement implements InvocationHandler {
+        private final PreparedStatement statement;
+
+        private QueryStatement(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getName().equals("executeQuery") || method.getName().equals("execute")) {
+                queried();
+            }
+            return ExplainLog.invoke(statement, method, args);
+        }
+    }
+
+    /**
+     * An insert, update or delete statement that records its bind variables and writes them to the explain file when it is executed.
+     */
+    private final class RecordingStatement implements InvocationHandler {
+        private final Connection connection;
+        private final String sql;
+        private final Map<Integer, Object> parameters = new TreeMap<>();
+        private final List<Map<Integer, Object>> batch = new ArrayList<>();
+        private boolean closed;
+
+        private RecordingStatement(Connection connection, String sql) {
+            this.connection = connection;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                parameters.put((Integer) args[0], value(name, args));
+                return null;
+            }
+
+            switch (name) {
+                case "clearParameters":
+                    parameters.clear();
+                    return null;
+                case "addBatch":
+                    batch.add(new TreeMap<>(parameters));
+                    return null;
+                case "clearBatch":
+                    batch.clear();
+                    return null;
+                case "executeBatch":
+                    if (batch.isEmpty()) {
+                        return new int[0];
+                    }
+                    int[] counts = executed(connection, sql, batch);
+                    batch.clear();
+                    return counts;
+                case "executeUpdate":
+                    return executed(connection, sql, List.of(new TreeMap<>(parameters)))[0];
+                case "execute":
+                    executed(connection, sql, List.of(new TreeMap<>(parameters)));
+                    return false;
+                case "close":
+                    closed = true;
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return sql;
+                default:
+                    throw new SQLFeatureNotSupportedException("The " + name + " method is not supported in explain mode.");
+            }
+        }
+
+        private Object value(String name, Object[] args) {
+            if (name.equals("setNull")) {
+                return null;
+            } else if (args[1] instanceof Reader) {
+                return new SourceParameter(args.length > 2 ? ((Number) args[2]).longValue() : -1);
+            }
+            return args[1];
+        }
+    }
+
+    /**
+     * A script source streamed to a CLOB column, which is written as a bind variable with its length.
+     */
+    private static final class SourceParameter {
+        private final long length;
+
+        private SourceParameter(long length) {
+            this.length = length;
+        }
+    }
+
+    private static final class Totals {
+        private int statements;
+        private int writes;
+        private int queries;
+        private final long[] rows = new long[3];
+
+        private void add(Totals other) {
+            statements += other.statements;
+            writes += other.writes;
+            queries += other.queries;
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] += other.rows[i];
+            }
+        }
+
+        private void clear() {
+            statements = 0;
+            writes = 0;
+            queries = 0;
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = 0;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return statements + " statements, " + rows[INSERTED] + " rows inserted, " + rows[UPDATED] + " updated, " + rows[DELETED] + " deleted, "
+                    + (writes + queries) + " round trips (" + queries + " queries, " + writes + " writes)";
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package io.sharptree.maximo.dbmanage;
+
+import org.jdom2.Element;
+import psdi.dbmanage.statement.ChangeStatement;
+import psdi.dbmanage.statement.Script;
+
+/**
+ * DBC change statement that extracts automation scripts from the target system to a directory, so that an environment can be baselined
+ * and the files deployed again with the `add_update_autoscript` and `add_update_autoscript_dir` statements.
+ * <p>
+ * The scripts are read and written by a {@link ScriptExtractor}.
+ *
+ * @author Jason VenHuizen
+ */
+public class ExtractAutoScriptStatement extends AutoscriptChangeStatement {
+
+    /**
+     * Creates a new instance of the ExtractAutoScriptStatement, that is initialized with the `extract_autoscript` change statement name.
+     *
+     * @param script      the DBC script object that contains the `extract_autoscript` change statement.
+     * @param fromElement the XML script element that represents the `extract_autoscript` change statement.
+     * @throws Exception thrown if an error occurs creating the ExtractAutoScriptStatement change statement.
+     */
+    public ExtractAutoScriptStatement(Script script, Element fromElement) throws Exception {
+        super("extract_autoscript", script, fromElement);
+    }
+
+    /**
+     * Returns the names and pattern attribute values, or "all" if neither is present, and the path attribute value.
+     * <p>
+     *
+     * @see ChangeStatement#toString()
+     */
+    @Override
+    public String toString() {
+        String names = getString("names");
+        String pattern = getString("pattern");
+        String path = getString("path");
+
+        String scripts = (names != null && !names.isEmpty()) ? names : "";
+        if (pattern != null && !pattern.isEmpty()) {
+            scripts += (scripts.isEmpty() ? "like " : " like ") + pattern;
+        }
+        return "extract_autoscript " + (scripts.isEmpty() ? "all" : scripts) + " to " + ((path != null && !path.isEmpty()) ? path : "<null>");
+    }
+
+    /**
+     * Validates that the `extract_autoscript` change statement contains the path attribute.
+     * <p>
+     *
+     * @throws Exception thrown if the path attribute has not been provided.
+     * @see ChangeStatement#validate()
+     */
+    @Override
+    public void validate() throws Exception {
+        requiredValue("path");
+    }
+
+    /**
+     * Extracts the automation scripts listed in the "names" attribute and the automation scripts with names that are like the "pattern" attribute,
+     * or all of the automation scripts if neither is provided, to the directory of the "path" attribute.
+     * <p>
+     *
+     * @throws Exception thrown if the path attribute has not been provided or an error occurs reading the scripts or writing the files.
+     * @see ChangeStatement#validate()
+     */
+    @Override
+    protected void runStatement() throws Exception {
+        validate();
+
+        AutoscriptOperations.extract(this);
+    }
+}
@@ -0,0 +1,510 @@
+package io.sharptree.maximo.dbmanage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An on-disk cache of parsed automation scripts, so that promoting the same scripts through each environment, or retrying UpdateDB,
+ * does not extract and parse the scriptConfig of an unchanged script again.
+ * <p>
+ * Each script file has one entry, named by the SHA-256 digest of its absolute path, or of its URI if it is an archive entry, that holds
+ * the file size, modification time and source digest that it was parsed from, the offsets of the scriptConfig JSON in the source and the
+ * validated {@link AutoscriptConfig} in a compact binary form. An entry is only used if the size and modification time of the file and the digest of the source that was
+ * just read all match, otherwise it is replaced. Entries are written to a temporary file and moved into place, so a concurrent or
+ * interrupted write never leaves a partial entry, and an entry that cannot be read is treated as a miss and deleted.
+ * <p>
+ * The number of entries is bounded, the least recently used entries are evicted. The modification time of an entry records its last
+ * use, so the order is kept between runs.
+ *
+ * @author Jason VenHuizen
+ */
+public final class ParseCache {
+
+    /**
+     * The system property that sets the maximum number of cached scripts, 0 disables the cache. Defaults to {@link #DEFAULT_MAX_ENTRIES}.
+     */
+    public static final String MAX_ENTRIES_PROPERTY = "autoscript.dbc.cache.entries";
+
+    /**
+     * The default maximum number of cached scripts.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    /**
+     * The name of the cache directory within the DBC output directory.
+     */
+    public static final String DIRECTORY_NAME = ".autoscript-cache";
+
+    private static final int MAGIC = 0x41534331;
+
+    /**
+     * The entry format version, it must be incremented when the format or the fields of the script configuration classes change.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    private static final String ENTRY_SUFFIX = ".bin";
+
+    private static final int MAX_COUNT = 1 << 24;
+
+    private final Path directory;
+    private final int maxEntries;
+
+    // the entry file names in least to most recently used order.
+    private final LinkedHashMap<String, Boolean> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private ParseCache(Path directory, int maxEntries) {
+        this.directory = directory;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Opens the cache in the directory, creating the directory if it does not exist and evicting entries above the maximum.
+     *
+     * @param directory  the cache directory.
+     * @param maxEntries the maximum number of cached scripts.
+     * @return the cache.
+     * @throws IOException thrown if the directory cannot be created or listed.
+     */
+    public static ParseCache open(Path directory, int maxEntries) throws IOException {
+        Files.createDirectories(directory);
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(ENTRY_SUFFIX)) {
+                    files.add(file);
+                } else if (name.endsWith(".tmp")) {
+                    // left behind by an interrupted write.
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+
+        Map<Path, Long> lastUsed = new LinkedHashMap<>();
+        for (Path file : files) {
+            try {
+                lastUsed.put(file, Files.getLastModifiedTime(file).toMillis());
+            } catch (NoSuchFileException e) {
+                // removed by another process.
+            }
+        }
+        files.removeIf(file -> !lastUsed.containsKey(file));
+        files.sort((a, b) -> Long.compare(lastUsed.get(a), lastUsed.get(b)));
+
+        ParseCache cache = new ParseCache(directory, maxEntries);
+        for (Path file : files) {
+            cache.entries.put(file.getFileName().toString(), Boolean.TRUE);
+        }
+        cache.evict();
+        return cache;
+    }
+
+    /**
+     * Returns the maximum number of cached scripts from the {@link #MAX_ENTRIES_PROPERTY} system property.
+     *
+     * @return the maximum number of cached scripts, 0 if the cache is disabled.
+     * @throws IllegalArgumentException thrown if the property is not a number or is negative.
+     */
+    public static int resolveMaxEntries() {
+        String value = System.getProperty(MAX_ENTRIES_PROPERTY);
+        if (value == null || value.trim().isEmpty()) {
+            return DEFAULT_MAX_ENTRIES;
+        }
+
+        int maxEntries;
+        try {
+            maxEntries = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The " + MAX_ENTRIES_PROPERTY + " value " + value + " is not a number.");
+        }
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("The " + MAX_ENTRIES_PROPERTY + " value " + value + " cannot be negative.");
+        }
+        return maxEntries;
+    }
+
+    /**
+     * Returns the cached parse of the script source, if the file has not changed since the entry was written.
+     *
+     * @param source       the script source that was just read.
+     * @param language     the script language.
+     * @param lastModified the modification time of the file in milliseconds, taken before the source was read.
+     * @return the parsed script or null if there is no valid entry.
+     */
+    ParsedScript get(ScriptSource source, String language, long lastModified) {
+        String name = entryName(source.getPath());
+        synchronized (entries) {
+            if (entries.get(name) == null) {
+                return null;
+            }
+        }
+
+        Path entry = directory.resolve(name);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION
+                    || !key(source.getPath()).equals(readString(in))
+                    || !String.valueOf(language).equals(readString(in))
+                    || in.readLong() != source.getByteCount()
+                    || in.readLong() != lastModified) {
+                return null;
+            }
+
+            byte[] digest = new byte[in.readUnsignedByte()];
+            in.readFully(digest);
+            if (!MessageDigest.isEqual(digest, ScriptSnapshot.sourceDigest(source.chars()))) {
+                return null;
+            }
+
+            int start = in.readInt();
+            int end = in.readInt();
+            AutoscriptConfig config = readConfig(in);
+            if (start < 0 || end > source.length() || start > end) {
+                throw new IOException("The scriptConfig offsets are outside of the source.");
+            }
+
+            CharBuffer configJson = source.chars();
+            configJson.limit(end).position(start);
+
+            touch(entry);
+            return new ParsedScript(source, language, configJson, config);
+        } catch (IOException | RuntimeException e) {
+            // a corrupt or removed entry is a miss, it is replaced when the script is parsed.
+            remove(name);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the entry for the parsed script, replacing any existing entry and evicting the least recently used entries above the maximum.
+     * The cache is a best effort, so an entry that cannot be written is skipped.
+     *
+     * @param script       the parsed script.
+     * @param lastModified the modification time of the file in milliseconds, taken before the source was read.
+     */
+    void put(ParsedScript script, long lastModified) {
+        ScriptSource source = script.getSource();
+        String name = entryName(source.getPath());
+        Path entry = directory.resolve(name);
+
+        Path temporary = null;
+        try {
+            temporary = Files.createTempFile(directory, name, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                writeString(out, key(source.getPath()));
+                writeString(out, String.valueOf(script.getLanguage()));
+                out.writeLong(source.getByteCount());
+                out.writeLong(lastModified);
+
+                byte[] digest = ScriptSnapshot.sourceDigest(source.chars());
+                out.writeByte(digest.length);
+                out.write(digest);
+
+                CharBuffer configJson = script.getConfigJson();
+                out.writeInt(configJson.position());
+                out.writeInt(configJson.limit());
+                writeConfig(out, script.getConfig());
+            }
+            move(temporary, entry);
+            temporary = null;
+        } catch (IOException e) {
+            // the script is parsed again next time.
+            return;
+        } finally {
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException e) {
+                    // removed when the cache is next opened.
+                }
+            }
+        }
+
+        synchronized (entries) {
+            entries.put(name, Boolean.TRUE);
+        }
+        evict();
+    }
+
+    /**
+     * Returns the cache directory.
+     *
+     * @return the cache directory.
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns the number of cached scripts.
+     *
+     * @return the number of entries.
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private void evict() {
+        List<String> evicted = new ArrayList<>();
+        synchronized (entries) {
+            Iterator<String> iterator = entries.keySet().iterator();
+            while (entries.size() > maxEntries && iterator.hasNext()) {
+                evicted.add(iterator.next());
+                iterator.remove();
+            }
+        }
+
+        for (String name : evicted) {
+            try {
+                Files.deleteIfExists(directory.resolve(name));
+            } catch (IOException e) {
+                // evicted again when the cache is next opened.
+            }
+        }
+    }
+
+    private void remove(String name) {
+        synchronized (entries) {
+            entries.remove(name);
+        }
+        try {
+            Files.deleteIfExists(directory.resolve(name));
+        } catch (IOException e) {
+            // replaced when the script is next cached.
+        }
+    }
+
+    private static void touch(Path entry) {
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // the entry is still valid, only its position in the eviction order is lost.
+        }
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static String key(Path path) {
+        // an archive entry is keyed by its URI, which includes the archive, as its path is only unique within the archive.
+        Path absolute = path.toAbsolutePath().normalize();
+        return absolute.getFileSystem() == FileSystems.getDefault() ? absolute.toString() : absolute.toUri().toString();
+    }
+
+    private static String entryName(Path path) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key(path).getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder(digest.length * 2 + ENTRY_SUFFIX.length());
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return name.append(ENTRY_SUFFIX).toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("The SHA-256 message digest is not available.", e);
+        }
+    }
+
+    private static void writeConfig(DataOutputStream out, AutoscriptConfig config) throws IOException {
+        writeString(out, config.autoscript);
+        writeString(out, config.description);
+        writeString(out, config.version);
+        writeString(out, config.logLevel);
+        out.writeByte(flags(config.active, config.allowInvokingScriptFunctions));
+
+        if (config.autoScriptVars == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(config.autoScriptVars.size());
+            for (AutoscriptVar var : config.autoScriptVars) {
+                writeString(out, var.varname);
+                writeString(out, var.description);
+                writeString(out, var.varBindingType);
+                writeString(out, var.literalDataType);
+                writeString(out, var.varBindingValue);
+                writeString(out, var.varType);
+                out.writeByte(flags(var.allowOverride, var.noValidation, var.noAccessCheck, var.noAction));
+            }
+        }
+
+        if (config.scriptLaunchPoints == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(config.scriptLaunchPoints.size());
+            for (ScriptLaunchPoint lp : config.scriptLaunchPoints) {
+                writeString(out, lp.launchPointName);
+                writeString(out, lp.description);
+                writeString(out, lp.launchPointType);
+                writeString(out, lp.objectName);
+                writeString(out, lp.attributeName);
+                writeString(out, lp.condition);
+                writeString(out, lp.actionName);
+                out.writeInt(flags(lp.active, lp.initializeValue, lp.validateApplication, lp.allowObjectCreation, lp.allowObjectDeletion,
+                        lp.save, lp.add, lp.update, lp.delete, lp.beforeSave, lp.afterSave, lp.afterCommit,
+                        lp.initializeAccessRestriction, lp.validate, lp.retrieveList, lp.runAction));
+
+                if (lp.launchPointVars == null) {
+                    out.writeInt(-1);
+                } else {
+                    out.writeInt(lp.launchPointVars.size());
+                    for (LaunchPointVar var : lp.launchPointVars) {
+                        writeString(out, var.varName);
+                        writeString(out, var.varBindingValue);
+                    }
+                }
+            }
+        }
+    }
+
+    private static AutoscriptConfig readConfig(DataInputStream in) throws IOException {
+        AutoscriptConfig config = new AutoscriptConfig();
+        config.autoscript = readString(in);
+        config.description = readString(in);
+        config.version = readString(in);
+        config.logLevel = readString(in);
+        int configFlags = in.readUnsignedByte();
+        config.active = flag(configFlags, 0);
+        config.allowInvokingScriptFunctions = flag(configFlags, 1);
+
+        int varCount = readCount(in);
+        if (varCount >= 0) {
+            config.autoScriptVars = new ArrayList<>(varCount);
+            for (int i = 0; i < varCount; i++) {
+                AutoscriptVar var = new AutoscriptVar();
+                var.varname = readString(in);
+                var.description = readString(in);
+                var.varBindingType = readString(in);
+                var.literalDataType = readString(in);
+                var.varBindingValue = readString(in);
+                var.varType = readString(in);
+                int varFlags = in.readUnsignedByte();
+                var.allowOverride = flag(varFlags, 0);
+                var.noValidation = flag(varFlags, 1);
+                var.noAccessCheck = flag(varFlags, 2);
+                var.noAction = flag(varFlags, 3);
+                config.autoScriptVars.add(var);
+            }
+        }
+
+        int launchPointCount = readCount(in);
+        if (launchPointCount >= 0) {
+            config.scriptLaunchPoints = new ArrayList<>(launchPointCount);
+            for (int i = 0; i < launchPointCount; i++) {
+                ScriptLaunchPoint lp = new ScriptLaunchPoint();
+                lp.launchPointName = readString(in);
+                lp.description = readString(in);
+                lp.launchPointType = readString(in);
+                lp.objectName = readString(in);
+                lp.attributeName = readString(in);
+                lp.condition = readString(in);
+                lp.actionName = readString(in);
+                int lpFlags = in.readInt();
+                lp.active = flag(lpFlags, 0);
+                lp.initializeValue = flag(lpFlags, 1);
+                lp.validateApplication = flag(lpFlags, 2);
+                lp.allowObjectCreation = flag(lpFlags, 3);
+                lp.allowObjectDeletion = flag(lpFlags, 4);
+                lp.save = flag(lpFlags, 5);
+                lp.add = flag(lpFlags, 6);
+                lp.update = flag(lpFlags, 7);
+                lp.delete = flag(lpFlags, 8);
+                lp.beforeSave = flag(lpFlags, 9);
+                lp.afterSave = flag(lpFlags, 10);
+                lp.afterCommit = flag(lpFlags, 11);
+                lp.initializeAccessRestriction = flag(lpFlags, 12);
+                lp.validate = flag(lpFlags, 13);
+                lp.retrieveList = flag(lpFlags, 14);
+                lp.runAction = flag(lpFlags, 15);
+
+                int lpVarCount = readCount(in);
+                if (lpVarCount >= 0) {
+                    lp.launchPointVars = new ArrayList<>(lpVarCount);
+                    for (int v = 0; v < lpVarCount; v++) {
+                        LaunchPointVar var = new LaunchPointVar();
+                        var.varName = readString(in);
+                        var.varBindingValue = readString(in);
+                        lp.launchPointVars.add(var);
+                    }
+                }
+                config.scriptLaunchPoints.add(lp);
+            }
+        }
+        return config;
+    }
+
+    private static int flags(boolean... values) {
+        int flags = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i]) {
+                flags |= 1 << i;
+            }
+        }
+        return flags;
+    }
+
+    private static boolean flag(int flags, int position) {
+        return (flags & (1 << position)) != 0;
+    }
+
+    /**
+     * Writes a nullable string as its UTF-8 byte length, or -1 for null, followed by the bytes.
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = readCount(in);
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a length or count, checking it against {@link #MAX_COUNT} so a corrupt entry cannot cause a large allocation.
+     */
+    private static int readCount(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < -1 || count > MAX_COUNT) {
+            throw new IOException("The cache entry is corrupt.");
+        }
+        return count;
+    }
+}
@@ -0,0 +1,276 @@
+package io.sharptree.maximo.dbmanage;
+
+import java.nio.CharBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * An automation script that has been read from disk with its scriptConfig extracted, parsed and validated, ready to be written to the database.
+ * <p>
+ * Parsing does not use the database connection, so it can be done ahead of time on a worker thread, including compiling the {@link DeploymentPlan}.
+ *
+ * @author Jason VenHuizen
+ */
+public final class ParsedScript {
+
+    private final ScriptSource source;
+    private final String language;
+    private final CharBuffer configJson;
+    private final AutoscriptConfig config;
+    private final DeploymentPlan plan;
+
+    private long readNanos;
+    private long cacheNanos;
+    private long extractNanos;
+    private long parseNanos;
+    private boolean cached;
+
+    ParsedScript(ScriptSource source, String language, CharBuffer configJson, AutoscriptConfig config) {
+        this(source, language, configJson, config, DeploymentPlan.compile(config, language));
+    }
+
+    private ParsedScript(ScriptSource source, String language, CharBuffer configJson, AutoscriptConfig config, DeploymentPlan plan) {
+        this.source = source;
+        this.language = language;
+        this.configJson = configJson;
+        this.config = config;
+        this.plan = plan;
+    }
+
+    /**
+     * Reads the script file, extracts and parses the scriptConfig JSON and validates the script configuration.
+     *
+     * @param path     the path to the script file.
+     * @param language the script language, either javascript or python.
+     * @return the parsed script.
+     * @throws Exception thrown if the file cannot be read, the scriptConfig cannot be found or parsed, or the configuration is not valid.
+     */
+    public static ParsedScript parse(Path path, String language) throws Exception {
+        return parse(path, language, null);
+    }
+
+    /**
+     * Reads the script file and returns the cached parse if the file has not changed, otherwise the scriptConfig JSON is extracted, parsed
+     * and validated and the result is cached.
+     *
+     * @param path     the path to the script file.
+     * @param language the script language, either javascript or python.
+     * @param cache    the parse cache or null to always parse the script.
+     * @return the parsed script.
+     * @throws Exception thrown if the file cannot be read, the scriptConfig cannot be found or parsed, or the configuration is not valid.
+     */
+    public static ParsedScript parse(Path path, String language, ParseCache cache) throws Exception {
+        return parse(path, language, cache, ScriptMinifier.Mode.NONE);
+    }
+
+    /**
+     * Reads the script file and returns the cached parse if the file has not changed, otherwise the scriptConfig JSON is extracted, parsed
+     * and validated and the result is cached. The source is then minified in place if a minification mode is given, so the parse cache
+     * always holds the source as it was read.
+     *
+     * @param path     the path to the script file.
+     * @param language the script language, either javascript or python.
+     * @param cache    the parse cache or null to always parse the script.
+     * @param minify   the minification of the source.
+     * @return the parsed script.
+     * @throws Exception thrown if the file cannot be read, the scriptConfig cannot be found or parsed, or the configuration is not valid.
+     */
+    public static ParsedScript parse(Path path, String language, ParseCache cache, ScriptMinifier.Mode minify) throws Exception {
+        if (path == null || !Files.exists(path)) {
+            throw new Exception("The specified script file is either null or does not exist.");
+        }
+
+        // the modification time is taken before the file is read, so a change made while it is read is not cached under the new time.
+        DeploymentEvents.ScriptLoad loadEvent = new DeploymentEvents.ScriptLoad();
+        loadEvent.begin();
+        long start = System.nanoTime();
+        long lastModified = Files.getLastModifiedTime(path).toMillis();
+        ScriptSource source = ScriptSource.read(path);
+        long read = System.nanoTime();
+        loadEvent.end();
+        if (loadEvent.shouldCommit()) {
+            loadEvent.path = path.toString();
+            loadEvent.bytes = source.getByteCount();
+            loadEvent.characters = source.length();
+            loadEvent.commit();
+        }
+
+        DeploymentEvents.ConfigParse parseEvent = new DeploymentEvents.ConfigParse();
+        if (cache != null) {
+            parseEvent.begin();
+            ParsedScript cached = cache.get(source, language, lastModified);
+            if (cached != null) {
+                cached.timed(read - start, System.nanoTime() - read, 0, 0, true);
+                cached.commit(parseEvent, true);
+                return cached.minify(minify);
+            }
+        }
+        long looked = System.nanoTime();
+
+        DeploymentEvents.ConfigExtract extractEvent = new DeploymentEvents.ConfigExtract();
+        extractEvent.begin();
+        CharBuffer configJson = ScriptConfigExtractor.extract(source.chars(), "python".equalsIgnoreCase(language));
+        long extracted = System.nanoTime();
+        extractEvent.end();
+        if (extractEvent.shouldCommit()) {
+            extractEvent.path = path.toString();
+            extractEvent.bytes = source.getByteCount();
+            extractEvent.configCharacters = configJson.remaining();
+            extractEvent.commit();
+        }
+
+        parseEvent.begin();
+        AutoscriptConfig config = ScriptConfigReader.read(configJson);
+
+        // validate that the script configuration has the required values.
+        config.validate();
+
+        ParsedScript parsed = new ParsedScript(source, language, configJson, config);
+        parsed.timed(read - start, cache != null ? looked - read : 0, extracted - looked, System.nanoTime() - extracted, false);
+        parsed.commit(parseEvent, false);
+
+        if (cache != null) {
+            cache.put(parsed, lastModified);
+        }
+        return parsed.minify(minify);
+    }
+
+    /**
+     * Returns the script with its source minified in place, the time spent is added to the extract time. This script must not be used afterwards.
+     */
+    private ParsedScript minify(ScriptMinifier.Mode mode) {
+        if (mode == null || mode == ScriptMinifier.Mode.NONE) {
+            return this;
+        }
+
+        long start = System.nanoTime();
+        ScriptMinifier minifier = source.newMinifier("python".equalsIgnoreCase(language), mode == ScriptMinifier.Mode.PRESERVE_LINES);
+        ScriptSource minified = source.minify(minifier, configJson);
+
+        CharBuffer minifiedJson = minified.chars();
+        minifiedJson.limit(minifier.configStart() + configJson.remaining()).position(minifier.configStart());
+
+        ParsedScript script = new ParsedScript(minified, language, minifiedJson, config, plan);
+        script.timed(readNanos, cacheNanos, extractNanos + System.nanoTime() - start, parseNanos, cached);
+        return script;
+    }
+
+    private void commit(DeploymentEvents.ConfigParse event, boolean cached) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.autoscript = plan.getAutoscript();
+            event.configCharacters = configJson.remaining();
+            event.launchPoints = config.scriptLaunchPoints == null ? 0 : config.scriptLaunchPoints.size();
+            event.variables = config.autoScriptVars == null ? 0 : config.autoScriptVars.size();
+            event.cached = cached;
+            event.commit();
+        }
+    }
+
+    private void timed(long readNanos, long cacheNanos, long extractNanos, long parseNanos, boolean cached) {
+        this.readNanos = readNanos;
+        this.cacheNanos = cacheNanos;
+        this.extractNanos = extractNanos;
+        this.parseNanos = parseNanos;
+        this.cached = cached;
+    }
+
+    /**
+     * Returns the script source.
+     *
+     * @return the script source.
+     */
+    public ScriptSource getSource() {
+        return source;
+    }
+
+    /**
+     * Returns the script language.
+     *
+     * @return the script language.
+     */
+    public String getLanguage() {
+        return language;
+    }
+
+    /**
+     * Returns a read only view of the scriptConfig JSON within the source.
+     *
+     * @return the scriptConfig JSON.
+     */
+    public CharBuffer getConfigJson() {
+        return configJson.duplicate();
+    }
+
+    /**
+     * Returns the validated script configuration.
+     *
+     * @return the script configuration.
+     */
+    public AutoscriptConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Returns the compiled deployment plan.
+     *
+     * @return the deployment plan.
+     */
+    public DeploymentPlan getPlan() {
+        return plan;
+    }
+
+    /**
+     * Returns the time spent reading and decoding the script file.
+     *
+     * @return the read time in nanoseconds.
+     */
+    long getReadNanos() {
+        return readNanos;
+    }
+
+    /**
+     * Returns the time spent looking up the script in the parse cache.
+     *
+     * @return the cache time in nanoseconds, 0 if the cache is not used.
+     */
+    long getCacheNanos() {
+        return cacheNanos;
+    }
+
+    /**
+     * Returns the time spent extracting the scriptConfig JSON.
+     *
+     * @return the extract time in nanoseconds, 0 if the script was cached.
+     */
+    long getExtractNanos() {
+        return extractNanos;
+    }
+
+    /**
+     * Returns the time spent parsing and validating the scriptConfig and compiling the deployment plan.
+     *
+     * @return the parse time in nanoseconds, 0 if the script was cached.
+     */
+    long getParseNanos() {
+        return parseNanos;
+    }
+
+    /**
+     * Returns true if the script was read from the parse cache.
+     *
+     * @return true if the parse was cached.
+     */
+    boolean isCached() {
+        return cached;
+    }
+
+    /**
+     * Returns the total time spent reading and parsing the script.
+     *
+     * @return the total parse time in nanoseconds.
+     */
+    long getTotalNanos() {
+        return readNanos + cacheNanos + extractNanos + parseNanos;
+    }
+}
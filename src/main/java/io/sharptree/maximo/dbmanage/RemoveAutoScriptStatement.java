@@ -3,14 +3,13 @@ package io.sharptree.maximo.dbmanage;
 import org.jdom2.Element;
 import psdi.dbmanage.statement.ChangeStatement;
 import psdi.dbmanage.statement.Script;
-import psdi.util.StringUtility;
 
 /**
  * DBC change statement that removes an automation script from the target system.
  *
  * @author Jason Venhuizen
  */
-public class RemoveAutoScriptStatement extends ChangeStatement {
+public class RemoveAutoScriptStatement extends AutoscriptChangeStatement {
 
     /**
      * Creates a new instance of the RemoveAutoScriptStatement, that is initialized with the `remove_autoscript` change statement name.
@@ -69,33 +68,10 @@ public class RemoveAutoScriptStatement extends ChangeStatement {
      * @see ChangeStatement#validate()
      */
     @Override
-    public void run() throws Exception {
+    protected void runStatement() throws Exception {
         validate();
 
-        String whereSql = StringUtility.replaceAll("upper(autoscript) = '<AUTOSCRIPT>' ", "<AUTOSCRIPT>", getString("name").toUpperCase());
-
-        String scriptWhereSql = StringUtility.replaceAll("upper(scriptname) = '<AUTOSCRIPT>' ", "<AUTOSCRIPT>", getString("name").toUpperCase());
-
-        String actionWhereSql = StringUtility.replaceAll("upper(action) in (select launchpointname from scriptlaunchpoint where LAUNCHPOINTTYPE = 'ACTION' AND upper(autoscript) = '<AUTOSCRIPT>') and value = 'com.ibm.tivoli.maximo.script.ScriptAction'", "<AUTOSCRIPT>", getString("name").toUpperCase());
-        String actionGrpWhereSql = StringUtility.replaceAll("upper(member) in (SELECT action FROM ACTION WHERE upper(action) in (select launchpointname from scriptlaunchpoint where LAUNCHPOINTTYPE = 'ACTION' AND upper(autoscript) = '<AUTOSCRIPT>') and value = 'com.ibm.tivoli.maximo.script.ScriptAction')", "<AUTOSCRIPT>", getString("name").toUpperCase());
-
-        doSql("delete from actiongroup where " + actionGrpWhereSql);
-        doSql("delete from actiongroup where " + actionGrpWhereSql);
-        doSql("delete from action where " + actionWhereSql);
-
-        doSql("delete from autoscript where " + whereSql);
-        doSql("delete from scriptlaunchpoint where " + whereSql);
-        doSql("delete from launchpointvars where " + whereSql);
-        doSql("delete from autoscriptvars where " + whereSql);
-        doSql("delete from autoscriptstate where " + whereSql);
-        doSql("delete from inspformscript where " + whereSql);
-
-        doSql("delete from oslcquery where " + scriptWhereSql);
-        // no direct link from autoscript to ososlcaction, for now we will keep sigoption
-        // doSql("delete from ososlcaction where " + scriptWhereSql);
-        doSql("delete from jsonmapping where " + scriptWhereSql);
-
-
+        AutoscriptOperations.remove(this);
     }
 
 }
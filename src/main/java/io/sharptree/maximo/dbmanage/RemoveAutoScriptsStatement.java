@@ -0,0 +1,73 @@
+package io.sharptree.maximo.dbmanage;
+
+import org.jdom2.Element;
+import psdi.dbmanage.statement.ChangeStatement;
+import psdi.dbmanage.statement.Script;
+
+/**
+ * DBC change statement that removes a list of automation scripts, or the automation scripts with names that match a pattern, from the target system.
+ * <p>
+ * The scripts are removed from the same tables as the `remove_autoscript` statement, with one set based delete per table for each chunk of names.
+ *
+ * @author Jason VenHuizen
+ */
+public class RemoveAutoScriptsStatement extends AutoscriptChangeStatement {
+
+    /**
+     * Creates a new instance of the RemoveAutoScriptsStatement, that is initialized with the `remove_autoscripts` change statement name.
+     *
+     * @param script      the DBC script object that contains the `remove_autoscripts` change statement.
+     * @param fromElement the XML script element that represents the `remove_autoscripts` change statement.
+     * @throws Exception thrown if an error occurs creating the RemoveAutoScriptsStatement change statement.
+     */
+    public RemoveAutoScriptsStatement(Script script, Element fromElement) throws Exception {
+        super("remove_autoscripts", script, fromElement);
+    }
+
+    /**
+     * Returns the names and pattern attribute values or "null" if neither is present.
+     * <p>
+     *
+     * @see ChangeStatement#toString()
+     */
+    @Override
+    public String toString() {
+        String names = getString("names");
+        String pattern = getString("pattern");
+
+        return "remove_autoscripts " + ((names != null && !names.isEmpty()) ? names : "<null>")
+                + ((pattern != null && !pattern.isEmpty()) ? " like " + pattern : "");
+    }
+
+    /**
+     * Validates that the `remove_autoscripts` change statement contains either the names or the pattern attribute.
+     * <p>
+     *
+     * @throws Exception thrown if neither the names nor the pattern attribute has been provided.
+     * @see ChangeStatement#validate()
+     */
+    @Override
+    public void validate() throws Exception {
+        String names = getString("names");
+        String pattern = getString("pattern");
+
+        if ((names == null || names.trim().isEmpty()) && (pattern == null || pattern.trim().isEmpty())) {
+            throw new Exception("The remove_autoscripts statement requires either the names or the pattern attribute.");
+        }
+    }
+
+    /**
+     * Removes the automation scripts listed in the "names" attribute and the automation scripts with names that are like the "pattern" attribute.
+     * The references are removed from the same objects as the `remove_autoscript` statement.
+     * <p>
+     *
+     * @throws Exception thrown if neither the names nor the pattern attribute has been provided or an error occurs executing the SQL statements.
+     * @see ChangeStatement#validate()
+     */
+    @Override
+    protected void runStatement() throws Exception {
+        validate();
+
+        AutoscriptOperations.removeAll(this);
+    }
+}
@@ -0,0 +1,139 @@
+package io.sharptree.maximo.dbmanage;
+
+import java.nio.CharBuffer;
+
+/**
+ * Locates the scriptConfig JSON in an automation script source with a single pass over the source.
+ * <p>
+ * The declaration is found with the {@link ScriptLexer}, so a scriptConfig that only appears in a comment or string is ignored and braces
+ * inside strings and comments are not counted. The supported forms are the JavaScript {@code var}, {@code let} and {@code const} declarations
+ * or a plain assignment, with an object literal value, and the Python assignment of a string that contains the JSON.
+ *
+ * @author Jason VenHuizen
+ */
+public final class ScriptConfigExtractor {
+
+    private static final String MISSING_START = "The scriptConfig JSON was not property formatted; missing a starting { character.";
+    private static final String MISSING_END = "The scriptConfig JSON was not properly formatted; missing a closing } character.";
+    private static final String NOT_DECLARED = "The scriptConfig variable was not declared in the automation script source; the script cannot be processed.";
+
+    private static final int SCANNING = 0;
+    private static final int NAME = 1;
+    private static final int VALUE = 2;
+
+    private ScriptConfigExtractor() {
+    }
+
+    /**
+     * Finds the scriptConfig JSON in the source.
+     *
+     * @param source the automation script source.
+     * @param python true if the source is Python, otherwise it is treated as JavaScript.
+     * @return a read only view of the source that contains the JSON, from the opening to the closing brace. The position and limit of the buffer are the offsets of the JSON in the source.
+     * @throws Exception thrown if the scriptConfig is not declared or the JSON braces are not balanced.
+     */
+    public static CharBuffer extract(CharSequence source, boolean python) throws Exception {
+        if (source == null || source.length() == 0) {
+            throw new Exception("The source cannot be null or empty; the script cannot be processed.");
+        }
+
+        ScriptLexer lexer = new ScriptLexer(source, python);
+
+        int state = SCANNING;
+        boolean statementStart = true;
+        boolean declaration = false;
+
+        while (lexer.next()) {
+            ScriptLexer.TokenType type = lexer.type();
+
+            if (type == ScriptLexer.TokenType.WHITESPACE || type == ScriptLexer.TokenType.LINE_COMMENT || type == ScriptLexer.TokenType.BLOCK_COMMENT) {
+                continue;
+            } else if (type == ScriptLexer.TokenType.NEWLINE) {
+                if (state == SCANNING) {
+                    statementStart = true;
+                    declaration = false;
+                }
+                continue;
+            }
+
+            if (state == VALUE) {
+                if (lexer.is('{')) {
+                    return objectLiteral(lexer, source);
+                } else if (type == ScriptLexer.TokenType.STRING) {
+                    return stringLiteral(source, lexer.start(), lexer.end());
+                }
+                throw new Exception(MISSING_START);
+            } else if (state == NAME) {
+                if (lexer.is('=') && lexer.peek(0) != '=' && lexer.peek(0) != '>') {
+                    state = VALUE;
+                    continue;
+                }
+                state = SCANNING;
+            }
+
+            if (type == ScriptLexer.TokenType.WORD) {
+                if ((statementStart || declaration) && lexer.is("scriptConfig")) {
+                    state = NAME;
+                } else {
+                    declaration = statementStart && !python && (lexer.is("var") || lexer.is("let") || lexer.is("const"));
+                }
+                statementStart = false;
+            } else {
+                statementStart = lexer.is(';') || lexer.is('{') || lexer.is('}');
+                declaration = false;
+            }
+        }
+
+        throw new Exception(state == VALUE ? MISSING_START : NOT_DECLARED);
+    }
+
+    /**
+     * Returns the range of an object literal, counting the braces of the code tokens that follow the opening brace.
+     */
+    private static CharBuffer objectLiteral(ScriptLexer lexer, CharSequence source) throws Exception {
+        int start = lexer.start();
+        int depth = 1;
+
+        while (lexer.next()) {
+            if (lexer.is('{')) {
+                depth++;
+            } else if (lexer.is('}') && --depth == 0) {
+                return CharBuffer.wrap(source, start, lexer.end());
+            }
+        }
+        throw new Exception(MISSING_END);
+    }
+
+    /**
+     * Returns the range of the JSON object inside a string literal, skipping the braces inside the JSON strings.
+     */
+    private static CharBuffer stringLiteral(CharSequence source, int from, int to) throws Exception {
+        int start = from;
+        while (start < to && source.charAt(start) != '{') {
+            start++;
+        }
+        if (start == to) {
+            throw new Exception(MISSING_START);
+        }
+
+        int depth = 0;
+        char quote = 0;
+        for (int i = start; i < to; i++) {
+            char c = source.charAt(i);
+            if (quote != 0) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '{') {
+                depth++;
+            } else if (c == '}' && --depth == 0) {
+                return CharBuffer.wrap(source, start, i + 1);
+            }
+        }
+        throw new Exception(MISSING_END);
+    }
+}
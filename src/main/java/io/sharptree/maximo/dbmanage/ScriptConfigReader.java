@@ -0,0 +1,470 @@
+package io.sharptree.maximo.dbmanage;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the scriptConfig JSON into an {@link AutoscriptConfig} directly from the extracted range of the script source.
+ * <p>
+ * The JSON is streamed from the character buffer with a lenient {@link JsonReader}, and bound by hand-written {@link TypeAdapter}s
+ * rather than by reflection. The adapters follow the Gson defaults that the scriptConfig was previously bound with: unknown names are
+ * skipped, a null leaves the field default, a boolean may be given as a string, and a string may be given as a number or boolean.
+ * The adapters are registered with the shared {@link #GSON} instance, which is thread safe.
+ *
+ * @author Jason VenHuizen
+ */
+public final class ScriptConfigReader {
+
+    private static final TypeAdapter<LaunchPointVar> LAUNCH_POINT_VAR_ADAPTER = new LaunchPointVarAdapter();
+    private static final TypeAdapter<AutoscriptVar> AUTOSCRIPT_VAR_ADAPTER = new AutoscriptVarAdapter();
+    private static final TypeAdapter<ScriptLaunchPoint> SCRIPT_LAUNCH_POINT_ADAPTER = new ScriptLaunchPointAdapter();
+    private static final TypeAdapter<AutoscriptConfig> AUTOSCRIPT_CONFIG_ADAPTER = new AutoscriptConfigAdapter();
+
+    /**
+     * The shared Gson instance with the script configuration adapters registered.
+     */
+    public static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(AutoscriptConfig.class, AUTOSCRIPT_CONFIG_ADAPTER)
+            .registerTypeAdapter(ScriptLaunchPoint.class, SCRIPT_LAUNCH_POINT_ADAPTER)
+            .registerTypeAdapter(AutoscriptVar.class, AUTOSCRIPT_VAR_ADAPTER)
+            .registerTypeAdapter(LaunchPointVar.class, LAUNCH_POINT_VAR_ADAPTER)
+            .create();
+
+    private ScriptConfigReader() {
+    }
+
+    /**
+     * Reads the script configuration from the JSON between the position and limit of the buffer. The buffer position is not changed.
+     *
+     * @param json the scriptConfig JSON.
+     * @return the script configuration or null if the buffer is empty.
+     * @throws JsonSyntaxException thrown if the JSON is malformed or does not match the script configuration.
+     */
+    public static AutoscriptConfig read(CharBuffer json) {
+        JsonReader reader = new JsonReader(new CharBufferReader(json.duplicate()));
+        AutoscriptConfig config = GSON.fromJson(reader, AutoscriptConfig.class);
+
+        try {
+            if (config != null && reader.peek() != JsonToken.END_DOCUMENT) {
+                throw new JsonSyntaxException("The scriptConfig JSON was not fully consumed.");
+            }
+        } catch (IOException e) {
+            throw new JsonSyntaxException(e);
+        }
+        return config;
+    }
+
+    /**
+     * Writes the script configuration as JSON indented with four spaces, with the same adapters that read it.
+     *
+     * @param config the script configuration.
+     * @return the scriptConfig JSON.
+     */
+    public static String toJson(AutoscriptConfig config) {
+        StringWriter json = new StringWriter();
+        try {
+            JsonWriter writer = new JsonWriter(json);
+            writer.setIndent("    ");
+            AUTOSCRIPT_CONFIG_ADAPTER.write(writer, config);
+            writer.flush();
+        } catch (IOException e) {
+            // a StringWriter does not throw.
+            throw new IllegalStateException(e);
+        }
+        return json.toString();
+    }
+
+    private static String nextString(JsonReader in) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        } else if (token == JsonToken.BOOLEAN) {
+            return Boolean.toString(in.nextBoolean());
+        }
+        return in.nextString();
+    }
+
+    private static boolean nextBoolean(JsonReader in, boolean defaultValue) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return defaultValue;
+        } else if (token == JsonToken.STRING) {
+            return Boolean.parseBoolean(in.nextString());
+        }
+        return in.nextBoolean();
+    }
+
+    private static <T> List<T> nextList(JsonReader in, TypeAdapter<T> adapter) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        List<T> list = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            list.add(adapter.read(in));
+        }
+        in.endArray();
+        return list;
+    }
+
+    private static void writeString(JsonWriter out, String name, String value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value);
+        }
+    }
+
+    private static <T> void writeList(JsonWriter out, String name, List<T> values, TypeAdapter<T> adapter) throws IOException {
+        if (values != null) {
+            out.name(name).beginArray();
+            for (T value : values) {
+                adapter.write(out, value);
+            }
+            out.endArray();
+        }
+    }
+
+    private static final class AutoscriptConfigAdapter extends TypeAdapter<AutoscriptConfig> {
+        @Override
+        public AutoscriptConfig read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            AutoscriptConfig config = new AutoscriptConfig();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "autoscript":
+                        config.autoscript = nextString(in);
+                        break;
+                    case "description":
+                        config.description = nextString(in);
+                        break;
+                    case "version":
+                        config.version = nextString(in);
+                        break;
+                    case "active":
+                        config.active = nextBoolean(in, config.active);
+                        break;
+                    case "logLevel":
+                        config.logLevel = nextString(in);
+                        break;
+                    case "autoScriptVars":
+                        config.autoScriptVars = nextList(in, AUTOSCRIPT_VAR_ADAPTER);
+                        break;
+                    case "scriptLaunchPoints":
+                        config.scriptLaunchPoints = nextList(in, SCRIPT_LAUNCH_POINT_ADAPTER);
+                        break;
+                    case "allowInvokingScriptFunctions":
+                        config.allowInvokingScriptFunctions = nextBoolean(in, config.allowInvokingScriptFunctions);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return config;
+        }
+
+        @Override
+        public void write(JsonWriter out, AutoscriptConfig config) throws IOException {
+            if (config == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            writeString(out, "autoscript", config.autoscript);
+            writeString(out, "description", config.description);
+            writeString(out, "version", config.version);
+            out.name("active").value(config.active);
+            writeString(out, "logLevel", config.logLevel);
+            writeList(out, "autoScriptVars", config.autoScriptVars, AUTOSCRIPT_VAR_ADAPTER);
+            writeList(out, "scriptLaunchPoints", config.scriptLaunchPoints, SCRIPT_LAUNCH_POINT_ADAPTER);
+            out.name("allowInvokingScriptFunctions").value(config.allowInvokingScriptFunctions);
+            out.endObject();
+        }
+    }
+
+    private static final class AutoscriptVarAdapter extends TypeAdapter<AutoscriptVar> {
+        @Override
+        public AutoscriptVar read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            AutoscriptVar var = new AutoscriptVar();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "varname":
+                        var.varname = nextString(in);
+                        break;
+                    case "description":
+                        var.description = nextString(in);
+                        break;
+                    case "varBindingType":
+                        var.varBindingType = nextString(in);
+                        break;
+                    case "literalDataType":
+                        var.literalDataType = nextString(in);
+                        break;
+                    case "varBindingValue":
+                        var.varBindingValue = nextString(in);
+                        break;
+                    case "varType":
+                        var.varType = nextString(in);
+                        break;
+                    case "allowOverride":
+                        var.allowOverride = nextBoolean(in, var.allowOverride);
+                        break;
+                    case "noValidation":
+                        var.noValidation = nextBoolean(in, var.noValidation);
+                        break;
+                    case "noAccessCheck":
+                        var.noAccessCheck = nextBoolean(in, var.noAccessCheck);
+                        break;
+                    case "noAction":
+                        var.noAction = nextBoolean(in, var.noAction);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return var;
+        }
+
+        @Override
+        public void write(JsonWriter out, AutoscriptVar var) throws IOException {
+            if (var == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            writeString(out, "varname", var.varname);
+            writeString(out, "description", var.description);
+            writeString(out, "varBindingType", var.varBindingType);
+            writeString(out, "literalDataType", var.literalDataType);
+            writeString(out, "varBindingValue", var.varBindingValue);
+            writeString(out, "varType", var.varType);
+            out.name("allowOverride").value(var.allowOverride);
+            out.name("noValidation").value(var.noValidation);
+            out.name("noAccessCheck").value(var.noAccessCheck);
+            out.name("noAction").value(var.noAction);
+            out.endObject();
+        }
+    }
+
+    private static final class ScriptLaunchPointAdapter extends TypeAdapter<ScriptLaunchPoint> {
+        @Override
+        public ScriptLaunchPoint read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            ScriptLaunchPoint lp = new ScriptLaunchPoint();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "launchPointName":
+                        lp.launchPointName = nextString(in);
+                        break;
+                    case "description":
+                        lp.description = nextString(in);
+                        break;
+                    case "launchPointType":
+                        lp.launchPointType = nextString(in);
+                        break;
+                    case "active":
+                        lp.active = nextBoolean(in, lp.active);
+                        break;
+                    case "objectName":
+                        lp.objectName = nextString(in);
+                        break;
+                    case "attributeName":
+                        lp.attributeName = nextString(in);
+                        break;
+                    case "condition":
+                        lp.condition = nextString(in);
+                        break;
+                    case "initializeValue":
+                        lp.initializeValue = nextBoolean(in, lp.initializeValue);
+                        break;
+                    case "validateApplication":
+                        lp.validateApplication = nextBoolean(in, lp.validateApplication);
+                        break;
+                    case "allowObjectCreation":
+                        lp.allowObjectCreation = nextBoolean(in, lp.allowObjectCreation);
+                        break;
+                    case "allowObjectDeletion":
+                        lp.allowObjectDeletion = nextBoolean(in, lp.allowObjectDeletion);
+                        break;
+                    case "save":
+                        lp.save = nextBoolean(in, lp.save);
+                        break;
+                    case "add":
+                        lp.add = nextBoolean(in, lp.add);
+                        break;
+                    case "update":
+                        lp.update = nextBoolean(in, lp.update);
+                        break;
+                    case "delete":
+                        lp.delete = nextBoolean(in, lp.delete);
+                        break;
+                    case "beforeSave":
+                        lp.beforeSave = nextBoolean(in, lp.beforeSave);
+                        break;
+                    case "afterSave":
+                        lp.afterSave = nextBoolean(in, lp.afterSave);
+                        break;
+                    case "afterCommit":
+                        lp.afterCommit = nextBoolean(in, lp.afterCommit);
+                        break;
+                    case "initializeAccessRestriction":
+                        lp.initializeAccessRestriction = nextBoolean(in, lp.initializeAccessRestriction);
+                        break;
+                    case "validate":
+                        lp.validate = nextBoolean(in, lp.validate);
+                        break;
+                    case "retrieveList":
+                        lp.retrieveList = nextBoolean(in, lp.retrieveList);
+                        break;
+                    case "runAction":
+                        lp.runAction = nextBoolean(in, lp.runAction);
+                        break;
+                    case "actionName":
+                        lp.actionName = nextString(in);
+                        break;
+                    case "launchPointVars":
+                        lp.launchPointVars = nextList(in, LAUNCH_POINT_VAR_ADAPTER);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return lp;
+        }
+
+        @Override
+        public void write(JsonWriter out, ScriptLaunchPoint lp) throws IOException {
+            if (lp == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            writeString(out, "launchPointName", lp.launchPointName);
+            writeString(out, "description", lp.description);
+            writeString(out, "launchPointType", lp.launchPointType);
+            out.name("active").value(lp.active);
+            writeString(out, "objectName", lp.objectName);
+            writeString(out, "attributeName", lp.attributeName);
+            writeString(out, "condition", lp.condition);
+            out.name("initializeValue").value(lp.initializeValue);
+            out.name("validateApplication").value(lp.validateApplication);
+            out.name("allowObjectCreation").value(lp.allowObjectCreation);
+            out.name("allowObjectDeletion").value(lp.allowObjectDeletion);
+            out.name("save").value(lp.save);
+            out.name("add").value(lp.add);
+            out.name("update").value(lp.update);
+            out.name("delete").value(lp.delete);
+            out.name("beforeSave").value(lp.beforeSave);
+            out.name("afterSave").value(lp.afterSave);
+            out.name("afterCommit").value(lp.afterCommit);
+            out.name("initializeAccessRestriction").value(lp.initializeAccessRestriction);
+            out.name("validate").value(lp.validate);
+            out.name("retrieveList").value(lp.retrieveList);
+            out.name("runAction").value(lp.runAction);
+            writeString(out, "actionName", lp.actionName);
+            writeList(out, "launchPointVars", lp.launchPointVars, LAUNCH_POINT_VAR_ADAPTER);
+            out.endObject();
+        }
+    }
+
+    private static final class LaunchPointVarAdapter extends TypeAdapter<LaunchPointVar> {
+        @Override
+        public LaunchPointVar read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            LaunchPointVar var = new LaunchPointVar();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "varName":
+                        var.varName = nextString(in);
+                        break;
+                    case "varBindingValue":
+                        var.varBindingValue = nextString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return var;
+        }
+
+        @Override
+        public void write(JsonWriter out, LaunchPointVar var) throws IOException {
+            if (var == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginObject();
+            writeString(out, "varName", var.varName);
+            writeString(out, "varBindingValue", var.varBindingValue);
+            out.endObject();
+        }
+    }
+
+    /**
+     * A reader over the remaining characters of a buffer, so the JSON is never copied into a string.
+     */
+    private static final class CharBufferReader extends Reader {
+        private final CharBuffer buffer;
+
+        private CharBufferReader(CharBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read(char[] chars, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(chars, offset, count);
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
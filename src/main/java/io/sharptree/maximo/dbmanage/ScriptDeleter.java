@@ -0,0 +1,320 @@
+package io.sharptree.maximo.dbmanage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Deletes the rows of automation scripts with parameterized statements that are prepared once and reused for every script.
+ * <p>
+ * The predicates compare the stored script name with a bind variable rather than wrapping the column in upper(), so the deletes can use the
+ * indexes on the script name columns. The names are upper cased before they are bound, as the scripts are written with upper case names.
+ * The scripts added with {@link #add(String)} are grouped into one JDBC batch per table, the batches are executed in table order so the rows
+ * that are selected through the SCRIPTLAUNCHPOINT table are deleted before the launch points.
+ * <p>
+ * Large sets of scripts are removed with {@link #deleteAll(Collection)}, which runs one set based delete per table for each chunk of names.
+ *
+ * @author Jason VenHuizen
+ */
+public class ScriptDeleter implements AutoCloseable {
+
+    /**
+     * The system property that sets the number of script names bound in each IN list of {@link #deleteAll(Collection)}.
+     */
+    public static final String CHUNK_SIZE_PROPERTY = "autoscript.dbc.remove.chunksize";
+
+    /**
+     * The default number of script names per IN list, half of the Oracle limit of 1000 expressions in a list.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    /**
+     * The marker in the SQL templates that {@link #inList(String, int)} replaces with the bind variables of the script names. Only the
+     * marker is replaced, so a template can have other bind variables.
+     */
+    static final String NAMES = ":names";
+
+    private static final String SCRIPT_ACTIONS = "select launchpointname from scriptlaunchpoint where launchpointtype = 'ACTION' and autoscript in (" + NAMES + ")";
+
+    /**
+     * The deletes that remove an automation script before it is recreated.
+     */
+    static final String[] REDEPLOY_DELETES = {
+            "delete from action where action in (select launchpointname from scriptlaunchpoint where autoscript in (" + NAMES + ")) and value = '" + ScriptSnapshot.SCRIPT_ACTION_CLASS + "'",
+            "delete from autoscript where autoscript in (" + NAMES + ")",
+            "delete from scriptlaunchpoint where autoscript in (" + NAMES + ")",
+            "delete from launchpointvars where autoscript in (" + NAMES + ")",
+            "delete from autoscriptvars where autoscript in (" + NAMES + ")",
+            "delete from autoscriptstate where autoscript in (" + NAMES + ")"
+    };
+
+    /**
+     * The deletes that remove an automation script and the references to it from the target system.
+     */
+    static final String[] REMOVE_DELETES = {
+            "delete from actiongroup where member in (select action from action where action in (" + SCRIPT_ACTIONS + ") and value = '" + ScriptSnapshot.SCRIPT_ACTION_CLASS + "')",
+            "delete from action where action in (" + SCRIPT_ACTIONS + ") and value = '" + ScriptSnapshot.SCRIPT_ACTION_CLASS + "'",
+            "delete from autoscript where autoscript in (" + NAMES + ")",
+            "delete from scriptlaunchpoint where autoscript in (" + NAMES + ")",
+            "delete from launchpointvars where autoscript in (" + NAMES + ")",
+            "delete from autoscriptvars where autoscript in (" + NAMES + ")",
+            "delete from autoscriptstate where autoscript in (" + NAMES + ")",
+            "delete from inspformscript where autoscript in (" + NAMES + ")",
+            "delete from oslcquery where scriptname in (" + NAMES + ")",
+            // no direct link from autoscript to ososlcaction, for now we will keep sigoption
+            "delete from jsonmapping where scriptname in (" + NAMES + ")"
+    };
+
+    private final Connection connection;
+    private final String[] deletes;
+    private final PreparedStatement[] statements;
+    private final DeploymentMetrics metrics;
+
+    private int pending;
+
+    /**
+     * Creates a new deleter that runs the provided deletes, each delete must only have script name bind variables.
+     *
+     * @param connection the connection to the target database.
+     * @param deletes    the delete templates in the order they are executed, the script names are bound in place of each {@link #NAMES} marker.
+     * @param metrics    the metrics that the deletes are recorded in.
+     */
+    ScriptDeleter(Connection connection, String[] deletes, DeploymentMetrics metrics) {
+        this.connection = connection;
+        this.deletes = deletes.clone();
+        this.statements = new PreparedStatement[deletes.length];
+        this.metrics = metrics;
+    }
+
+    /**
+     * Creates a deleter that removes the rows of automation scripts that are about to be recreated.
+     *
+     * @param connection the connection to the target database.
+     * @return the new deleter.
+     */
+    public static ScriptDeleter forRedeploy(Connection connection) {
+        return forRedeploy(connection, new DeploymentMetrics());
+    }
+
+    /**
+     * Creates a deleter that removes the rows of automation scripts that are about to be recreated, recording the deletes in the metrics.
+     *
+     * @param connection the connection to the target database.
+     * @param metrics    the metrics that the deletes are recorded in.
+     * @return the new deleter.
+     */
+    public static ScriptDeleter forRedeploy(Connection connection, DeploymentMetrics metrics) {
+        return new ScriptDeleter(connection, REDEPLOY_DELETES, metrics);
+    }
+
+    /**
+     * Creates a deleter that removes automation scripts and the actions, action groups, inspection forms, OSLC queries and JSON mappings that reference them.
+     *
+     * @param connection the connection to the target database.
+     * @return the new deleter.
+     */
+    public static ScriptDeleter forRemove(Connection connection) {
+        return forRemove(connection, new DeploymentMetrics());
+    }
+
+    /**
+     * Creates a deleter that removes automation scripts and the rows that reference them, recording the deletes in the metrics.
+     *
+     * @param connection the connection to the target database.
+     * @param metrics    the metrics that the deletes are recorded in.
+     * @return the new deleter.
+     */
+    public static ScriptDeleter forRemove(Connection connection, DeploymentMetrics metrics) {
+        return new ScriptDeleter(connection, REMOVE_DELETES, metrics);
+    }
+
+    /**
+     * Adds the automation script to the pending batches.
+     *
+     * @param autoscript the automation script name.
+     * @throws SQLException thrown if an error occurs preparing the statements.
+     */
+    public void add(String autoscript) throws SQLException {
+        String name = autoscript.toUpperCase();
+
+        for (int i = 0; i < deletes.length; i++) {
+            if (statements[i] == null) {
+                statements[i] = connection.prepareStatement(inList(deletes[i], 1));
+            }
+
+            int parameters = parameterCount(deletes[i]);
+            for (int parameter = 1; parameter <= parameters; parameter++) {
+                statements[i].setString(parameter, name);
+            }
+            statements[i].addBatch();
+        }
+        pending++;
+    }
+
+    /**
+     * Executes the pending batches in table order.
+     *
+     * @return the number of rows deleted, rows deleted by a driver that does not report the counts are not included.
+     * @throws SQLException thrown if an error occurs executing a batch.
+     */
+    public int execute() throws SQLException {
+        if (pending == 0) {
+            return 0;
+        }
+        pending = 0;
+
+        int deleted = 0;
+        for (int i = 0; i < statements.length; i++) {
+            deleted += executeBatch(statements[i], deletes[i]);
+        }
+        return deleted;
+    }
+
+    /**
+     * Deletes the automation script immediately.
+     *
+     * @param autoscript the automation script name.
+     * @return the number of rows deleted.
+     * @throws SQLException thrown if an error occurs executing the deletes.
+     */
+    public int delete(String autoscript) throws SQLException {
+        add(autoscript);
+        return execute();
+    }
+
+    /**
+     * Deletes the automation scripts with one delete per table for each chunk of names, the script names are bound as an IN list. The last chunk
+     * is padded by repeating its last name, so every chunk uses the same prepared statement.
+     *
+     * @param autoscripts the automation script names.
+     * @return the number of rows deleted, rows deleted by a driver that does not report the counts are not included.
+     * @throws Exception thrown if the chunk size property is not valid or an error occurs executing the deletes.
+     */
+    public int deleteAll(Collection<String> autoscripts) throws Exception {
+        if (autoscripts.isEmpty()) {
+            return 0;
+        }
+
+        List<String> names = new ArrayList<>(autoscripts.size());
+        for (String autoscript : autoscripts) {
+            names.add(autoscript.toUpperCase());
+        }
+
+        int chunkSize = Math.min(resolveChunkSize(), names.size());
+
+        int deleted = 0;
+        for (String delete : deletes) {
+            try (PreparedStatement statement = connection.prepareStatement(inList(delete, chunkSize))) {
+                int parameters = parameterCount(delete);
+                for (int from = 0; from < names.size(); from += chunkSize) {
+                    int index = 1;
+                    for (int parameter = 0; parameter < parameters; parameter++) {
+                        for (int i = 0; i < chunkSize; i++) {
+                            statement.setString(index++, names.get(Math.min(from + i, names.size() - 1)));
+                        }
+                    }
+                    statement.addBatch();
+                }
+
+                deleted += executeBatch(statement, delete);
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Returns the chunk size from the {@link #CHUNK_SIZE_PROPERTY} system property or the {@link #DEFAULT_CHUNK_SIZE} if the property is not set.
+     *
+     * @return the chunk size.
+     * @throws Exception thrown if the property value is not an integer between 1 and 1000.
+     */
+    static int resolveChunkSize() throws Exception {
+        String value = System.getProperty(CHUNK_SIZE_PROPERTY);
+        if (value == null || value.trim().isEmpty()) {
+            return DEFAULT_CHUNK_SIZE;
+        }
+
+        try {
+            int chunkSize = Integer.parseInt(value.trim());
+            if (chunkSize > 0 && chunkSize <= 1000) {
+                return chunkSize;
+            }
+        } catch (NumberFormatException ignored) {
+            // fall through to the exception below.
+        }
+        throw new Exception("The remove chunk size must be an integer between 1 and 1000, " + value + " was provided.");
+    }
+
+    /**
+     * Replaces each {@link #NAMES} marker of the SQL template with the bind variables of a list of script names.
+     *
+     * @param template the SQL template, the script names are compared with IN ({@link #NAMES}).
+     * @param size     the number of bind variables in each list.
+     * @return the SQL with the bind variables.
+     */
+    static String inList(String template, int size) {
+        StringBuilder list = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            list.append(i == 0 ? "?" : ", ?");
+        }
+        return template.replace(NAMES, list.toString());
+    }
+
+    /**
+     * Closes the prepared statements, pending deletes that have not been executed are discarded.
+     *
+     * @throws SQLException thrown if an error occurs closing the statements.
+     */
+    @Override
+    public void close() throws SQLException {
+        SQLException error = null;
+        for (int i = 0; i < statements.length; i++) {
+            if (statements[i] != null) {
+                try {
+                    statements[i].close();
+                } catch (SQLException e) {
+                    if (error == null) {
+                        error = e;
+                    } else {
+                        error.addSuppressed(e);
+                    }
+                }
+                statements[i] = null;
+            }
+        }
+        pending = 0;
+
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Executes the batch, recording it in the metrics, and returns the rows deleted that were reported by the driver.
+     */
+    private int executeBatch(PreparedStatement statement, String delete) throws SQLException {
+        long start = System.nanoTime();
+        int[] counts = statement.executeBatch();
+        metrics.executed(DeploymentMetrics.Phase.DELETE, delete, System.nanoTime() - start, counts);
+
+        int deleted = 0;
+        for (int count : counts) {
+            if (count != Statement.SUCCESS_NO_INFO) {
+                deleted += count;
+            }
+        }
+        return deleted;
+    }
+
+    private static int parameterCount(String template) {
+        int count = 0;
+        for (int i = template.indexOf(NAMES); i >= 0; i = template.indexOf(NAMES, i + NAMES.length())) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,355 @@
+package io.sharptree.maximo.dbmanage;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extracts deployed automation scripts to files that can be deployed again with `add_update_autoscript` or `add_update_autoscript_dir`.
+ * <p>
+ * The scripts are read in chunks of names. For each chunk the AUTOSCRIPTVARS, SCRIPTLAUNCHPOINT, LAUNCHPOINTVARS and ACTION rows are read with
+ * one query per table and bound to an {@link AutoscriptConfig}, then the AUTOSCRIPT rows are read with a fetch size of the chunk size and
+ * each source is streamed from its CLOB with {@link ResultSet#getCharacterStream(int)}, so only one chunk of scripts is held in memory. The
+ * files are written by a pool of worker threads while the next sources are read.
+ * <p>
+ * If the source declares a scriptConfig that matches the deployed rows, the source is written unchanged, so that deploying the file again
+ * leaves the script unchanged. Otherwise the scriptConfig JSON is regenerated from the rows with the {@link ScriptConfigReader} adapters and
+ * replaces the declared JSON, or is declared at the end of a source that does not have one.
+ *
+ * @author Jason VenHuizen
+ */
+public final class ScriptExtractor {
+
+    private static final String NAMES_SQL = "select autoscript from autoscript order by autoscript";
+    private static final String PATTERN_SQL = "select autoscript from autoscript where autoscript like ? escape '\\' order by autoscript";
+
+    private static final String AUTOSCRIPT_SQL = "select autoscript, description, version, loglevel, active, scriptlanguage, interface, source from autoscript where autoscript in (" + ScriptDeleter.NAMES + ")";
+    private static final String AUTOSCRIPTVARS_SQL = "select autoscript, varname, varbindingvalue, varbindingtype, vartype, description, allowoverride, literaldatatype, accessflag from autoscriptvars where autoscript in (" + ScriptDeleter.NAMES + ") order by autoscript, varname";
+    private static final String SCRIPTLAUNCHPOINT_SQL = "select autoscript, launchpointname, description, launchpointtype, objectname, attributename, condition, active, objectevent from scriptlaunchpoint where autoscript in (" + ScriptDeleter.NAMES + ") order by autoscript, launchpointname";
+    private static final String LAUNCHPOINTVARS_SQL = "select autoscript, launchpointname, varname, varbindingvalue from launchpointvars where autoscript in (" + ScriptDeleter.NAMES + ") order by autoscript, launchpointname, varname";
+    private static final String ACTION_SQL = "select l.autoscript, a.action, a.parameter from action a, scriptlaunchpoint l where l.launchpointname = a.action and l.autoscript in (" + ScriptDeleter.NAMES + ") and upper(l.launchpointtype) = 'ACTION' and a.value = '" + ScriptSnapshot.SCRIPT_ACTION_CLASS + "'";
+
+    private final Connection connection;
+    private final Path directory;
+    private final DeploymentMetrics metrics;
+    private final int threads;
+    private final List<String> languageChanges = new ArrayList<>();
+
+    /**
+     * Creates a new extractor.
+     *
+     * @param connection the connection to the source database.
+     * @param directory  the directory the script files are written to, which is created if it does not exist.
+     * @param metrics    the metrics that the round trips are added to.
+     * @param threads    the number of threads that write the files.
+     */
+    public ScriptExtractor(Connection connection, Path directory, DeploymentMetrics metrics, int threads) {
+        this.connection = connection;
+        this.directory = directory;
+        this.metrics = metrics;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Extracts the scripts that are listed or match the pattern, or all of the scripts if neither is provided.
+     *
+     * @param names   the script names, may be empty.
+     * @param pattern the SQL like pattern, a backslash escapes _ and %, may be null.
+     * @return the paths of the files that were written, in the order of the script names.
+     * @throws Exception thrown if an error occurs reading the scripts or writing the files.
+     */
+    public List<Path> extract(Collection<String> names, String pattern) throws Exception {
+        Set<String> autoscripts = new LinkedHashSet<>();
+        for (String name : names) {
+            autoscripts.add(name.toUpperCase());
+        }
+        if (pattern != null && !pattern.trim().isEmpty()) {
+            query(PATTERN_SQL, pattern.trim().toUpperCase(), autoscripts);
+        } else if (autoscripts.isEmpty()) {
+            query(NAMES_SQL, null, autoscripts);
+        }
+
+        Files.createDirectories(directory);
+
+        languageChanges.clear();
+        List<String> ordered = new ArrayList<>(autoscripts);
+        List<Future<Path>> files = new ArrayList<>(ordered.size());
+        int chunkSize = Math.max(1, Math.min(ScriptDeleter.resolveChunkSize(), ordered.size()));
+
+        // the queue is bounded so the reader waits for the writers, rather than holding every source in memory.
+        ThreadPoolExecutor writers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(threads * 2),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        try {
+            for (int from = 0; from < ordered.size(); from += chunkSize) {
+                List<String> chunk = ordered.subList(from, Math.min(from + chunkSize, ordered.size()));
+                extractChunk(chunk, chunkSize, writers, files);
+            }
+
+            List<Path> written = new ArrayList<>(files.size());
+            for (Future<Path> file : files) {
+                try {
+                    written.add(file.get());
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+            return written;
+        } finally {
+            writers.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the scripts of the last extract with a language that is neither JavaScript nor Python. They are written to .js files, so they
+     * are deployed again as JavaScript rather than in their own language.
+     *
+     * @return the script names, each followed by its language in parentheses.
+     */
+    public List<String> getLanguageChanges() {
+        return Collections.unmodifiableList(languageChanges);
+    }
+
+    private void query(String sql, String pattern, Set<String> autoscripts) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setFetchSize(ScriptDeleter.DEFAULT_CHUNK_SIZE);
+            if (pattern != null) {
+                statement.setString(1, pattern);
+            }
+            metrics.roundTrips(1);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    autoscripts.add(resultSet.getString(1));
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the rows of a chunk of scripts and submits the writing of their files.
+     */
+    private void extractChunk(List<String> chunk, int chunkSize, ThreadPoolExecutor writers, List<Future<Path>> files) throws Exception {
+        Map<String, AutoscriptConfig> configs = new HashMap<>();
+        Map<String, ScriptLaunchPoint> launchPoints = new HashMap<>();
+        for (String autoscript : chunk) {
+            AutoscriptConfig config = new AutoscriptConfig();
+            config.autoscript = autoscript;
+            configs.put(autoscript, config);
+        }
+
+        try (PreparedStatement statement = prepare(AUTOSCRIPTVARS_SQL, chunk, chunkSize); ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                AutoscriptVar variable = new AutoscriptVar();
+                variable.varname = resultSet.getString(2);
+                variable.varBindingValue = resultSet.getString(3);
+                variable.varBindingType = resultSet.getString(4);
+                variable.varType = resultSet.getString(5);
+                variable.description = resultSet.getString(6);
+                variable.allowOverride = resultSet.getBoolean(7);
+                variable.literalDataType = resultSet.getString(8);
+                EventCodes.decodeAccessFlag(resultSet.getInt(9), variable);
+
+                AutoscriptConfig config = configs.get(resultSet.getString(1));
+                if (config.autoScriptVars == null) {
+                    config.autoScriptVars = new ArrayList<>();
+                }
+                config.autoScriptVars.add(variable);
+            }
+        }
+
+        try (PreparedStatement statement = prepare(SCRIPTLAUNCHPOINT_SQL, chunk, chunkSize); ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                ScriptLaunchPoint launchPoint = new ScriptLaunchPoint();
+                launchPoint.launchPointName = resultSet.getString(2);
+                launchPoint.description = resultSet.getString(3);
+                launchPoint.launchPointType = resultSet.getString(4);
+                launchPoint.objectName = resultSet.getString(5);
+                launchPoint.attributeName = resultSet.getString(6);
+                launchPoint.condition = resultSet.getString(7);
+                launchPoint.active = resultSet.getBoolean(8);
+                int objectEvent = resultSet.getInt(9);
+                if (launchPoint.launchPointType != null) {
+                    EventCodes.decodeObjectEvent(resultSet.wasNull() ? null : objectEvent, launchPoint);
+                }
+
+                AutoscriptConfig config = configs.get(resultSet.getString(1));
+                if (config.scriptLaunchPoints == null) {
+                    config.scriptLaunchPoints = new ArrayList<>();
+                }
+                config.scriptLaunchPoints.add(launchPoint);
+                launchPoints.put(launchPointKey(resultSet.getString(1), launchPoint.launchPointName), launchPoint);
+            }
+        }
+
+        try (PreparedStatement statement = prepare(LAUNCHPOINTVARS_SQL, chunk, chunkSize); ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                ScriptLaunchPoint launchPoint = launchPoints.get(launchPointKey(resultSet.getString(1), resultSet.getString(2)));
+                if (launchPoint == null) {
+                    continue;
+                }
+                LaunchPointVar variable = new LaunchPointVar();
+                variable.varName = resultSet.getString(3);
+                variable.varBindingValue = resultSet.getString(4);
+                if (launchPoint.launchPointVars == null) {
+                    launchPoint.launchPointVars = new ArrayList<>();
+                }
+                launchPoint.launchPointVars.add(variable);
+            }
+        }
+
+        try (PreparedStatement statement = prepare(ACTION_SQL, chunk, chunkSize); ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                ScriptLaunchPoint launchPoint = launchPoints.get(launchPointKey(resultSet.getString(1), resultSet.getString(2)));
+                String parameter = resultSet.getString(3);
+                // the parameter is the script, launch point and action names separated by commas.
+                String[] parts = parameter != null ? parameter.split(",", 3) : new String[0];
+                if (launchPoint != null && parts.length == 3) {
+                    launchPoint.actionName = parts[2];
+                }
+            }
+        }
+
+        try (PreparedStatement statement = prepare(AUTOSCRIPT_SQL, chunk, chunkSize); ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                AutoscriptConfig config = configs.get(resultSet.getString(1));
+                config.description = resultSet.getString(2);
+                config.version = resultSet.getString(3);
+                config.logLevel = resultSet.getString(4);
+                config.active = resultSet.getBoolean(5);
+                String language = resultSet.getString(6);
+                String family = ScriptSnapshot.languageFamily(ScriptSnapshot.normalize(language));
+                if (!family.equals("python") && !family.equals("javascript")) {
+                    languageChanges.add(config.autoscript + " (" + language + ")");
+                }
+                // the interface flag is implied by an integration script name, otherwise it was set by allowing script functions to be invoked.
+                config.allowInvokingScriptFunctions = resultSet.getBoolean(7) && !config.isInterface();
+
+                String source = readSource(resultSet, 8);
+                files.add(writers.submit(() -> write(config, language, source)));
+            }
+        }
+    }
+
+    /**
+     * Prepares a query of the chunk with an IN list of the chunk size, the last chunk is padded by repeating its last name.
+     */
+    private PreparedStatement prepare(String sql, List<String> chunk, int chunkSize) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(ScriptDeleter.inList(sql, chunkSize));
+        try {
+            statement.setFetchSize(ScriptDeleter.DEFAULT_CHUNK_SIZE);
+            for (int i = 0; i < chunkSize; i++) {
+                statement.setString(i + 1, chunk.get(Math.min(i, chunk.size() - 1)));
+            }
+            metrics.roundTrips(1);
+            return statement;
+        } catch (SQLException e) {
+            statement.close();
+            throw e;
+        }
+    }
+
+    private static String readSource(ResultSet resultSet, int column) throws SQLException, IOException {
+        StringBuilder source = new StringBuilder();
+        try (Reader reader = resultSet.getCharacterStream(column)) {
+            if (reader != null) {
+                char[] buffer = new char[8192];
+                int read;
+                while ((read = reader.read(buffer)) != -1) {
+                    source.append(buffer, 0, read);
+                }
+            }
+        }
+        return source.toString();
+    }
+
+    private static String launchPointKey(String autoscript, String launchPointName) {
+        return autoscript + '\u0000' + launchPointName;
+    }
+
+    /**
+     * Writes the file of a script.
+     */
+    private Path write(AutoscriptConfig config, String language, String source) throws IOException {
+        boolean python = isPython(language);
+        Path file = directory.resolve(config.autoscript.toLowerCase(Locale.ROOT) + (python ? ".py" : ".js"));
+        Files.write(file, render(config, language, source).getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static boolean isPython(String language) {
+        return language != null && (language.equalsIgnoreCase("python") || language.equalsIgnoreCase("jython"));
+    }
+
+    /**
+     * Returns the source with a scriptConfig that matches the deployed rows.
+     *
+     * @param config   the configuration bound from the deployed rows.
+     * @param language the script language.
+     * @param source   the deployed source.
+     * @return the source to write.
+     */
+    static String render(AutoscriptConfig config, String language, String source) {
+        boolean python = isPython(language);
+
+        CharBuffer json;
+        try {
+            json = ScriptConfigExtractor.extract(source, python);
+        } catch (Exception e) {
+            // the source does not declare a scriptConfig, it is added below.
+            json = null;
+        }
+
+        if (json != null) {
+            if (configMatches(json, config, language)) {
+                return source;
+            }
+            return source.substring(0, json.position()) + ScriptConfigReader.toJson(config) + source.substring(json.limit());
+        }
+
+        String declaration = python
+                ? "scriptConfig = \"\"\"" + ScriptConfigReader.toJson(config) + "\"\"\""
+                : "var scriptConfig = " + ScriptConfigReader.toJson(config) + ";";
+        return source + (source.isEmpty() || source.endsWith("\n") ? "\n" : "\n\n") + declaration + "\n";
+    }
+
+    /**
+     * Returns true if the declared scriptConfig compiles to the same rows as the configuration bound from the deployed rows.
+     */
+    private static boolean configMatches(CharBuffer json, AutoscriptConfig config, String language) {
+        try {
+            AutoscriptConfig declared = ScriptConfigReader.read(json);
+            if (declared == null) {
+                return false;
+            }
+            declared.validate();
+            return declared.autoscript.equalsIgnoreCase(config.autoscript)
+                    && ScriptSnapshot.fromConfig(declared, language, "").matches(ScriptSnapshot.fromConfig(config, language, ""));
+        } catch (Exception e) {
+            // a declared scriptConfig that cannot be read is replaced.
+            return false;
+        }
+    }
+}
@@ -128,6 +128,15 @@ public class ScriptLaunchPoint {
      */
     public List<LaunchPointVar> launchPointVars;
 
+    /**
+     * Returns the SCRIPTLAUNCHPOINT objectevent code for the launch point event flags.
+     *
+     * @return the objectevent code or null if the launch point type does not define an event.
+     */
+    public Integer objectEvent() {
+        return EventCodes.objectEvent(this);
+    }
+
     /**
      * Validate the scriptLaunchPoint to perform basic sanity checks for the provided values.
      *
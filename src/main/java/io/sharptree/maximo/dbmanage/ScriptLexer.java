@@ -0,0 +1,322 @@
+package io.sharptree.maximo.dbmanage;
+
+/**
+ * A single pass lexer for JavaScript and Python automation script sources that splits the source into words, punctuation,
+ * whitespace, comments, strings and regular expression literals.
+ * <p>
+ * The lexer does not allocate per token, the current token is exposed as a type and a start and end offset into the source.
+ * It only recognizes as much of each language as is needed to tell code apart from strings and comments.
+ *
+ * @author Jason VenHuizen
+ */
+public final class ScriptLexer {
+
+    /**
+     * The type of token.
+     */
+    public enum TokenType {
+        /**
+         * An identifier, keyword or number.
+         */
+        WORD,
+        /**
+         * A single punctuation or operator character.
+         */
+        PUNCTUATION,
+        /**
+         * A run of spaces and tabs.
+         */
+        WHITESPACE,
+        /**
+         * A line break, either \n, \r or \r\n.
+         */
+        NEWLINE,
+        /**
+         * A // (JavaScript) or # (Python) comment, not including the line break.
+         */
+        LINE_COMMENT,
+        /**
+         * A JavaScript block comment.
+         */
+        BLOCK_COMMENT,
+        /**
+         * A string or template literal including its quotes and any Python prefix.
+         */
+        STRING,
+        /**
+         * A JavaScript regular expression literal including its flags.
+         */
+        REGEX
+    }
+
+    private static final String[] REGEX_KEYWORDS = {"return", "typeof", "instanceof", "in", "of", "new", "delete", "void", "throw", "case", "do", "else", "yield", "await"};
+
+    private final CharSequence source;
+    private final int end;
+    private final boolean python;
+
+    private TokenType type;
+    private int tokenStart;
+    private int position;
+    private boolean regexAllowed = true;
+
+    /**
+     * Creates a lexer for the whole source.
+     *
+     * @param source the script source.
+     * @param python true if the source is Python, otherwise it is lexed as JavaScript.
+     */
+    public ScriptLexer(CharSequence source, boolean python) {
+        this(source, 0, source.length(), python);
+    }
+
+    /**
+     * Creates a lexer for a range of the source.
+     *
+     * @param source the script source.
+     * @param start  the offset of the first character to lex.
+     * @param end    the offset after the last character to lex.
+     * @param python true if the source is Python, otherwise it is lexed as JavaScript.
+     */
+    public ScriptLexer(CharSequence source, int start, int end, boolean python) {
+        this.source = source;
+        this.position = start;
+        this.end = end;
+        this.python = python;
+    }
+
+    /**
+     * Advances to the next token.
+     *
+     * @return true if a token was read, false if the end of the source has been reached.
+     */
+    public boolean next() {
+        if (position >= end) {
+            type = null;
+            return false;
+        }
+
+        tokenStart = position;
+        char c = source.charAt(position);
+
+        if (c == '\n' || c == '\r') {
+            position++;
+            if (c == '\r' && position < end && source.charAt(position) == '\n') {
+                position++;
+            }
+            type = TokenType.NEWLINE;
+        } else if (isWhitespace(c)) {
+            do {
+                position++;
+            } while (position < end && isWhitespace(source.charAt(position)));
+            type = TokenType.WHITESPACE;
+        } else if (python ? c == '#' : (c == '/' && peek(1) == '/')) {
+            skipToLineEnd();
+            type = TokenType.LINE_COMMENT;
+        } else if (!python && c == '/' && peek(1) == '*') {
+            position += 2;
+            while (position < end && !(source.charAt(position) == '*' && peek(1) == '/')) {
+                position++;
+            }
+            position = Math.min(position + 2, end);
+            type = TokenType.BLOCK_COMMENT;
+        } else if (c == '"' || c == '\'' || (!python && c == '`')) {
+            readString(c);
+            regexAllowed = false;
+        } else if (!python && c == '/' && regexAllowed) {
+            readRegex();
+            regexAllowed = false;
+        } else if (Character.isJavaIdentifierPart(c)) {
+            do {
+                position++;
+            } while (position < end && Character.isJavaIdentifierPart(source.charAt(position)));
+
+            if (python && position < end && isQuote(source.charAt(position)) && isStringPrefix()) {
+                readString(source.charAt(position));
+            } else {
+                type = TokenType.WORD;
+                regexAllowed = isRegexKeyword();
+            }
+        } else {
+            position++;
+            type = TokenType.PUNCTUATION;
+            regexAllowed = c != ')' && c != ']' && c != '}';
+        }
+        return true;
+    }
+
+    /**
+     * Returns the type of the current token.
+     *
+     * @return the token type or null if the end of the source has been reached.
+     */
+    public TokenType type() {
+        return type;
+    }
+
+    /**
+     * Returns the offset of the first character of the current token.
+     *
+     * @return the token start offset.
+     */
+    public int start() {
+        return tokenStart;
+    }
+
+    /**
+     * Returns the offset after the last character of the current token.
+     *
+     * @return the token end offset.
+     */
+    public int end() {
+        return position;
+    }
+
+    /**
+     * Returns true if the current token is a code token, a word or punctuation.
+     *
+     * @return true if the current token is code.
+     */
+    public boolean isCode() {
+        return type == TokenType.WORD || type == TokenType.PUNCTUATION;
+    }
+
+    /**
+     * Returns true if the current token is the punctuation character.
+     *
+     * @param c the punctuation character.
+     * @return true if the current token is the punctuation character.
+     */
+    public boolean is(char c) {
+        return type == TokenType.PUNCTUATION && source.charAt(tokenStart) == c;
+    }
+
+    /**
+     * Returns true if the current token is the word.
+     *
+     * @param word the word to compare.
+     * @return true if the current token is the word.
+     */
+    public boolean is(String word) {
+        return type == TokenType.WORD && regionMatches(tokenStart, position, word);
+    }
+
+    /**
+     * Returns the character at an offset from the end of the current token without consuming it.
+     *
+     * @param offset the offset from the current position.
+     * @return the character or 0 if the offset is past the end of the source.
+     */
+    public char peek(int offset) {
+        int index = position + offset;
+        return index < end ? source.charAt(index) : 0;
+    }
+
+    private void skipToLineEnd() {
+        while (position < end && source.charAt(position) != '\n' && source.charAt(position) != '\r') {
+            position++;
+        }
+    }
+
+    private void readString(char quote) {
+        type = TokenType.STRING;
+
+        boolean triple = python && peek(1) == quote && peek(2) == quote;
+        position += triple ? 3 : 1;
+
+        while (position < end) {
+            char c = source.charAt(position);
+            if (c == '\\') {
+                position += 2;
+            } else if (c == quote && (!triple || (peek(1) == quote && peek(2) == quote))) {
+                position += triple ? 3 : 1;
+                return;
+            } else if ((c == '\n' || c == '\r') && !triple && quote != '`') {
+                // unterminated string, the line break is not part of the string.
+                return;
+            } else {
+                position++;
+            }
+        }
+        position = end;
+    }
+
+    private void readRegex() {
+        type = TokenType.REGEX;
+        position++;
+
+        boolean inClass = false;
+        while (position < end) {
+            char c = source.charAt(position);
+            if (c == '\\') {
+                position += 2;
+                continue;
+            } else if (c == '\n' || c == '\r') {
+                return;
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == ']') {
+                inClass = false;
+            } else if (c == '/' && !inClass) {
+                position++;
+                while (position < end && Character.isJavaIdentifierPart(source.charAt(position))) {
+                    position++;
+                }
+                return;
+            }
+            position++;
+        }
+        position = end;
+    }
+
+    private boolean isStringPrefix() {
+        int length = position - tokenStart;
+        if (length > 2) {
+            return false;
+        }
+        for (int i = tokenStart; i < position; i++) {
+            switch (Character.toLowerCase(source.charAt(i))) {
+                case 'r':
+                case 'u':
+                case 'b':
+                case 'f':
+                    break;
+                default:
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isRegexKeyword() {
+        if (python) {
+            return false;
+        }
+        for (String keyword : REGEX_KEYWORDS) {
+            if (regionMatches(tokenStart, position, keyword)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean regionMatches(int from, int to, String word) {
+        if (to - from != word.length()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if (source.charAt(from + i) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isQuote(char c) {
+        return c == '"' || c == '\'';
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\f' || c == '\u000B' || c == '\u00A0' || c == '\uFEFF';
+    }
+}
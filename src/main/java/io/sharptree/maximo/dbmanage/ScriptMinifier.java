@@ -0,0 +1,282 @@
+package io.sharptree.maximo.dbmanage;
+
+import java.nio.CharBuffer;
+
+/**
+ * Minifies an automation script source in place with a single pass of the {@link ScriptLexer}, so that Maximo has less source to store,
+ * compile and cache.
+ * <p>
+ * JavaScript comments are removed, indentation and blank lines are dropped and each run of spaces is reduced to a single space where one
+ * is needed to keep two tokens apart. Line breaks are kept, one per line of code, so that automatic semicolon insertion is not changed.
+ * Python comments are removed along with the lines that only held a comment and the trailing whitespace of each line, the indentation is
+ * kept. The encoding declaration in the first two lines of a Python script is kept. Strings, template literals and regular expressions
+ * are never changed, and the scriptConfig is copied as it is.
+ * <p>
+ * If the line numbers are preserved, every line break is kept, including those of removed block comments, so the errors that Maximo
+ * reports for the deployed script point at the same lines as the file.
+ *
+ * @author Jason VenHuizen
+ */
+public final class ScriptMinifier {
+
+    /**
+     * The minification of a script.
+     */
+    public enum Mode {
+        /**
+         * The source is stored as it is.
+         */
+        NONE,
+        /**
+         * The source is minified.
+         */
+        COMPACT,
+        /**
+         * The source is minified, keeping every line break so the line numbers are unchanged.
+         */
+        PRESERVE_LINES;
+
+        /**
+         * Returns the mode for the minify and preservelines attribute values.
+         *
+         * @param minify        the minify attribute value, the source is only minified if it is "true".
+         * @param preserveLines the preservelines attribute value, the line numbers are only preserved if it is "true".
+         * @return the minification mode.
+         */
+        public static Mode resolve(String minify, String preserveLines) {
+            if (!"true".equalsIgnoreCase(minify)) {
+                return NONE;
+            }
+            return "true".equalsIgnoreCase(preserveLines) ? PRESERVE_LINES : COMPACT;
+        }
+    }
+
+    private final char[] chars;
+    private final int length;
+    private final boolean python;
+    private final boolean preserveLines;
+
+    private int write;
+    private int configStart = -1;
+
+    /**
+     * Creates a minifier that rewrites the characters of a source.
+     *
+     * @param chars         the source characters, which are overwritten by the minified source.
+     * @param length        the number of source characters.
+     * @param python        true if the source is Python, otherwise it is minified as JavaScript.
+     * @param preserveLines true to keep every line break so the line numbers are unchanged.
+     */
+    public ScriptMinifier(char[] chars, int length, boolean python, boolean preserveLines) {
+        this.chars = chars;
+        this.length = length;
+        this.python = python;
+        this.preserveLines = preserveLines;
+    }
+
+    /**
+     * Minifies the source. The minified source is never longer than the source, so it is written over the source as the lexer reads it.
+     *
+     * @param configStart the offset of the scriptConfig JSON in the source.
+     * @param configEnd   the offset after the scriptConfig JSON in the source.
+     * @return the length of the minified source.
+     */
+    public int minify(int configStart, int configEnd) {
+        ScriptLexer lexer = new ScriptLexer(CharBuffer.wrap(chars, 0, length), python);
+        if (python) {
+            python(lexer, configStart, configEnd);
+        } else {
+            javascript(lexer, configStart, configEnd);
+        }
+
+        // a trailing line ending is removed, as it is when the source is read.
+        while (write > 0 && chars[write - 1] == '\n') {
+            write--;
+        }
+        return write;
+    }
+
+    /**
+     * Returns the offset of the scriptConfig JSON in the minified source.
+     *
+     * @return the scriptConfig offset or -1 if the source has not been minified.
+     */
+    public int configStart() {
+        return configStart;
+    }
+
+    private void javascript(ScriptLexer lexer, int configStart, int configEnd) {
+        int newlines = 0;
+        boolean space = false;
+        boolean number = false;
+        boolean regex = false;
+        int region = -1;
+
+        while (lexer.next()) {
+            int start = lexer.start();
+            int end = lexer.end();
+
+            // the tokens of the scriptConfig are copied together once the lexer has read past them.
+            if (region >= 0) {
+                if (end >= configEnd) {
+                    copyConfig(region, end, configStart);
+                    region = -1;
+                }
+                continue;
+            }
+
+            switch (lexer.type()) {
+                case WHITESPACE:
+                case LINE_COMMENT:
+                    space = true;
+                    continue;
+                case BLOCK_COMMENT:
+                    // a block comment that spans lines is a line break for automatic semicolon insertion.
+                    int lines = countNewlines(start, end);
+                    if (lines > 0) {
+                        newlines += preserveLines ? lines : 1;
+                    } else {
+                        space = true;
+                    }
+                    continue;
+                case NEWLINE:
+                    newlines++;
+                    continue;
+                default:
+                    break;
+            }
+
+            char first = chars[start];
+            if (newlines > 0 && (write > 0 || preserveLines)) {
+                for (int i = preserveLines ? newlines : 1; i > 0; i--) {
+                    chars[write++] = '\n';
+                }
+            } else if (space && write > 0 && separated(chars[write - 1], first, number, regex)) {
+                chars[write++] = ' ';
+            }
+            newlines = 0;
+            space = false;
+
+            if (end > configStart && start < configEnd) {
+                if (end >= configEnd) {
+                    copyConfig(start, end, configStart);
+                } else {
+                    region = start;
+                }
+                number = false;
+                regex = false;
+            } else {
+                number = lexer.type() == ScriptLexer.TokenType.WORD && Character.isDigit(first);
+                regex = lexer.type() == ScriptLexer.TokenType.REGEX;
+                copy(start, end);
+            }
+        }
+    }
+
+    private void python(ScriptLexer lexer, int configStart, int configEnd) {
+        int line = 1;
+        int whitespace = -1;
+        int whitespaceEnd = -1;
+        boolean code = false;
+        boolean comment = false;
+
+        while (lexer.next()) {
+            int start = lexer.start();
+            int end = lexer.end();
+
+            switch (lexer.type()) {
+                case WHITESPACE:
+                    whitespace = start;
+                    whitespaceEnd = end;
+                    continue;
+                case LINE_COMMENT:
+                    if (line <= 2 && isEncodingDeclaration(start, end)) {
+                        break;
+                    }
+                    whitespace = -1;
+                    comment = true;
+                    continue;
+                case NEWLINE:
+                    // the trailing whitespace is dropped, and so is a line that only held a comment.
+                    whitespace = -1;
+                    if (code || !comment || preserveLines) {
+                        chars[write++] = '\n';
+                    }
+                    line++;
+                    code = false;
+                    comment = false;
+                    continue;
+                default:
+                    break;
+            }
+
+            if (whitespace >= 0) {
+                copy(whitespace, whitespaceEnd);
+                whitespace = -1;
+            }
+            if (end > configStart && start < configEnd) {
+                copyConfig(start, end, configStart);
+            } else {
+                copy(start, end);
+            }
+            line += countNewlines(write - (end - start), write);
+            code = true;
+        }
+    }
+
+    /**
+     * Returns true if a space is needed between the last character written and the first character of the next token, so that they
+     * are not read as one token.
+     */
+    private static boolean separated(char last, char next, boolean number, boolean regex) {
+        if (Character.isJavaIdentifierPart(last) && (Character.isJavaIdentifierPart(next) || next == '\\')) {
+            // a backslash starts a unicode escape in an identifier.
+            return true;
+        } else if (regex && (Character.isJavaIdentifierPart(next) || next == '\\')) {
+            // a word after a regular expression, as in /a/ instanceof RegExp, would be read as its flags.
+            return true;
+        } else if ((last == '+' || last == '-') && next == last) {
+            return true;
+        } else if (last == '/' && (next == '/' || next == '*')) {
+            return true;
+        }
+        // a member access on a number literal, as in 1 .toString().
+        return number && next == '.';
+    }
+
+    /**
+     * Returns true if the comment is a Python encoding declaration, such as # -*- coding: utf-8 -*-.
+     */
+    private boolean isEncodingDeclaration(int start, int end) {
+        for (int i = start; i + 7 <= end; i++) {
+            if (chars[i] == 'c' && chars[i + 1] == 'o' && chars[i + 2] == 'd' && chars[i + 3] == 'i' && chars[i + 4] == 'n'
+                    && chars[i + 5] == 'g' && (chars[i + 6] == ':' || chars[i + 6] == '=')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int countNewlines(int start, int end) {
+        int lines = 0;
+        for (int i = start; i < end; i++) {
+            if (chars[i] == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    private void copy(int start, int end) {
+        System.arraycopy(chars, start, chars, write, end - start);
+        write += end - start;
+    }
+
+    /**
+     * Copies the tokens that hold the scriptConfig and records the offset of the scriptConfig in the minified source.
+     */
+    private void copyConfig(int start, int end, int configOffset) {
+        this.configStart = write + (configOffset - start);
+        copy(start, end);
+    }
+}
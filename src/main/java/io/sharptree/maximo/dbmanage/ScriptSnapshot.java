@@ -0,0 +1,445 @@
+package io.sharptree.maximo.dbmanage;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * A comparable view of the AUTOSCRIPT, AUTOSCRIPTVARS, SCRIPTLAUNCHPOINT, LAUNCHPOINTVARS and ACTION rows of an automation script.
+ * <p>
+ * A snapshot is either built from a parsed {@link AutoscriptConfig} and its source, representing the rows that would be written, or
+ * loaded from the target database, representing the rows that are deployed. Column values are normalized so the two can be compared
+ * by their digest, the source is included as a SHA-256 digest so the CLOB is never held in memory when loaded from the database.
+ *
+ * @author Jason VenHuizen
+ */
+public class ScriptSnapshot {
+
+    static final String SCRIPT_ACTION_CLASS = "com.ibm.tivoli.maximo.script.ScriptAction";
+
+    private static final String AUTOSCRIPT_SQL = "select description, version, loglevel, status, active, scriptlanguage, interface, source from autoscript where autoscript = ?";
+    private static final String AUTOSCRIPTVARS_SQL = "select varname, varbindingvalue, varbindingtype, vartype, description, allowoverride, literaldatatype, accessflag from autoscriptvars where autoscript = ?";
+    private static final String SCRIPTLAUNCHPOINT_SQL = "select launchpointname, description, launchpointtype, objectname, attributename, condition, active, objectevent from scriptlaunchpoint where autoscript = ?";
+    private static final String LAUNCHPOINTVARS_SQL = "select launchpointname, varname, varbindingvalue from launchpointvars where autoscript = ?";
+    private static final String ACTION_SQL = "select action, objectname, type, value, parameter from action where action in (select launchpointname from scriptlaunchpoint where autoscript = ? and upper(launchpointtype) = 'ACTION') and value = '" + SCRIPT_ACTION_CLASS + "'";
+
+    /**
+     * The number of queries that {@link #load(Connection, String)} makes for a deployed script, it makes one if the script does not exist.
+     */
+    static final int QUERIES = 5;
+
+    /**
+     * The index of the version in the AUTOSCRIPT values.
+     */
+    private static final int VERSION_INDEX = 1;
+
+    /**
+     * The index of the script language in the AUTOSCRIPT values.
+     */
+    private static final int LANGUAGE_INDEX = 5;
+
+    private final String autoscript;
+    private final String[] script;
+    private final SortedMap<String, String[]> variables = new TreeMap<>();
+    private final SortedMap<String, String[]> launchPoints = new TreeMap<>();
+    private final SortedMap<String, String[]> launchPointVariables = new TreeMap<>();
+    private final SortedMap<String, String[]> actions = new TreeMap<>();
+    private byte[] sourceDigest;
+
+    private ScriptSnapshot(String autoscript, String[] script) {
+        this.autoscript = autoscript;
+        this.script = script;
+        script[LANGUAGE_INDEX] = languageFamily(script[LANGUAGE_INDEX]);
+    }
+
+    /**
+     * Creates a snapshot of the rows that would be written for the script configuration.
+     *
+     * @param config   the validated script configuration.
+     * @param language the script language.
+     * @param source   the script source.
+     * @return the snapshot of the script rows.
+     */
+    public static ScriptSnapshot fromConfig(AutoscriptConfig config, String language, CharSequence source) {
+        String autoscript = config.autoscript.toUpperCase();
+
+        ScriptSnapshot snapshot = new ScriptSnapshot(autoscript, normalize(
+                config.description, config.version, config.logLevel, "Active", config.active, language, config.isInterface()));
+
+        if (config.autoScriptVars != null) {
+            for (AutoscriptVar autoscriptVar : config.autoScriptVars) {
+                snapshot.variables.put(normalize(autoscriptVar.varname), normalize(
+                        autoscriptVar.varBindingValue,
+                        autoscriptVar.varBindingType,
+                        autoscriptVar.varType,
+                        autoscriptVar.description,
+                        autoscriptVar.allowOverride,
+                        autoscriptVar.literalDataType,
+                        autoscriptVar.accessFlag()));
+            }
+        }
+
+        if (config.scriptLaunchPoints != null) {
+            for (ScriptLaunchPoint scriptLaunchPoint : config.scriptLaunchPoints) {
+                snapshot.launchPoints.put(normalize(scriptLaunchPoint.launchPointName), normalize(
+                        scriptLaunchPoint.description,
+                        scriptLaunchPoint.launchPointType,
+                        scriptLaunchPoint.objectName,
+                        scriptLaunchPoint.attributeName,
+                        scriptLaunchPoint.condition,
+                        scriptLaunchPoint.active,
+                        scriptLaunchPoint.objectEvent()));
+
+                if (scriptLaunchPoint.launchPointType.equalsIgnoreCase("ACTION")) {
+                    snapshot.actions.put(normalize(scriptLaunchPoint.launchPointName), normalize(
+                            scriptLaunchPoint.objectName,
+                            "CUSTOM",
+                            SCRIPT_ACTION_CLASS,
+                            autoscript + "," + scriptLaunchPoint.launchPointName + "," + scriptLaunchPoint.actionName));
+                }
+
+                if (scriptLaunchPoint.launchPointVars != null) {
+                    for (LaunchPointVar launchPointVar : scriptLaunchPoint.launchPointVars) {
+                        snapshot.launchPointVariables.put(launchPointVariableKey(scriptLaunchPoint.launchPointName, launchPointVar.varName),
+                                new String[]{normalize(launchPointVar.varBindingValue)});
+                    }
+                }
+            }
+        }
+
+        snapshot.sourceDigest = sourceDigest(source);
+
+        return snapshot;
+    }
+
+    /**
+     * Loads a snapshot of the deployed rows for the automation script with one query per table.
+     *
+     * @param connection the connection to the target database.
+     * @param autoscript the automation script name.
+     * @return the snapshot of the deployed rows or null if the automation script does not exist.
+     * @throws SQLException thrown if an error occurs querying the script tables.
+     * @throws IOException  thrown if an error occurs reading the script source.
+     */
+    public static ScriptSnapshot load(Connection connection, String autoscript) throws SQLException, IOException {
+        String name = autoscript.toUpperCase();
+        ScriptSnapshot snapshot;
+
+        try (PreparedStatement statement = connection.prepareStatement(AUTOSCRIPT_SQL)) {
+            statement.setString(1, name);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (!resultSet.next()) {
+                    return null;
+                }
+
+                snapshot = new ScriptSnapshot(name, normalize(resultSet, 1, 7));
+
+                MessageDigest digest = newDigest();
+                try (Reader reader = resultSet.getCharacterStream(8)) {
+                    if (reader != null) {
+                        char[] buffer = new char[8192];
+                        int read;
+                        while ((read = reader.read(buffer)) != -1) {
+                            updateSource(digest, CharBuffer.wrap(buffer, 0, read));
+                        }
+                    }
+                }
+                snapshot.sourceDigest = digest.digest();
+            }
+        }
+
+        loadRows(connection, AUTOSCRIPTVARS_SQL, name, 1, snapshot.variables);
+        loadRows(connection, SCRIPTLAUNCHPOINT_SQL, name, 1, snapshot.launchPoints);
+        loadRows(connection, LAUNCHPOINTVARS_SQL, name, 2, snapshot.launchPointVariables);
+        loadRows(connection, ACTION_SQL, name, 1, snapshot.actions);
+
+        return snapshot;
+    }
+
+    /**
+     * Returns the upper case automation script name.
+     *
+     * @return the automation script name.
+     */
+    public String getAutoscript() {
+        return autoscript;
+    }
+
+    /**
+     * Returns true if the other snapshot has the same AUTOSCRIPT column values and source as this snapshot.
+     *
+     * @param other the snapshot to compare with.
+     * @return true if the AUTOSCRIPT rows match.
+     */
+    boolean scriptMatches(ScriptSnapshot other) {
+        return Arrays.equals(script, other.script) && sourceMatches(other);
+    }
+
+    /**
+     * Returns true if the other snapshot has the same rows as this snapshot, apart from the AUTOSCRIPT version and source.
+     *
+     * @param other the snapshot to compare with.
+     * @return true if only the version and source may differ.
+     */
+    boolean configMatches(ScriptSnapshot other) {
+        for (int i = 0; i < script.length; i++) {
+            if (i != VERSION_INDEX && !Objects.equals(script[i], other.script[i])) {
+                return false;
+            }
+        }
+        return rowsMatch(variables, other.variables)
+                && rowsMatch(launchPoints, other.launchPoints)
+                && rowsMatch(launchPointVariables, other.launchPointVariables)
+                && rowsMatch(actions, other.actions);
+    }
+
+    /**
+     * Returns true if the other snapshot has the same source as this snapshot.
+     *
+     * @param other the snapshot to compare with.
+     * @return true if the sources match.
+     */
+    boolean sourceMatches(ScriptSnapshot other) {
+        return MessageDigest.isEqual(sourceDigest, other.sourceDigest);
+    }
+
+    /**
+     * Returns the normalized AUTOSCRIPTVARS rows keyed by the variable name.
+     *
+     * @return the variable rows.
+     */
+    Map<String, String[]> getVariables() {
+        return Collections.unmodifiableMap(variables);
+    }
+
+    /**
+     * Returns the normalized SCRIPTLAUNCHPOINT rows keyed by the launch point name.
+     *
+     * @return the launch point rows.
+     */
+    Map<String, String[]> getLaunchPoints() {
+        return Collections.unmodifiableMap(launchPoints);
+    }
+
+    /**
+     * Returns the normalized LAUNCHPOINTVARS rows keyed by {@link #launchPointVariableKey(String, String)}.
+     *
+     * @return the launch point variable rows.
+     */
+    Map<String, String[]> getLaunchPointVariables() {
+        return Collections.unmodifiableMap(launchPointVariables);
+    }
+
+    /**
+     * Returns the normalized ACTION rows keyed by the action name.
+     *
+     * @return the action rows.
+     */
+    Map<String, String[]> getActions() {
+        return Collections.unmodifiableMap(actions);
+    }
+
+    /**
+     * Returns a hex encoded SHA-256 digest of the normalized rows and the source.
+     *
+     * @return the snapshot digest.
+     */
+    public String digest() {
+        MessageDigest digest = newDigest();
+        update(digest, autoscript);
+        update(digest, "AUTOSCRIPT", script);
+        update(digest, "AUTOSCRIPTVARS", variables);
+        update(digest, "SCRIPTLAUNCHPOINT", launchPoints);
+        update(digest, "LAUNCHPOINTVARS", launchPointVariables);
+        update(digest, "ACTION", actions);
+        digest.update(sourceDigest);
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Returns true if the other snapshot has the same rows and source as this snapshot.
+     *
+     * @param other the snapshot to compare with, may be null.
+     * @return true if the snapshots match.
+     */
+    public boolean matches(ScriptSnapshot other) {
+        return other != null && digest().equals(other.digest());
+    }
+
+    private static boolean rowsMatch(SortedMap<String, String[]> rows, SortedMap<String, String[]> other) {
+        if (rows.size() != other.size()) {
+            return false;
+        }
+        for (Map.Entry<String, String[]> row : rows.entrySet()) {
+            if (!Arrays.equals(row.getValue(), other.get(row.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void loadRows(Connection connection, String sql, String autoscript, int keyColumns, Map<String, String[]> rows) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, autoscript);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                int columns = resultSet.getMetaData().getColumnCount();
+                while (resultSet.next()) {
+                    String key = keyColumns == 1 ? normalize(resultSet.getObject(1)) : launchPointVariableKey(resultSet.getString(1), resultSet.getString(2));
+                    rows.put(key, normalize(resultSet, keyColumns + 1, columns));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the key of a launch point variable row, the launch point name and variable name separated by a null character.
+     *
+     * @param launchPointName the launch point name.
+     * @param varName         the variable name.
+     * @return the row key.
+     */
+    static String launchPointVariableKey(String launchPointName, String varName) {
+        return normalize(launchPointName) + '\u0000' + normalize(varName);
+    }
+
+    private static String[] normalize(ResultSet resultSet, int from, int to) throws SQLException {
+        String[] values = new String[to - from + 1];
+        for (int i = from; i <= to; i++) {
+            values[i - from] = normalize(resultSet.getObject(i));
+        }
+        return values;
+    }
+
+    private static String[] normalize(Object... values) {
+        String[] normalized = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            normalized[i] = normalize(values[i]);
+        }
+        return normalized;
+    }
+
+    /**
+     * Normalizes a column value so values from the configuration and the database compare equal. Null and empty strings are
+     * equivalent, booleans are the YORN values 1 and 0 and numbers are compared without trailing zeros.
+     *
+     * @param value the value to normalize.
+     * @return the normalized value.
+     */
+    static String normalize(Object value) {
+        if (value == null) {
+            return "";
+        } else if (value instanceof Boolean) {
+            return (Boolean) value ? "1" : "0";
+        } else if (value instanceof Number) {
+            BigDecimal number = new BigDecimal(value.toString()).stripTrailingZeros();
+            return number.signum() == 0 ? "0" : number.toPlainString();
+        } else {
+            return value.toString();
+        }
+    }
+
+    /**
+     * Returns the language that a script language is compared as. Maximo runs python and jython scripts with the same engine, and the same
+     * is true of javascript, js and nashorn, so a script that is extracted to a .py or .js file and deployed again is not changed.
+     *
+     * @param language the script language, may be empty.
+     * @return python or javascript for their synonyms, otherwise the lower case language.
+     */
+    static String languageFamily(String language) {
+        String lowerCase = language.toLowerCase(Locale.ROOT);
+        switch (lowerCase) {
+            case "jython":
+                return "python";
+            case "js":
+            case "nashorn":
+                return "javascript";
+            default:
+                return lowerCase;
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("The SHA-256 message digest is not available.", e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String table, Map<String, String[]> rows) {
+        update(digest, table);
+        for (Map.Entry<String, String[]> row : rows.entrySet()) {
+            update(digest, row.getKey());
+            update(digest, table, row.getValue());
+        }
+    }
+
+    private static void update(MessageDigest digest, String table, String[] values) {
+        update(digest, table);
+        digest.update((byte) values.length);
+        for (String value : values) {
+            update(digest, value);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    /**
+     * Returns the SHA-256 digest of the source, ignoring carriage returns so line endings do not affect the result.
+     *
+     * @param source the source characters.
+     * @return the source digest.
+     */
+    static byte[] sourceDigest(CharSequence source) {
+        MessageDigest digest = newDigest();
+        updateSource(digest, source);
+        return digest.digest();
+    }
+
+    /**
+     * Updates the digest with the UTF-16 code units of the source, ignoring carriage returns so line endings do not affect the result.
+     *
+     * @param digest the digest to update.
+     * @param source the source characters.
+     */
+    private static void updateSource(MessageDigest digest, CharSequence source) {
+        byte[] buffer = new byte[8192];
+        int position = 0;
+        for (int i = 0; i < source.length(); i++) {
+            char c = source.charAt(i);
+            if (c == '\r') {
+                continue;
+            }
+            if (position == buffer.length) {
+                digest.update(buffer, 0, position);
+                position = 0;
+            }
+            buffer[position++] = (byte) (c >> 8);
+            buffer[position++] = (byte) c;
+        }
+        digest.update(buffer, 0, position);
+    }
+}
@@ -0,0 +1,177 @@
+package io.sharptree.maximo.dbmanage;
+
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The source of an automation script, decoded once from a memory mapped file or an archive entry into a single character buffer.
+ * <p>
+ * The buffer is shared by the scriptConfig extraction, the change detection digest and the CLOB upload, so the source is never copied into a {@link String}.
+ * Line endings are normalized to \n and a trailing line ending is removed, matching the source that was previously read line by line.
+ *
+ * @author Jason VenHuizen
+ */
+public final class ScriptSource {
+
+    private final Path path;
+    private final char[] chars;
+    private final int length;
+    private final long byteCount;
+
+    private ScriptSource(Path path, char[] chars, int length, long byteCount) {
+        this.path = path;
+        this.chars = chars;
+        this.length = length;
+        this.byteCount = byteCount;
+    }
+
+    /**
+     * Reads and decodes the UTF-8 script file. Malformed input is replaced rather than rejected, as the {@link java.io.FileReader} did.
+     * <p>
+     * A file of the default file system is memory mapped. An entry of a zip or jar archive cannot be mapped, so it is inflated once into
+     * a buffer of its uncompressed size and decoded from there.
+     *
+     * @param path the path to the script file, which may be an entry of an archive file system.
+     * @return the script source.
+     * @throws IOException thrown if the file cannot be read.
+     */
+    public static ScriptSource read(Path path) throws IOException {
+        ByteBuffer bytes = path.getFileSystem() == FileSystems.getDefault() ? map(path) : readEntry(path);
+        long size = bytes.remaining();
+
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        CharBuffer decoded = decoder.decode(bytes);
+        return new ScriptSource(path, decoded.array(), normalizeLineEndings(decoded.array(), decoded.arrayOffset(), decoded.remaining()), size);
+    }
+
+    private static MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static ByteBuffer readEntry(Path path) throws IOException {
+        try (SeekableByteChannel channel = Files.newByteChannel(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("The script file " + path.toUri() + " is too large to be read.");
+            }
+
+            ByteBuffer bytes = ByteBuffer.allocate((int) size);
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes) < 0) {
+                    break;
+                }
+            }
+            return bytes.flip();
+        }
+    }
+
+    /**
+     * Minifies the source with the {@link ScriptMinifier}. The characters are rewritten in place, so this source must not be used afterwards.
+     *
+     * @param minifier   the minifier over the characters of this source, see {@link #newMinifier(boolean, boolean)}.
+     * @param configJson the scriptConfig JSON of this source.
+     * @return the minified source.
+     */
+    ScriptSource minify(ScriptMinifier minifier, CharBuffer configJson) {
+        return new ScriptSource(path, chars, minifier.minify(configJson.position(), configJson.limit()), byteCount);
+    }
+
+    /**
+     * Creates a minifier over the characters of this source.
+     *
+     * @param python        true if the source is Python, otherwise it is minified as JavaScript.
+     * @param preserveLines true to keep every line break so the line numbers are unchanged.
+     * @return the minifier.
+     */
+    ScriptMinifier newMinifier(boolean python, boolean preserveLines) {
+        return new ScriptMinifier(chars, length, python, preserveLines);
+    }
+
+    /**
+     * Returns the path the source was read from.
+     *
+     * @return the source path.
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the number of characters in the source.
+     *
+     * @return the source length.
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Returns the size of the source file in bytes.
+     *
+     * @return the byte count.
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * Returns a read only view of the source characters.
+     *
+     * @return a new buffer over the source characters.
+     */
+    public CharBuffer chars() {
+        return CharBuffer.wrap(chars, 0, length).asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns a reader over the source characters, suitable for streaming the source to a CLOB.
+     *
+     * @return a new reader over the source characters.
+     */
+    public Reader reader() {
+        return new CharArrayReader(chars, 0, length);
+    }
+
+    /**
+     * Converts \r\n and \r line endings to \n in place and drops a trailing line ending.
+     *
+     * @return the normalized length.
+     */
+    private static int normalizeLineEndings(char[] chars, int offset, int count) {
+        int write = 0;
+        int end = offset + count;
+        for (int read = offset; read < end; read++) {
+            char c = chars[read];
+            if (c == '\r') {
+                if (read + 1 < end && chars[read + 1] == '\n') {
+                    read++;
+                }
+                c = '\n';
+            }
+            chars[write++] = c;
+        }
+
+        if (write > 0 && chars[write - 1] == '\n') {
+            write--;
+        }
+        return write;
+    }
+}
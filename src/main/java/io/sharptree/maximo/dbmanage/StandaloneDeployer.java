@@ -0,0 +1,553 @@
+package io.sharptree.maximo.dbmanage;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.File;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Deploys the automation script statements of a DBC script to several databases outside of UpdateDB, for example to bring a set of
+ * development and test environments up to date from a build agent.
+ * <p>
+ * The `add_update_autoscript`, `add_update_autoscript_dir`, `remove_autoscript` and `remove_autoscripts` statements are run with the same
+ * {@link AutoscriptOperations} as the UpdateDB change statements; a DBC script with any other statement is rejected before any database is
+ * changed. The scripts are read and parsed once and shared by the targets. The targets are deployed concurrently by a fixed pool of worker
+ * threads, each of which opens one connection at a time, so the number of open connections is bounded by the number of threads. Each target
+ * is deployed in its own transaction, which is committed if all of the statements succeed and rolled back otherwise, so a target that fails
+ * does not affect the others. A progress line is printed as each statement of a target is run, followed by a summary of all of the targets.
+ * <p>
+ * The arguments are the DBC script file and the targets:
+ * <pre>
+ * --target name=jdbcUrl     a target database, may be repeated.
+ * --targets file            a properties file of targets, name.url and the optional name.user and name.password.
+ * --user user               the user of the targets that do not set one.
+ * --password password       the password of the targets that do not set one.
+ * --threads n               the number of targets deployed at a time, defaults to 4.
+ * </pre>
+ * The JDBC drivers of the targets, gson and log4j must be on the class path. The exit status is 0 if all of the targets were deployed, 1 if
+ * any target failed and 2 if the arguments or the DBC script are not valid.
+ *
+ * @author Jason VenHuizen
+ */
+public final class StandaloneDeployer {
+
+    /**
+     * The number of targets that are deployed at a time if the --threads argument is not provided.
+     */
+    public static final int DEFAULT_THREADS = 4;
+
+    private static final List<String> STATEMENTS = List.of("add_update_autoscript", "add_update_autoscript_dir", "remove_autoscript", "remove_autoscripts");
+
+    private final List<Statement> statements;
+    private final PrintStream out;
+
+    private StandaloneDeployer(List<Statement> statements, PrintStream out) {
+        this.statements = statements;
+        this.out = out;
+    }
+
+    /**
+     * Runs the deployer and exits with its status.
+     *
+     * @param args the arguments.
+     */
+    public static void main(String[] args) {
+        System.exit(run(args, System.out));
+    }
+
+    /**
+     * Runs the deployer.
+     *
+     * @param args the arguments.
+     * @param out  the stream that the progress and the summary are printed to.
+     * @return 0 if all of the targets were deployed, 1 if any target failed and 2 if the arguments or the DBC script are not valid.
+     */
+    public static int run(String[] args, PrintStream out) {
+        Map<String, Target> targets = new LinkedHashMap<>();
+        String dbcFile = null;
+        String user = null;
+        String password = null;
+        int threads = DEFAULT_THREADS;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (!arg.startsWith("--")) {
+                    if (dbcFile != null) {
+                        throw new Exception("Only one DBC script can be deployed, " + dbcFile + " and " + arg + " were provided.");
+                    }
+                    dbcFile = arg;
+                    continue;
+                }
+                if (i + 1 == args.length) {
+                    throw new Exception("The " + arg + " argument requires a value.");
+                }
+                String value = args[++i];
+                switch (arg) {
+                    case "--target":
+                        int separator = value.indexOf('=');
+                        if (separator < 1) {
+                            throw new Exception("The target " + value + " must be in the form name=jdbcUrl.");
+                        }
+                        addTarget(targets, value.substring(0, separator), value.substring(separator + 1), null, null);
+                        break;
+                    case "--targets":
+                        loadTargets(targets, Paths.get(value));
+                        break;
+                    case "--user":
+                        user = value;
+                        break;
+                    case "--password":
+                        password = value;
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(value);
+                        if (threads < 1) {
+                            throw new Exception("The number of threads must be at least 1.");
+                        }
+                        break;
+                    default:
+                        throw new Exception("The argument " + arg + " is not supported.");
+                }
+            }
+
+            if (dbcFile == null || targets.isEmpty()) {
+                throw new Exception("A DBC script and at least one target are required.");
+            }
+        } catch (Exception e) {
+            out.println(e.getMessage());
+            out.println("Usage: StandaloneDeployer [--target name=jdbcUrl]... [--targets file] [--user user] [--password password] [--threads n] script.dbc");
+            return 2;
+        }
+
+        for (Target target : targets.values()) {
+            if (target.user == null) {
+                target.user = user;
+            }
+            if (target.password == null) {
+                target.password = password;
+            }
+        }
+
+        List<Statement> statements;
+        try {
+            statements = load(new File(dbcFile), out);
+        } catch (Exception e) {
+            out.println("The DBC script " + dbcFile + " cannot be deployed. " + e.getMessage());
+            return 2;
+        }
+
+        return new StandaloneDeployer(statements, out).deploy(new ArrayList<>(targets.values()), threads);
+    }
+
+    private static void addTarget(Map<String, Target> targets, String name, String url, String user, String password) throws Exception {
+        if (targets.containsKey(name)) {
+            throw new Exception("The target " + name + " is defined more than once.");
+        }
+        targets.put(name, new Target(name, url, user, password));
+    }
+
+    /**
+     * Adds the targets of a properties file, in the order of their names.
+     */
+    private static void loadTargets(Map<String, Target> targets, Path file) throws Exception {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        }
+
+        List<String> names = new ArrayList<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.endsWith(".url")) {
+                names.add(key.substring(0, key.length() - ".url".length()));
+            }
+        }
+        Collections.sort(names);
+
+        for (String name : names) {
+            addTarget(targets, name, properties.getProperty(name + ".url"), properties.getProperty(name + ".user"), properties.getProperty(name + ".password"));
+        }
+        if (names.isEmpty()) {
+            throw new Exception("The targets file " + file + " does not define any targets, each target requires a name.url property.");
+        }
+    }
+
+    /**
+     * Reads the statements of the DBC script, validates them and parses their scripts.
+     */
+    private static List<Statement> load(File dbcFile, PrintStream out) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        // the script.dtd is not needed to read the statements, so it is not loaded.
+        factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        factory.setExpandEntityReferences(false);
+        Document document = factory.newDocumentBuilder().parse(dbcFile);
+
+        String outputDirectory = dbcFile.getAbsoluteFile().getParent();
+        List<Statement> statements = new ArrayList<>();
+        NodeList statementsElements = document.getDocumentElement().getElementsByTagName("statements");
+        for (int i = 0; i < statementsElements.getLength(); i++) {
+            NodeList children = statementsElements.item(i).getChildNodes();
+            for (int j = 0; j < children.getLength(); j++) {
+                if (children.item(j).getNodeType() == Node.ELEMENT_NODE) {
+                    statements.add(new Statement((Element) children.item(j)));
+                }
+            }
+        }
+
+        for (Statement statement : statements) {
+            if (!STATEMENTS.contains(statement.name)) {
+                throw new Exception("The " + statement.name + " statement is not supported, only the " + String.join(", ", STATEMENTS) + " statements can be deployed.");
+            }
+        }
+
+        int prefetchThreads = Integer.getInteger(DeploymentContext.PREFETCH_THREADS_PROPERTY, Runtime.getRuntime().availableProcessors());
+        try (DeploymentContext context = DeploymentContext.create(prefetchThreads, ParseCache.resolveMaxEntries())) {
+            ParseCache cache = context.parseCache(outputDirectory);
+            List<List<Future<ParsedScript>>> submitted = new ArrayList<>();
+            for (Statement statement : statements) {
+                submitted.add(statement.submit(context, cache, outputDirectory));
+            }
+
+            for (int i = 0; i < statements.size(); i++) {
+                statements.get(i).await(context, submitted.get(i));
+            }
+        }
+
+        int scripts = 0;
+        for (Statement statement : statements) {
+            scripts += statement.scripts.size();
+        }
+        out.println("Loaded " + statements.size() + " statements and " + scripts + " automation scripts from " + dbcFile.getPath());
+        return statements;
+    }
+
+    /**
+     * Deploys the statements to each target, with at most the given number of targets at a time.
+     */
+    private int deploy(List<Target> targets, int threads) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, targets.size()), runnable -> {
+            Thread thread = new Thread(runnable, "autoscript-target-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (Target target : targets) {
+                target.out = out;
+                futures.add(pool.submit(() -> deploy(target)));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    // deploy(Target) records its own failures, anything else is a bug that is reported with the summary.
+                    e.printStackTrace(out);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(future -> future.cancel(true));
+        } finally {
+            pool.shutdownNow();
+        }
+
+        return summarize(targets);
+    }
+
+    /**
+     * Deploys the statements to a target in one transaction, recording the outcome in the target.
+     */
+    private void deploy(Target target) {
+        long start = System.nanoTime();
+        Connection connection = null;
+        try (DeploymentContext context = DeploymentContext.create(0, 0)) {
+            target.context = context;
+            connection = target.user != null ? DriverManager.getConnection(target.url, target.user, target.password) : DriverManager.getConnection(target.url);
+            connection.setAutoCommit(false);
+            target.connection = connection;
+
+            for (int i = 0; i < statements.size(); i++) {
+                Statement statement = statements.get(i);
+                target.statement = statement;
+                target.progress("(" + (i + 1) + "/" + statements.size() + ") " + statement);
+                statement.run(target);
+            }
+
+            connection.commit();
+            target.metrics = context.getMetrics();
+            target.progress("committed in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } catch (Exception e) {
+            target.failure = e;
+            if (connection != null) {
+                try {
+                    connection.rollback();
+                } catch (SQLException rollbackError) {
+                    e.addSuppressed(rollbackError);
+                }
+            }
+            target.progress("FAILED and rolled back: " + e.getMessage());
+        } finally {
+            target.nanos = System.nanoTime() - start;
+            target.statement = null;
+            target.connection = null;
+            target.context = null;
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    // the transaction is already committed or rolled back.
+                }
+            }
+        }
+    }
+
+    /**
+     * Prints the summary of the targets and returns the exit status.
+     */
+    private int summarize(List<Target> targets) {
+        out.println();
+        out.printf("%-20s %-8s %10s %10s %10s %10s %12s%n", "target", "status", "millis", "deployed", "unchanged", "removed", "round trips");
+
+        int failed = 0;
+        for (Target target : targets) {
+            DeploymentMetrics metrics = target.metrics;
+            if (target.failure != null || metrics == null) {
+                failed++;
+                out.printf("%-20s %-8s %10d %10s %10s %10s %12s%n", target.name, "FAILED", target.nanos / 1_000_000, "-", "-", "-", "-");
+            } else {
+                out.printf("%-20s %-8s %10d %10d %10d %10d %12d%n", target.name, "OK", target.nanos / 1_000_000,
+                        metrics.getCount(DeploymentMetrics.Outcome.DEPLOYED), metrics.getCount(DeploymentMetrics.Outcome.UNCHANGED),
+                        metrics.getCount(DeploymentMetrics.Outcome.REMOVED), metrics.getRoundTrips());
+            }
+        }
+
+        out.println();
+        out.println((targets.size() - failed) + " of " + targets.size() + " targets deployed" + (failed > 0 ? ", " + failed + " failed." : "."));
+        return failed > 0 ? 1 : 0;
+    }
+
+    /**
+     * A statement of the DBC script, with the scripts it deploys.
+     */
+    private static final class Statement {
+        private final String name;
+        private final Map<String, String> attributes = new HashMap<>();
+        private final List<ParsedScript> scripts = new ArrayList<>();
+        private Path directory;
+
+        private Statement(Element element) {
+            this.name = element.getTagName();
+            NamedNodeMap nodes = element.getAttributes();
+            for (int i = 0; i < nodes.getLength(); i++) {
+                attributes.put(nodes.item(i).getNodeName(), nodes.item(i).getNodeValue());
+            }
+        }
+
+        private String required(String attribute) throws Exception {
+            String value = attributes.get(attribute);
+            if (value == null || value.trim().isEmpty()) {
+                throw new Exception("The " + name + " statement requires the " + attribute + " attribute.");
+            }
+            return value;
+        }
+
+        /**
+         * Validates the statement and submits the parsing of its scripts, returning null if the statement does not deploy scripts.
+         */
+        private List<Future<ParsedScript>> submit(DeploymentContext context, ParseCache cache, String outputDirectory) throws Exception {
+            switch (name) {
+                case "add_update_autoscript": {
+                    Path file = AutoscriptOperations.resolvePath(required("path"), outputDirectory, false, context);
+                    if (file == null) {
+                        throw new Exception("The automation script file " + attributes.get("path") + " cannot be found.");
+                    }
+                    String language = attributes.get("language");
+                    ScriptMinifier.Mode minify = ScriptMinifier.Mode.resolve(attributes.get("minify"), attributes.get("preservelines"));
+                    return submit(context, List.of(() -> ParsedScript.parse(file, language, cache, minify)));
+                }
+                case "add_update_autoscript_dir": {
+                    directory = AutoscriptOperations.resolvePath(required("path"), outputDirectory, true, context);
+                    if (directory == null) {
+                        throw new Exception("The automation script directory " + attributes.get("path") + " cannot be found.");
+                    }
+                    ScriptMinifier.Mode minify = ScriptMinifier.Mode.resolve(attributes.get("minify"), attributes.get("preservelines"));
+                    List<Callable<ParsedScript>> tasks = new ArrayList<>();
+                    for (Path file : AutoscriptOperations.findScriptFiles(directory, attributes.get("include"), attributes.get("exclude"))) {
+                        tasks.add(() -> ParsedScript.parse(file, AutoscriptOperations.languageOf(file), cache, minify));
+                    }
+                    return submit(context, tasks);
+                }
+                case "remove_autoscript":
+                    required("name");
+                    return null;
+                default:
+                    String names = attributes.get("names");
+                    String pattern = attributes.get("pattern");
+                    if ((names == null || names.trim().isEmpty()) && (pattern == null || pattern.trim().isEmpty())) {
+                        throw new Exception("The remove_autoscripts statement requires either the names or the pattern attribute.");
+                    }
+                    return null;
+            }
+        }
+
+        /**
+         * Submits the tasks to the prefetch pool, or runs them if the prefetch is disabled.
+         */
+        private List<Future<ParsedScript>> submit(DeploymentContext context, List<Callable<ParsedScript>> tasks) throws Exception {
+            List<Future<ParsedScript>> futures = new ArrayList<>(tasks.size());
+            for (Callable<ParsedScript> task : tasks) {
+                Future<ParsedScript> future = context.prefetch(task);
+                if (future == null) {
+                    scripts.add(task.call());
+                } else {
+                    futures.add(future);
+                }
+            }
+            return futures;
+        }
+
+        /**
+         * Waits for the submitted scripts.
+         */
+        private void await(DeploymentContext context, List<Future<ParsedScript>> futures) throws Exception {
+            if (futures == null) {
+                return;
+            }
+            for (Future<ParsedScript> future : futures) {
+                try {
+                    scripts.add(context.take(future));
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+        }
+
+        /**
+         * Runs the statement against the target.
+         */
+        private void run(Target target) throws Exception {
+            switch (name) {
+                case "add_update_autoscript":
+                    AutoscriptOperations.deploy(target, scripts.get(0));
+                    break;
+                case "add_update_autoscript_dir":
+                    target.log("ScriptDirectory", "Deploying the automation scripts in {0}", scripts.size() + " files found in " + AutoscriptOperations.describe(directory));
+                    List<Callable<ParsedScript>> parsed = new ArrayList<>(scripts.size());
+                    for (ParsedScript script : scripts) {
+                        parsed.add(() -> script);
+                    }
+                    AutoscriptOperations.deployAll(target, parsed);
+                    break;
+                case "remove_autoscript":
+                    AutoscriptOperations.remove(target);
+                    break;
+                default:
+                    AutoscriptOperations.removeAll(target);
+            }
+        }
+
+        @Override
+        public String toString() {
+            if (name.startsWith("add_update")) {
+                return name + " from " + attributes.get("path");
+            } else if (attributes.containsKey("name")) {
+                return name + " " + attributes.get("name");
+            }
+            return name + " " + (attributes.get("names") != null ? attributes.get("names") : "<null>")
+                    + (attributes.get("pattern") != null ? " like " + attributes.get("pattern") : "");
+        }
+    }
+
+    /**
+     * A target database, which is the {@link StatementTarget} of the statement that is being run against it.
+     */
+    private static final class Target implements StatementTarget {
+        private final String name;
+        private final String url;
+        private String user;
+        private String password;
+        private PrintStream out;
+
+        private volatile Statement statement;
+        private volatile Connection connection;
+        private volatile DeploymentContext context;
+
+        private volatile DeploymentMetrics metrics;
+        private volatile Exception failure;
+        private volatile long nanos;
+
+        private Target(String name, String url, String user, String password) {
+            this.name = name;
+            this.url = url;
+            this.user = user;
+            this.password = password;
+        }
+
+        @Override
+        public String attribute(String attribute) {
+            return statement.attributes.get(attribute);
+        }
+
+        @Override
+        public Connection connection() {
+            return connection;
+        }
+
+        @Override
+        public String outputDirectory() {
+            return null;
+        }
+
+        @Override
+        public DeploymentContext context() {
+            return context;
+        }
+
+        @Override
+        public void log(String key, String message, Object parameter) {
+            progress(MessageFormat.format(message.replace("'", "''"), parameter));
+        }
+
+        private void progress(String message) {
+            synchronized (out) {
+                out.println("[" + name + "] " + message);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.valueOf(statement);
+        }
+    }
+}
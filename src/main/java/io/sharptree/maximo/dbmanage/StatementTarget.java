@@ -0,0 +1,55 @@
+package io.sharptree.maximo.dbmanage;
+
+import java.sql.Connection;
+
+/**
+ * The view of an automation script change statement that the {@link AutoscriptOperations} need to run it against a database.
+ * <p>
+ * Inside UpdateDB the change statements are their own targets, see {@link AutoscriptChangeStatement}, and read their attributes from the DBC
+ * script element, write to the UpdateDB connection and log to the UpdateDB statement log. The {@link StandaloneDeployer} provides a target
+ * for each statement and database, so that the same operations run outside of Maximo. The {@link Object#toString()} of a target describes
+ * the statement, as it is written to the explain log.
+ *
+ * @author Jason VenHuizen
+ */
+public interface StatementTarget {
+
+    /**
+     * Returns the value of a statement attribute.
+     *
+     * @param name the attribute name.
+     * @return the attribute value or null if the attribute is not present.
+     */
+    String attribute(String name);
+
+    /**
+     * Returns the connection to the target database.
+     *
+     * @return the connection that the statement writes to.
+     * @throws Exception thrown if the connection cannot be obtained.
+     */
+    Connection connection() throws Exception;
+
+    /**
+     * Returns the directory that relative script paths are resolved against.
+     *
+     * @return the DBC output directory or null if relative paths are only resolved against the working directory.
+     */
+    String outputDirectory();
+
+    /**
+     * Returns the deployment context of the statement.
+     *
+     * @return the deployment context or null if the statement is run without a context.
+     */
+    DeploymentContext context();
+
+    /**
+     * Logs an informational message of the statement.
+     *
+     * @param key       the message key.
+     * @param message   the default message text, with a {0} placeholder for the parameter.
+     * @param parameter the message parameter.
+     */
+    void log(String key, String message, Object parameter);
+}
@@ -0,0 +1,140 @@
+package io.sharptree.maximo.dbmanage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The columns of the automation script tables from the Maximo data dictionary, loaded once for the run with a single query.
+ * <p>
+ * The query reads the persistent MAXATTRIBUTE columns of the AUTOSCRIPT, AUTOSCRIPTSTATE, AUTOSCRIPTVARS, SCRIPTLAUNCHPOINT, LAUNCHPOINTVARS
+ * and ACTION tables, outer joined with the MAXSEQUENCE unique id sequences. The {@link BatchInsertWriter} uses the sequences to build its
+ * inserts and the column lengths to validate the character values of each row, so a value that is too long is reported with the table,
+ * column and script rather than as a driver error. The metadata is loaded on first use, is shared by the statements of the run through the
+ * {@link DeploymentContext} and is safe to use from several threads.
+ *
+ * @author Jason VenHuizen
+ */
+public final class TableMetadata {
+
+    /**
+     * The tables that are loaded.
+     */
+    static final List<String> TABLES = List.of("AUTOSCRIPT", "AUTOSCRIPTSTATE", "AUTOSCRIPTVARS", "SCRIPTLAUNCHPOINT", "LAUNCHPOINTVARS", "ACTION");
+
+    private static final String METADATA_SQL = "select a.objectname, a.columnname, a.maxtype, a.length, s.sequencename from maxattribute a "
+            + "left outer join maxsequence s on s.tbname = a.objectname and s.name = a.columnname "
+            + "where a.persistent = 1 and a.objectname in ('" + String.join("', '", TABLES) + "')";
+
+    /**
+     * The MAXATTRIBUTE types that are stored as character columns with a length.
+     */
+    private static final List<String> CHARACTER_TYPES = List.of("ALN", "UPPER", "LOWER");
+
+    private volatile Map<String, Table> tables;
+
+    /**
+     * Returns the table, loading the metadata of all of the tables with the connection on first use.
+     *
+     * @param connection the connection to the target database.
+     * @param name       the table name.
+     * @param metrics    the metrics that the round trip of the query is added to.
+     * @return the table or null if the table is not one of the automation script tables or the data dictionary does not define it.
+     */
+    Table table(Connection connection, String name, DeploymentMetrics metrics) {
+        Map<String, Table> loaded = tables;
+        if (loaded == null) {
+            synchronized (this) {
+                loaded = tables;
+                if (loaded == null) {
+                    loaded = load(connection, metrics);
+                    tables = loaded;
+                }
+            }
+        }
+        return loaded.get(name.toUpperCase(Locale.ROOT));
+    }
+
+    private static Map<String, Table> load(Connection connection, DeploymentMetrics metrics) {
+        Map<String, Table> tables = new HashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement(METADATA_SQL)) {
+            metrics.roundTrips(1);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    Table table = tables.computeIfAbsent(resultSet.getString(1).toUpperCase(Locale.ROOT), Table::new);
+                    String column = resultSet.getString(2).toLowerCase(Locale.ROOT);
+                    String maxType = resultSet.getString(3);
+                    int length = resultSet.getInt(4);
+
+                    if (maxType != null && CHARACTER_TYPES.contains(maxType.toUpperCase(Locale.ROOT)) && length > 0) {
+                        table.lengths.put(column, length);
+                    }
+                    if (resultSet.getString(5) != null) {
+                        table.sequences.put(column, resultSet.getString(5));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            // the writer looks up the sequences of each table itself if the data dictionary cannot be read.
+            return Collections.emptyMap();
+        }
+        return tables;
+    }
+
+    /**
+     * The columns of a table.
+     */
+    static final class Table {
+        private final String name;
+        private final Map<String, Integer> lengths = new HashMap<>();
+        private final Map<String, String> sequences = new LinkedHashMap<>();
+
+        private Table(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Returns the table name.
+         *
+         * @return the upper case table name.
+         */
+        String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the unique id columns and the next value expressions of their sequences.
+         *
+         * @param productName the database product name reported by the JDBC driver.
+         * @return the lower case column names mapped to the sequence next value SQL expression.
+         */
+        Map<String, String> sequenceColumns(String productName) {
+            Map<String, String> columns = new LinkedHashMap<>();
+            for (Map.Entry<String, String> sequence : sequences.entrySet()) {
+                columns.put(sequence.getKey(), BatchInsertWriter.nextValueExpression(productName, sequence.getValue()));
+            }
+            return columns;
+        }
+
+        /**
+         * Returns the maximum lengths of the columns, in the order of the columns.
+         *
+         * @param columns the column names.
+         * @return the lengths, 0 for the columns that are not character columns.
+         */
+        int[] lengths(List<String> columns) {
+            int[] result = new int[columns.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = lengths.getOrDefault(columns.get(i).toLowerCase(Locale.ROOT), 0);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package io.sharptree.maximo.dbmanage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.util.List;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Matches the same remove patterns against the scripts deployed in an embedded H2 database and the scripts pending in a
+ * {@link DeploymentSession}, both must find the same names so a remove by pattern treats written and unwritten scripts alike. The session
+ * also discards the changes of a DBC script that did not complete when the statement of another script begins.
+ *
+ * @author Jason VenHuizen
+ */
+class DeploymentSessionTest {
+
+    private static final String[] NAMES = {"MY_SCRIPT1", "MYXSCRIPT2", "MY_SCRIPT_3", "MY%SCRIPT4", "OTHER1"};
+
+    @TempDir
+    Path directory;
+
+    private Connection connection;
+    private DeploymentSession session;
+
+    @BeforeEach
+    void deploy() throws Exception {
+        connection = DriverManager.getConnection("jdbc:h2:mem:");
+        connection.createStatement().execute("create table autoscript (autoscript varchar(128) not null primary key)");
+        session = new DeploymentSession();
+
+        try (PreparedStatement insert = connection.prepareStatement("insert into autoscript (autoscript) values (?)")) {
+            for (String name : NAMES) {
+                insert.setString(1, name);
+                insert.executeUpdate();
+
+                Path script = directory.resolve(name.replace('%', '-') + ".js");
+                Files.write(script, ("var scriptConfig = {\"autoscript\": \"" + name + "\"};\n").getBytes(StandardCharsets.UTF_8));
+                session.deploy(ParsedScript.parse(script, "javascript"), false, false, 1);
+            }
+        }
+    }
+
+    @AfterEach
+    void close() throws Exception {
+        connection.close();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"MY\\_SCRIPT%", "MY_SCRIPT%", "%1", "my\\_script\\_3", "MY\\%%", "%\\_%", "%"})
+    void matchesLikeDatabase(String pattern) throws Exception {
+        TreeSet<String> deployed = new TreeSet<>(AutoscriptOperations.namesLike(connection, pattern, new DeploymentMetrics()));
+        TreeSet<String> pending = new TreeSet<>(session.deployedMatching(pattern));
+
+        assertEquals(deployed, pending, "the scripts like " + pattern);
+    }
+
+    @Test
+    void escapesWildcards() throws Exception {
+        assertEquals(new TreeSet<>(List.of("MY_SCRIPT1", "MY_SCRIPT_3")), new TreeSet<>(session.deployedMatching("MY\\_SCRIPT%")));
+        assertFalse(AutoscriptOperations.namesLike(connection, "MY\\_SCRIPT%", new DeploymentMetrics()).contains("MYXSCRIPT2"));
+    }
+
+    @Test
+    void discardsChangesOfAnotherScript() {
+        Object script = new Object();
+        assertEquals(NAMES.length, session.begin(script), "the changes recorded before the first script began");
+        session.remove("OTHER1");
+        assertEquals(0, session.begin(script));
+        assertFalse(session.isEmpty());
+
+        assertEquals(1, session.begin(new Object()));
+        assertTrue(session.isEmpty());
+    }
+
+    /**
+     * H2 matches nothing for a pattern that ends with the escape character, Oracle, SQL Server and DB2 reject it as the session does.
+     */
+    @Test
+    void rejectsTrailingEscape() {
+        assertThrows(IllegalArgumentException.class, () -> session.deployedMatching("MY\\"));
+    }
+}
@@ -0,0 +1,229 @@
+package io.sharptree.maximo.dbmanage;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Compares the {@link EventCodes} lookup tables with the if/else chains they replaced, for every combination of the flags.
+ *
+ * @author Jason VenHuizen
+ */
+class EventCodesTest {
+
+    private static final int OBJECT_FLAGS = 11;
+    private static final int ATTRIBUTE_FLAGS = 5;
+
+    @Test
+    void accessFlagMatchesBaseline() {
+        for (int flags = 0; flags < 1 << 3; flags++) {
+            boolean noValidation = bit(flags, 0);
+            boolean noAccessCheck = bit(flags, 1);
+            boolean noAction = bit(flags, 2);
+            assertEquals(baselineAccessFlag(noValidation, noAccessCheck, noAction), EventCodes.accessFlag(noValidation, noAccessCheck, noAction),
+                    "accessflag of flags " + flags);
+        }
+    }
+
+    @Test
+    void accessFlagDecodes() {
+        for (int flags = 0; flags < 1 << 3; flags++) {
+            AutoscriptVar variable = new AutoscriptVar();
+            EventCodes.decodeAccessFlag(EventCodes.accessFlag(bit(flags, 0), bit(flags, 1), bit(flags, 2)), variable);
+            assertEquals(bit(flags, 0), variable.noValidation, "noValidation of flags " + flags);
+            assertEquals(bit(flags, 1), variable.noAccessCheck, "noAccessCheck of flags " + flags);
+            assertEquals(bit(flags, 2), variable.noAction, "noAction of flags " + flags);
+        }
+    }
+
+    @Test
+    void objectEventMatchesBaseline() {
+        for (int flags = 0; flags < 1 << OBJECT_FLAGS; flags++) {
+            ScriptLaunchPoint launchPoint = objectLaunchPoint(flags);
+            assertEquals(baselineObjectEvent(launchPoint), EventCodes.objectEvent(launchPoint), "object event of flags " + flags);
+        }
+    }
+
+    @Test
+    void attributeEventMatchesBaseline() {
+        for (int flags = 0; flags < 1 << ATTRIBUTE_FLAGS; flags++) {
+            ScriptLaunchPoint launchPoint = attributeLaunchPoint(flags);
+            assertEquals(baselineObjectEvent(launchPoint), EventCodes.objectEvent(launchPoint), "attribute event of flags " + flags);
+        }
+    }
+
+    @Test
+    void otherLaunchPointTypesHaveNoEvent() {
+        for (String type : new String[]{"ACTION", "CUSTOMCONDITION"}) {
+            for (int flags = 0; flags < 1 << OBJECT_FLAGS; flags++) {
+                ScriptLaunchPoint launchPoint = objectLaunchPoint(flags);
+                launchPoint.launchPointType = type;
+                assertNull(EventCodes.objectEvent(launchPoint), type + " event of flags " + flags);
+            }
+        }
+    }
+
+    @Test
+    void objectEventDecodes() {
+        for (int flags = 0; flags < 1 << OBJECT_FLAGS; flags++) {
+            Integer code = EventCodes.objectEvent(objectLaunchPoint(flags));
+            if (code != null) {
+                ScriptLaunchPoint decoded = new ScriptLaunchPoint();
+                decoded.launchPointType = "OBJECT";
+                EventCodes.decodeObjectEvent(code, decoded);
+                assertEquals(code, EventCodes.objectEvent(decoded), "decoded object event of flags " + flags);
+            }
+        }
+        for (int flags = 0; flags < 1 << ATTRIBUTE_FLAGS; flags++) {
+            Integer code = EventCodes.objectEvent(attributeLaunchPoint(flags));
+            if (code != null) {
+                ScriptLaunchPoint decoded = new ScriptLaunchPoint();
+                decoded.launchPointType = "ATTRIBUTE";
+                EventCodes.decodeObjectEvent(code, decoded);
+                assertEquals(code, EventCodes.objectEvent(decoded), "decoded attribute event of flags " + flags);
+            }
+        }
+    }
+
+    private static ScriptLaunchPoint objectLaunchPoint(int flags) {
+        ScriptLaunchPoint launchPoint = new ScriptLaunchPoint();
+        launchPoint.launchPointType = "OBJECT";
+        launchPoint.initializeValue = bit(flags, 0);
+        launchPoint.validateApplication = bit(flags, 1);
+        launchPoint.allowObjectCreation = bit(flags, 2);
+        launchPoint.allowObjectDeletion = bit(flags, 3);
+        launchPoint.save = bit(flags, 4);
+        launchPoint.add = bit(flags, 5);
+        launchPoint.update = bit(flags, 6);
+        launchPoint.delete = bit(flags, 7);
+        launchPoint.beforeSave = bit(flags, 8);
+        launchPoint.afterSave = bit(flags, 9);
+        launchPoint.afterCommit = bit(flags, 10);
+        return launchPoint;
+    }
+
+    private static ScriptLaunchPoint attributeLaunchPoint(int flags) {
+        ScriptLaunchPoint launchPoint = new ScriptLaunchPoint();
+        launchPoint.launchPointType = "ATTRIBUTE";
+        launchPoint.initializeAccessRestriction = bit(flags, 0);
+        launchPoint.initializeValue = bit(flags, 1);
+        launchPoint.validate = bit(flags, 2);
+        launchPoint.retrieveList = bit(flags, 3);
+        launchPoint.runAction = bit(flags, 4);
+        return launchPoint;
+    }
+
+    private static boolean bit(int flags, int position) {
+        return (flags & (1 << position)) != 0;
+    }
+
+    /**
+     * The accessflag encoding of AutoscriptVar before the lookup tables.
+     */
+    private static int baselineAccessFlag(boolean noValidation, boolean noAccessCheck, boolean noAction) {
+        if (!noValidation && !noAccessCheck && !noAction) {
+            return 0;
+        } else if (noValidation && noAccessCheck && noAction) {
+            return 11;
+        } else if (noValidation && !noAccessCheck && !noAction) {
+            return 1;
+        } else if (!noValidation && noAccessCheck && !noAction) {
+            return 2;
+        } else if (noValidation && noAccessCheck) {
+            return 3;
+        } else if (!noValidation && !noAccessCheck) {
+            return 8;
+        } else if (!noValidation) {
+            return 10;
+        } else {
+            return 9;
+        }
+    }
+
+    /**
+     * The objectevent encoding of ScriptLaunchPoint before the lookup tables.
+     */
+    @SuppressWarnings("ConstantConditions")
+    private static Integer baselineObjectEvent(ScriptLaunchPoint launchPoint) {
+        boolean add = launchPoint.add;
+        boolean update = launchPoint.update;
+        boolean delete = launchPoint.delete;
+
+        if (launchPoint.launchPointType.equalsIgnoreCase("OBJECT")) {
+            if (launchPoint.initializeValue) {
+                return 1;
+            } else if (launchPoint.validateApplication) {
+                return 1024;
+            } else if (launchPoint.allowObjectCreation) {
+                return 2048;
+            } else if (launchPoint.allowObjectDeletion) {
+                return 4096;
+            } else if (launchPoint.save) {
+                if (launchPoint.beforeSave) {
+                    if (add && !update && !delete) {
+                        return 2;
+                    } else if (add && update && !delete) {
+                        return 6;
+                    } else if (add && update && delete) {
+                        return 14;
+                    } else if (!add && update && delete) {
+                        return 12;
+                    } else if (!add && !update && delete) {
+                        return 8;
+                    } else if (!add && update && !delete) {
+                        return 4;
+                    } else if (add && !update && delete) {
+                        return 10;
+                    }
+                } else if (launchPoint.afterSave) {
+                    if (add && !update && !delete) {
+                        return 16;
+                    } else if (add && update && !delete) {
+                        return 48;
+                    } else if (add && update) {
+                        return 112;
+                    } else if (!add && update && delete) {
+                        return 96;
+                    } else if (!add && !update && delete) {
+                        return 64;
+                    } else if (!add && update) {
+                        return 32;
+                    } else if (add) {
+                        return 80;
+                    }
+                } else if (launchPoint.afterCommit) {
+                    if (add && !update && !delete) {
+                        return 128;
+                    } else if (add && update && !delete) {
+                        return 384;
+                    } else if (add && update) {
+                        return 896;
+                    } else if (!add && update && delete) {
+                        return 768;
+                    } else if (!add && !update && delete) {
+                        return 512;
+                    } else if (!add && update) {
+                        return 256;
+                    } else if (add) {
+                        return 640;
+                    }
+                }
+            }
+        } else if (launchPoint.launchPointType.equalsIgnoreCase("ATTRIBUTE")) {
+            if (launchPoint.initializeAccessRestriction) {
+                return 8;
+            } else if (launchPoint.initializeValue) {
+                return 2;
+            } else if (launchPoint.validate) {
+                return 0;
+            } else if (launchPoint.retrieveList) {
+                return 64;
+            } else if (launchPoint.runAction) {
+                return 1;
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,82 @@
+package io.sharptree.maximo.dbmanage;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Round trips a script configuration through the binary format of the {@link ParseCache}.
+ *
+ * @author Jason VenHuizen
+ */
+class ParseCacheTest {
+
+    private static final String SCRIPT = "var scriptConfig = {\n"
+            + "    \"autoscript\": \"CACHED\",\n"
+            + "    \"description\": \"A cached script with a \\\"quoted\\\" description and unicode \\u00e9\",\n"
+            + "    \"version\": \"1.2.3\",\n"
+            + "    \"active\": false,\n"
+            + "    \"logLevel\": \"DEBUG\",\n"
+            + "    \"allowInvokingScriptFunctions\": true,\n"
+            + "    \"autoScriptVars\": [\n"
+            + "        {\"varname\": \"literal\", \"description\": \"A literal\", \"varBindingType\": \"LITERAL\", \"literalDataType\": \"ALN\", \"varBindingValue\": \"value\", \"varType\": \"IN\", \"allowOverride\": true, \"noValidation\": true, \"noAction\": true},\n"
+            + "        {\"varname\": \"attribute\", \"varBindingType\": \"ATTRIBUTE\", \"varType\": \"INOUT\", \"noAccessCheck\": true}\n"
+            + "    ],\n"
+            + "    \"scriptLaunchPoints\": [\n"
+            + "        {\"launchPointName\": \"CACHED_OBJECT\", \"description\": \"Object\", \"launchPointType\": \"OBJECT\", \"objectName\": \"ASSET\", \"condition\": \"status = 'OPERATING'\", \"save\": true, \"add\": true, \"delete\": true, \"afterCommit\": true,\n"
+            + "            \"launchPointVars\": [{\"varName\": \"attribute\", \"varBindingValue\": \"ASSETNUM\"}]},\n"
+            + "        {\"launchPointName\": \"CACHED_ATTRIBUTE\", \"launchPointType\": \"ATTRIBUTE\", \"objectName\": \"ASSET\", \"attributeName\": \"STATUS\", \"active\": false, \"retrieveList\": true},\n"
+            + "        {\"launchPointName\": \"CACHED_ACTION\", \"launchPointType\": \"ACTION\", \"objectName\": \"ASSET\", \"actionName\": \"CACHED_ACTION\", \"launchPointVars\": []}\n"
+            + "    ]\n"
+            + "};\n"
+            + "main();\n";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundTripsConfig() throws Exception {
+        Path script = directory.resolve("cached.js");
+        Files.write(script, SCRIPT.getBytes(StandardCharsets.UTF_8));
+        Path cacheDirectory = directory.resolve(ParseCache.DIRECTORY_NAME);
+
+        ParsedScript parsed = ParsedScript.parse(script, "javascript", ParseCache.open(cacheDirectory, 10));
+        assertFalse(parsed.isCached());
+
+        // a new cache reads the entry from disk.
+        ParseCache cache = ParseCache.open(cacheDirectory, 10);
+        assertEquals(1, cache.size());
+        ParsedScript cached = ParsedScript.parse(script, "javascript", cache);
+
+        assertTrue(cached.isCached());
+        assertEquals(new Gson().toJson(parsed.getConfig()), new Gson().toJson(cached.getConfig()));
+        assertEquals(parsed.getConfigJson().position(), cached.getConfigJson().position());
+        assertEquals(parsed.getConfigJson().toString(), cached.getConfigJson().toString());
+    }
+
+    @Test
+    void missesChangedScript() throws Exception {
+        Path script = directory.resolve("changed.js");
+        Files.write(script, SCRIPT.getBytes(StandardCharsets.UTF_8));
+        Path cacheDirectory = directory.resolve(ParseCache.DIRECTORY_NAME);
+        ParsedScript.parse(script, "javascript", ParseCache.open(cacheDirectory, 10));
+
+        // the same size and modification time, only the digest of the source differs.
+        FileTime lastModified = Files.getLastModifiedTime(script);
+        Files.write(script, SCRIPT.replace("CACHED\"", "CHANGE\"").getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(script, lastModified);
+
+        ParsedScript parsed = ParsedScript.parse(script, "javascript", ParseCache.open(cacheDirectory, 10));
+        assertFalse(parsed.isCached());
+        assertEquals("CHANGE", parsed.getConfig().autoscript);
+    }
+}
@@ -0,0 +1,75 @@
+package io.sharptree.maximo.dbmanage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Extracts the scriptConfig from the fixtures in the extract resource directory, each script is paired with a .json file of the expected JSON.
+ * The fixtures have braces inside strings, template literals, comments and regular expressions that must not be counted.
+ *
+ * @author Jason VenHuizen
+ */
+class ScriptConfigExtractorTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"string-braces.js", "comment-braces.js", "regex-braces.js", "string-braces.py"})
+    void extractsFixture(String fixture) throws Exception {
+        String source = resource(fixture);
+        CharBuffer json = ScriptConfigExtractor.extract(source, fixture.endsWith(".py"));
+
+        assertEquals(resource(fixture + ".json").stripTrailing(), json.toString());
+        assertEquals(source.indexOf(json.toString()), json.position(), "the position is the offset of the JSON in the source");
+    }
+
+    @Test
+    void ignoresCommentedDeclaration() {
+        assertThrows(Exception.class, () -> ScriptConfigExtractor.extract("// var scriptConfig = {};\nvar other = {};", false));
+        assertThrows(Exception.class, () -> ScriptConfigExtractor.extract("# scriptConfig = \"{}\"\nother = \"{}\"", true));
+    }
+
+    @Test
+    void ignoresDeclarationInString() {
+        assertThrows(Exception.class, () -> ScriptConfigExtractor.extract("var text = \"var scriptConfig = {}\";", false));
+    }
+
+    @Test
+    void rejectsUnbalancedBraces() {
+        assertThrows(Exception.class, () -> ScriptConfigExtractor.extract("var scriptConfig = {\"autoscript\": \"OPEN\"", false));
+        assertThrows(Exception.class, () -> ScriptConfigExtractor.extract("var scriptConfig = {\"autoscript\": \"}\"", false));
+    }
+
+    @Test
+    void lexesRegexWithBraces() {
+        String source = "var re = /[{}]\\}/g; var x = a / b / c;";
+        ScriptLexer lexer = new ScriptLexer(source, false);
+
+        StringBuilder regexes = new StringBuilder();
+        int braces = 0;
+        while (lexer.next()) {
+            if (lexer.type() == ScriptLexer.TokenType.REGEX) {
+                regexes.append(source, lexer.start(), lexer.end()).append(' ');
+            } else if (lexer.is('{') || lexer.is('}')) {
+                braces++;
+            }
+        }
+        assertEquals("/[{}]\\}/g ", regexes.toString());
+        assertEquals(0, braces, "no braces outside of the regular expression");
+    }
+
+    private static String resource(String name) throws IOException {
+        try (InputStream in = ScriptConfigExtractorTest.class.getResourceAsStream("extract/" + name)) {
+            assertNotNull(in, "the " + name + " fixture was not found");
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
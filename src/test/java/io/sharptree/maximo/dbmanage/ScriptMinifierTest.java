@@ -0,0 +1,62 @@
+package io.sharptree.maximo.dbmanage;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Minifies the fixtures in the minify resource directory and compares the sources with the expected output, the .min file of the compact
+ * mode and the .lines file of the mode that preserves the line numbers.
+ *
+ * @author Jason VenHuizen
+ */
+class ScriptMinifierTest {
+
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest
+    @ValueSource(strings = {"regex.js", "script.js", "script.py"})
+    void compacts(String fixture) throws Exception {
+        assertMinified(fixture, ScriptMinifier.Mode.COMPACT, ".min");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"regex.js", "script.js", "script.py"})
+    void preservesLines(String fixture) throws Exception {
+        String source = assertMinified(fixture, ScriptMinifier.Mode.PRESERVE_LINES, ".lines");
+        assertEquals(resource(fixture).stripTrailing().split("\n", -1).length, source.split("\n", -1).length, "the line count of " + fixture);
+    }
+
+    private String assertMinified(String fixture, ScriptMinifier.Mode mode, String suffix) throws Exception {
+        Path file = directory.resolve(fixture);
+        Files.write(file, resource(fixture).getBytes(StandardCharsets.UTF_8));
+        String language = AutoscriptOperations.languageOf(file);
+
+        ParsedScript parsed = ParsedScript.parse(file, language);
+        ParsedScript minified = ParsedScript.parse(file, language, null, mode);
+
+        int dot = fixture.lastIndexOf('.');
+        String expected = resource(fixture.substring(0, dot) + suffix + fixture.substring(dot)).stripTrailing();
+        String source = minified.getSource().chars().toString();
+        assertEquals(expected, source);
+        assertEquals(parsed.getConfigJson().toString(), minified.getConfigJson().toString(), "the scriptConfig of " + fixture + " is copied as it is");
+        return source;
+    }
+
+    private static String resource(String name) throws IOException {
+        try (InputStream in = ScriptMinifierTest.class.getResourceAsStream("minify/" + name)) {
+            assertNotNull(in, "the " + name + " fixture was not found");
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+// var scriptConfig = {"autoscript": "LINE_COMMENT"};
+/*
+ * var scriptConfig = {"autoscript": "BLOCK_COMMENT"};
+ * an unbalanced { in a comment
+ */
+main();
+
+function main() {
+    // a closing } in a comment
+    return true;
+}
+
+var scriptConfig = { /* { */
+    "autoscript": "COMMENT_BRACES", // }
+    "description": "Comments with braces"
+};
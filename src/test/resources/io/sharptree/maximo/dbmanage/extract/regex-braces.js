@@ -0,0 +1,12 @@
+var placeholder = /\{[^}]*\}/g;
+var braces = /[{}]/;
+
+function strip(value) {
+    return value.replace(/}+$/, "").split(/{/).length / 2;
+}
+
+var half = strip("{a}") / 2;
+var scriptConfig = {
+    "autoscript": "REGEX_BRACES",
+    "description": "Regular expressions with braces"
+};
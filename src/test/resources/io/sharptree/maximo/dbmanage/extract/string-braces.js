@@ -0,0 +1,16 @@
+var opening = "{";
+var closing = '}}';
+var template = `${opening} and ${ {nested: true}.nested } }`;
+
+var scriptConfig = {
+    "autoscript": "STRING_BRACES",
+    "description": "Braces { inside } the JSON strings }}",
+    "scriptLaunchPoints": [
+        {
+            "launchPointName": "STRING_BRACES",
+            "launchPointType": "OBJECT",
+            "objectName": "ASSET",
+            "initializeValue": true
+        }
+    ]
+};
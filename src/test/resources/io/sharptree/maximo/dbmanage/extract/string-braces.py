@@ -0,0 +1,19 @@
+# -*- coding: utf-8 -*-
+# scriptConfig = """{"autoscript": "COMMENTED"}"""
+opening = "{"
+closing = '}}'
+message = """a { brace
+and another } one"""
+
+scriptConfig = """{
+    "autoscript": "PYTHON_BRACES",
+    "description": "A } and a { in a string",
+    "autoScriptVars": [
+        {
+            "varname": "braces",
+            "varBindingType": "LITERAL",
+            "literalDataType": "ALN",
+            "varBindingValue": "{}"
+        }
+    ]
+}"""
@@ -0,0 +1,19 @@
+var scriptConfig={
+    "autoscript": "MINIFY_REGEX",
+    "description": "Regular expressions followed by words"
+};
+
+
+var ok=/ab/ instanceof RegExp;
+var found=/b/g in cache;
+var closing=/[/]+/;
+var escaped=/\// instanceof RegExp;
+
+
+var half=total/2/count;
+var ratio=a/b;
+var tested=/a+/i.test(value)?1:0;
+
+function check(value){
+return/^[a-z]+$/.test(value);
+}
@@ -0,0 +1,36 @@
+/*
+ * A script with comments, strings and operators that need their spaces.
+ */
+var scriptConfig = {
+    "autoscript": "MINIFY_SCRIPT",
+    "description": "Comments // and /* strings */ in the JSON",
+    "scriptLaunchPoints": [
+        {
+            "launchPointName": "MINIFY_SCRIPT",
+            "launchPointType": "OBJECT",
+            "objectName": "ASSET",
+            "initializeValue": true
+        }
+    ]
+};
+
+main();
+
+function main() {
+    // the message keeps its spaces and comment markers
+    var message = "a // b /* c */";
+    var template = `line ${ value }   with    spaces`;
+    var total = a + +b - -c;
+    var text = 1 .toString();
+
+    /* a block comment on one line */ var inline = true;
+    if (total > 0) {
+        service.log(message + template + text);
+    }
+
+    var next = total
+    /* a block comment
+       that spans lines */
+    ++next
+    return next;
+}
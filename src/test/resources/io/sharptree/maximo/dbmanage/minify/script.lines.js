@@ -0,0 +1,36 @@
+
+
+
+var scriptConfig={
+    "autoscript": "MINIFY_SCRIPT",
+    "description": "Comments // and /* strings */ in the JSON",
+    "scriptLaunchPoints": [
+        {
+            "launchPointName": "MINIFY_SCRIPT",
+            "launchPointType": "OBJECT",
+            "objectName": "ASSET",
+            "initializeValue": true
+        }
+    ]
+};
+
+main();
+
+function main(){
+
+var message="a // b /* c */";
+var template=`line ${ value }   with    spaces`;
+var total=a+ +b- -c;
+var text=1 .toString();
+
+var inline=true;
+if(total>0){
+service.log(message+template+text);
+}
+
+var next=total
+
+
+++next
+return next;
+}
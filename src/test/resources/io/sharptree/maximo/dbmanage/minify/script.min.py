@@ -0,0 +1,16 @@
+# -*- coding: utf-8 -*-
+
+scriptConfig = """{
+    "autoscript": "MINIFY_PYTHON",
+    "description": "A # that is not a comment"
+}"""
+
+def main():
+    message = "a # b"
+    if mbo is not None:
+        mbo.setValue("DESCRIPTION", message)
+
+        return True
+    return False
+
+main()
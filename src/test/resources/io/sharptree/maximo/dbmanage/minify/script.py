@@ -0,0 +1,18 @@
+# -*- coding: utf-8 -*-
+# A script with comments that are removed and strings that are kept.
+
+scriptConfig = """{
+    "autoscript": "MINIFY_PYTHON",
+    "description": "A # that is not a comment"
+}"""
+
+def main():
+    # the comment line is removed
+    message = "a # b"   
+    if mbo is not None:
+        mbo.setValue("DESCRIPTION", message)  # a trailing comment
+
+        return True
+    return False
+
+main()